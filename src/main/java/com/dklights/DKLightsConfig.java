@@ -4,6 +4,7 @@ import java.awt.Color;
 
 import com.dklights.enums.HighlightType;
 import com.dklights.enums.PathDrawStyle;
+import com.dklights.enums.PathfinderEngine;
 import com.dklights.enums.TimerType;
 
 import net.runelite.client.config.Config;
@@ -94,6 +95,21 @@ public interface DKLightsConfig extends Config {
 		return 64;
 	}
 
+	// Only the default is meant for players; the other engines are kept for
+	// comparing results and can still be set in the profile
+	@ConfigItem(
+		keyName = "pathfinderEngine",
+		name = "Pathfinding Engine",
+		description = "Search engine used to calculate paths.",
+		section = pathSection,
+		position = 6,
+		hidden = true
+	)
+	default PathfinderEngine pathfinderEngine()
+	{
+		return PathfinderEngine.DISTANCE_FIELD;
+	}
+
 	// --- Section: Lamp Highlights ---
 	@ConfigSection(
 		name = "Lamp Highlights",
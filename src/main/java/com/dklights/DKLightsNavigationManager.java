@@ -1,18 +1,17 @@
 package com.dklights;
 
-import com.dklights.enums.Direction;
-import com.dklights.enums.InventoryState;
 import com.dklights.enums.Lamp;
-import com.dklights.enums.LampStatus;
 import com.dklights.enums.TargetType;
+import com.dklights.enums.PathfinderEngine;
 import com.dklights.pathfinder.Pathfinder;
+import com.dklights.pathfinder.SearchCancelledException;
+import com.dklights.pathfinder.SearchStatus;
 import java.util.ArrayList;
-import java.util.HashSet;
 import java.util.List;
-import java.util.Map;
 import java.util.Set;
-import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.stream.Collectors;
 
 import lombok.Getter;
@@ -30,19 +29,54 @@ public class DKLightsNavigationManager
 	private final Pathfinder pathfinder;
 	private final ExecutorService pathfindingExecutor;
 
-	@Getter
-	private List<WorldPoint> shortestPath = new ArrayList<>();
-	@Getter
-	private int closestDistance = 0;
+	// Written by the pathfinding thread and replaced as a whole, so overlays can
+	// render one result without copying or locking
+	private final AtomicReference<PathResult> pathResult = new AtomicReference<>(PathResult.EMPTY);
+	// Follows the inventory immediately, while pathResult keeps the target of
+	// the last finished search until the next one is published
 	@Getter
 	private TargetType currentTargetType = TargetType.NONE;
 
 	private Lamp lastLoggedClosestLamp = null;
-	private CompletableFuture<Void> currentClosestLampTask;
-	private long lastClosestLampCalculation = 0;
-	private static final long CLOSEST_LAMP_COOLDOWN_MS = 600;
 
-	private final Set<Lamp> brokenLamps = new HashSet<>();
+	// Latest-wins mailbox: update() overwrites the slot and a single drain task
+	// on the executor runs whatever is newest, so at most one request waits and
+	// superseded ones are dropped unrun
+	private final AtomicReference<Runnable> pendingRequest = new AtomicReference<>();
+	// Serialises interrupts with the worker taking the next request, so an
+	// interrupt never lands on a request newer than the one it was meant for
+	private final Object requestLock = new Object();
+	private boolean draining;
+	private Thread drainThread;
+
+	// A search that runs out of time shows its partial path and is resumed on
+	// the next calculation
+	private static final long PATH_BUDGET_NANOS = TimeUnit.MILLISECONDS.toNanos(2);
+	// A search only resumes from an unchanged start, so while the player walks
+	// every slice starts over. After this many partial paths in a row towards
+	// the same target the search runs without a budget
+	private static final int MAX_PARTIAL_SEARCHES = 4;
+	// Partial paths in a row towards partialTarget; only touched on the
+	// pathfinding thread
+	private int partialSearches;
+	private WorldPoint partialTarget;
+	// How far the player may stray from the path before it is searched again
+	// from scratch instead of being reconnected
+	private static final int MAX_REPAIR_STEPS = 3;
+
+	// Inputs of the last request; paths are only recomputed when one changes.
+	// Broken lamps and walls are covered by the lamp state version
+	private WorldPoint requestedLocation;
+	private TargetType requestedTargetType;
+	private int requestedLampStateVersion;
+	private PathfinderEngine requestedEngine;
+	// Token of the last submitted request. The worker copies a request's token
+	// into finishedRequest once it is done, and into settledRequest first if its
+	// path is final for its inputs. Only the worker writes them, in request
+	// order, so a superseded request can never settle a newer one
+	private int requestToken;
+	private volatile int finishedRequest;
+	private volatile int settledRequest;
 
 	public DKLightsNavigationManager(Client client, DKLightsConfig config, Pathfinder pathfinder,
 			ExecutorService pathfindingExecutor)
@@ -53,8 +87,11 @@ public class DKLightsNavigationManager
 		this.pathfindingExecutor = pathfindingExecutor;
 	}
 
-	public void update(Map<Lamp, LampStatus> lampStatuses, Map<Lamp, Set<Direction>> lampWallCache,
-			InventoryState inventoryState, WorldPoint playerLocation, GameObject wireMachine)
+	/**
+	 * @param snapshot state published for this tick; it is handed to the
+	 *                 pathfinding thread as is, so it must not be mutated.
+	 */
+	public void update(WorldStateSnapshot snapshot, WorldPoint playerLocation, GameObject wireMachine)
 	{
 
 		if (playerLocation == null || pathfinder == null || pathfindingExecutor == null)
@@ -62,9 +99,12 @@ public class DKLightsNavigationManager
 			return;
 		}
 
+		final PathfinderEngine engine = config.pathfinderEngine();
+		pathfinder.setEngine(engine);
+
 		WorldPoint targetLocation;
 
-		switch (inventoryState)
+		switch (snapshot.getInventoryState())
 		{
 		case NO_LIGHT_BULBS:
 			targetLocation = DKLightsConstants.BANK_LOCATION;
@@ -83,125 +123,288 @@ public class DKLightsNavigationManager
 
 		default:
 			currentTargetType = TargetType.NONE;
-			shortestPath.clear();
+			pathResult.set(PathResult.EMPTY);
+			forgetRequest();
 			return;
 		}
 
         if (!config.showPathToLocation())
 		{
-			if (!shortestPath.isEmpty())
-			{
-				shortestPath.clear();
-			}
-			if (closestDistance != 0)
+			cancelPendingRequest();
+			pathResult.set(PathResult.empty(currentTargetType));
+			forgetRequest();
+			return;
+		}
+
+		// Only the lamp search depends on lamp states and walls
+		final int relevantVersion = currentTargetType == TargetType.LAMP ? snapshot.getLampStateVersion() : 0;
+		PathResult detour = null;
+		if (currentTargetType == requestedTargetType && relevantVersion == requestedLampStateVersion
+				&& engine == requestedEngine)
+		{
+			final boolean settled = settledRequest == requestToken;
+			// An unchanged request that is settled or still running is left alone
+			if (playerLocation.equals(requestedLocation) && (settled || finishedRequest != requestToken))
 			{
-				closestDistance = 0;
+				return;
 			}
-			if (currentClosestLampTask != null && !currentClosestLampTask.isDone())
+
+			final PathResult current = pathResult.get();
+			if (settled && !current.isEmpty() && !current.isEstimate())
 			{
-				currentClosestLampTask.cancel(true);
+				if (trimWalkedPrefix(current, playerLocation))
+				{
+					requestedLocation = playerLocation;
+					return;
+				}
+				// Off the path with the same targets, try to walk back onto it first
+				detour = current;
 			}
-			return;
 		}
+		requestedLocation = playerLocation;
+		requestedTargetType = currentTargetType;
+		requestedLampStateVersion = relevantVersion;
+		requestedEngine = engine;
+		final int token = ++requestToken;
 
 		if (targetLocation != null)
 		{
-			calculatePathToTarget(targetLocation, currentTargetType, playerLocation);
+			calculatePathToTarget(targetLocation, currentTargetType, playerLocation, token, detour);
 		}
         else
         {
-			findClosestBrokenLamp(lampStatuses, lampWallCache, playerLocation);
+			findClosestBrokenLamp(snapshot, playerLocation, token, detour);
         }
 	}
 
 	public void shutDown()
 	{
-		if (currentClosestLampTask != null)
-		{
-			currentClosestLampTask.cancel(true);
-		}
+		cancelPendingRequest();
+	}
+
+	/**
+	 * @return the latest path, distance and target; never {@code null}.
+	 */
+	public PathResult getPathResult()
+	{
+		return pathResult.get();
 	}
 
 	public void clearPathAndTarget()
 	{
-		shortestPath.clear();
-		closestDistance = 0;
 		currentTargetType = TargetType.NONE;
-		if (currentClosestLampTask != null && !currentClosestLampTask.isDone())
+		cancelPendingRequest();
+		pathResult.set(PathResult.EMPTY);
+		forgetRequest();
+	}
+
+	/**
+	 * Forces the next update to recompute the path.
+	 */
+	private void forgetRequest()
+	{
+		requestedTargetType = null;
+	}
+
+	/**
+	 * Marks the request with {@code token} as done. Only called on the
+	 * pathfinding thread.
+	 *
+	 * @param settled whether its path is final for its inputs.
+	 */
+	private void finishRequest(int token, boolean settled)
+	{
+		if (settled)
+		{
+			settledRequest = token;
+		}
+		finishedRequest = token;
+	}
+
+	/**
+	 * Drops the part of the current path the player has already walked.
+	 *
+	 * @return {@code false} if the player is not on the path, which then has to
+	 *         be recomputed.
+	 */
+	private boolean trimWalkedPrefix(PathResult current, WorldPoint playerLocation)
+	{
+		final int index = current.indexOf(playerLocation);
+		if (index < 0)
 		{
-			currentClosestLampTask.cancel(true);
+			return false;
 		}
+
+		// Lose to a result the pathfinding thread published meanwhile
+		pathResult.compareAndSet(current, current.withoutPrefix(index));
+		return true;
 	}
 
-	private void findClosestBrokenLamp(Map<Lamp, LampStatus> lampStatuses, Map<Lamp, Set<Direction>> lampWallCache,
-			WorldPoint playerLocation)
+	/**
+	 * Replaces any request that has not started yet with {@code request}, and
+	 * interrupts the one in progress so the worker moves on to it.
+	 */
+	private void submitRequest(Runnable request)
 	{
-		brokenLamps.clear();
-		for (Map.Entry<Lamp, LampStatus> entry : lampStatuses.entrySet())
+		synchronized (requestLock)
 		{
-			if (entry.getValue() == LampStatus.BROKEN)
+			pendingRequest.set(request);
+			interruptRunningRequest();
+
+			if (!draining)
 			{
-				brokenLamps.add(entry.getKey());
+				draining = true;
+				pathfindingExecutor.execute(this::drainRequests);
 			}
 		}
-		final Set<Lamp> lampsToCheck = new HashSet<>(brokenLamps);
+	}
 
-		if (lampsToCheck.isEmpty())
+	private void cancelPendingRequest()
+	{
+		synchronized (requestLock)
 		{
-			if (lastLoggedClosestLamp != null)
+			pendingRequest.set(null);
+			interruptRunningRequest();
+		}
+	}
+
+	private void interruptRunningRequest()
+	{
+		if (drainThread != null)
+		{
+			drainThread.interrupt();
+		}
+	}
+
+	/**
+	 * @return {@code true} if a newer request is waiting, in which case the
+	 *         current one should not publish its result.
+	 */
+	private boolean isSuperseded()
+	{
+		return pendingRequest.get() != null;
+	}
+
+	private void drainRequests()
+	{
+		Runnable request;
+		while ((request = takeRequest()) != null)
+		{
+			request.run();
+		}
+	}
+
+	/**
+	 * @return the newest request, or {@code null} once the slot is empty, which
+	 *         ends the drain task.
+	 */
+	private Runnable takeRequest()
+	{
+		synchronized (requestLock)
+		{
+			// Interrupts are only sent under the lock, so any pending one was aimed
+			// at the request that just finished
+			Thread.interrupted();
+
+			final Runnable request = pendingRequest.getAndSet(null);
+			if (request == null)
 			{
-				log.info("No broken lamps found");
-				lastLoggedClosestLamp = null;
+				draining = false;
+				drainThread = null;
 			}
-			shortestPath.clear();
-			closestDistance = 0;
-			return;
+			else
+			{
+				drainThread = Thread.currentThread();
+			}
+			return request;
+		}
+	}
+
+	/**
+	 * Reconnects the player to {@code detour}, the path they strayed from, and
+	 * publishes the result. Runs on the pathfinding thread.
+	 *
+	 * @return {@code false} if the player is too far off, and a full search is
+	 *         needed.
+	 */
+	private boolean repairPath(PathResult detour, WorldPoint playerPos)
+	{
+		final List<WorldPoint> repaired = pathfinder.repairPath(playerPos, detour.getPath(), MAX_REPAIR_STEPS);
+		if (repaired.isEmpty())
+		{
+			return false;
 		}
 
-		long currentTime = System.currentTimeMillis();
-		if (currentTime - lastClosestLampCalculation < CLOSEST_LAMP_COOLDOWN_MS)
+		if (!isSuperseded())
 		{
-			return;
+			pathResult.set(PathResult.of(repaired, detour.getTargetType(), detour.getTargetLamp(),
+					detour.getVersion()));
 		}
-		lastClosestLampCalculation = currentTime;
+		return true;
+	}
 
-		if (currentClosestLampTask != null && !currentClosestLampTask.isDone())
+	/**
+	 * @param detour path to reconnect to before searching, or {@code null}.
+	 */
+	private void findClosestBrokenLamp(WorldStateSnapshot snapshot, WorldPoint playerLocation, int token,
+			PathResult detour)
+	{
+		if (snapshot.getBrokenLampMask() == 0)
 		{
-			currentClosestLampTask.cancel(true);
+			if (lastLoggedClosestLamp != null)
+			{
+				log.info("No broken lamps found");
+				lastLoggedClosestLamp = null;
+			}
+			cancelPendingRequest();
+			// Nothing was submitted, so nothing would ever settle this request
+			forgetRequest();
+			pathResult.set(PathResult.empty(TargetType.LAMP));
+			return;
 		}
 
 		final WorldPoint playerPos = playerLocation;
 
-		currentClosestLampTask = CompletableFuture.runAsync(() ->
+		submitRequest(() ->
 		{
+			boolean settled = false;
 			try
 			{
+				if (detour != null && repairPath(detour, playerPos))
+				{
+					settled = true;
+					return;
+				}
+
+				final Set<Lamp> lampsToCheck = snapshot.getBrokenLamps();
 				final Set<WorldPoint> brokenLampLocations = lampsToCheck.stream().map(Lamp::getWorldPoint)
 						.collect(Collectors.toSet());
 
-				if (Thread.currentThread().isInterrupted())
+				if (isSuperseded())
 				{
 					return;
 				}
 
-				List<WorldPoint> path = pathfinder.findNearestPath(playerPos, brokenLampLocations, lampWallCache);
+				// The lamp state version changes exactly when the targets or walls do,
+				// so it keys the pathfinder's cached lamp field
+				List<WorldPoint> path = pathfinder.findNearestPath(playerPos, brokenLampLocations,
+						snapshot.getLampWalls(), snapshot.getLampStateVersion());
 
-				if (Thread.currentThread().isInterrupted())
+				if (isSuperseded())
 				{
 					return;
 				}
 
 				if (path != null && !path.isEmpty())
 				{
-					final List<WorldPoint> finalPath = new ArrayList<>(path);
-					final int finalDistance = finalPath.size();
-					final WorldPoint destination = finalPath.get(finalPath.size() - 1);
+					final WorldPoint destination = path.get(path.size() - 1);
 
+					// Paths end next to the lamp rather than on it
 					final Lamp finalClosestLamp = lampsToCheck.stream()
-							.filter(lamp -> lamp.getWorldPoint().equals(destination)).findFirst().orElse(null);
+							.filter(lamp -> lamp.getWorldPoint().distanceTo(destination) <= 1).findFirst().orElse(null);
 
-					shortestPath = finalPath;
-					closestDistance = finalDistance;
+					pathResult.set(PathResult.of(path, TargetType.LAMP, finalClosestLamp, snapshot.getLampStateVersion()));
+					settled = true;
 
 					if (finalClosestLamp != null && !finalClosestLamp.equals(lastLoggedClosestLamp))
 					{
@@ -210,99 +413,105 @@ public class DKLightsNavigationManager
 				}
 				else
 				{
-					shortestPath.clear();
-					closestDistance = 0;
+					pathResult.set(PathResult.empty(TargetType.LAMP));
+					settled = true;
 					if (lastLoggedClosestLamp != null)
 					{
 						lastLoggedClosestLamp = null;
 					}
 				}
 			}
+			catch (SearchCancelledException e)
+			{
+				// Superseded or cancelled, keep the current path
+			}
 			catch (Exception e)
 			{
 				log.error("Error during closest lamp calculation (BFS)", e);
-				shortestPath.clear();
-				closestDistance = 0;
+				pathResult.set(PathResult.empty(TargetType.LAMP));
 				lastLoggedClosestLamp = null;
 			}
-		}, pathfindingExecutor).exceptionally(throwable ->
-		{
-			if (!(throwable instanceof java.util.concurrent.CancellationException))
+			finally
 			{
-				log.error("Closest lamp calculation (BFS) failed", throwable);
+				finishRequest(token, settled);
 			}
-			return null;
 		});
 	}
 
-	private void calculatePathToTarget(WorldPoint targetLocation, TargetType targetType, WorldPoint playerLocation)
+	/**
+	 * @param detour path to reconnect to before searching, or {@code null}.
+	 */
+	private void calculatePathToTarget(WorldPoint targetLocation, TargetType targetType, WorldPoint playerLocation,
+			int token, PathResult detour)
 	{
-		long currentTime = System.currentTimeMillis();
-		if (currentTime - lastClosestLampCalculation < CLOSEST_LAMP_COOLDOWN_MS)
-		{
-			return;
-		}
-		lastClosestLampCalculation = currentTime;
-
-		if (currentClosestLampTask != null && !currentClosestLampTask.isDone())
-		{
-			currentClosestLampTask.cancel(true);
-		}
-
 		final WorldPoint playerPos = playerLocation;
 		final WorldPoint target = targetLocation;
 
 		if (DKLightsHelper.isInBankArea(playerLocation) && targetType == TargetType.BANK)
 		{
-			shortestPath.clear();
+			cancelPendingRequest();
+			forgetRequest();
+			pathResult.set(PathResult.empty(targetType));
 			return;
 		}
 
-		currentClosestLampTask = CompletableFuture.runAsync(() ->
+		submitRequest(() ->
 		{
+			boolean settled = false;
 			try
 			{
-				if (Thread.currentThread().isInterrupted())
+				if (isSuperseded())
+				{
+					return;
+				}
+				if (detour != null && repairPath(detour, playerPos))
 				{
+					settled = true;
 					return;
 				}
 
-				List<WorldPoint> path = pathfinder.findPath(playerPos, target);
+				if (!target.equals(partialTarget))
+				{
+					partialTarget = target;
+					partialSearches = 0;
+				}
+
+				final List<WorldPoint> path = new ArrayList<>();
+				final long budget = partialSearches < MAX_PARTIAL_SEARCHES ? PATH_BUDGET_NANOS : 0;
+				final SearchStatus status = pathfinder.findPath(playerPos, target, budget, path);
+				partialSearches = status == SearchStatus.PARTIAL ? partialSearches + 1 : 0;
 
-				if (!Thread.currentThread().isInterrupted())
+				if (!isSuperseded())
 				{
-					if (path != null && !path.isEmpty())
+					if (!path.isEmpty())
 					{
-						shortestPath = new ArrayList<>(path);
-						closestDistance = path.size();
+						pathResult.set(PathResult.of(path, targetType, null, 0));
 					}
 					else
 					{
-						shortestPath = new ArrayList<>();
-						shortestPath.add(playerPos);
-						shortestPath.add(target);
-						closestDistance = target.distanceTo(playerPos);
+						pathResult.set(PathResult.estimate(playerPos, target, targetType));
 					}
+					// A partial path is refined by the next update; a missing one, or one
+					// cut short by the iteration limit, stays until an input changes
+					settled = status != SearchStatus.PARTIAL;
 				}
 			}
+			catch (SearchCancelledException e)
+			{
+				// Superseded or cancelled, keep the current path
+			}
 			catch (Exception e)
 			{
 				log.error("Error calculating path to {}: {}", targetType, e.getMessage());
-				if (!Thread.currentThread().isInterrupted())
+				if (!isSuperseded())
 				{
-					shortestPath = new ArrayList<>();
-					shortestPath.add(playerPos);
-					shortestPath.add(target);
-					closestDistance = target.distanceTo(playerPos);
+					pathResult.set(PathResult.estimate(playerPos, target, targetType));
 				}
 			}
-		}, pathfindingExecutor).exceptionally(throwable ->
-		{
-			if (!(throwable instanceof java.util.concurrent.CancellationException))
+			finally
 			{
-				log.error("Path calculation to {} failed", targetType, throwable);
+				finishRequest(token, settled);
 			}
-			return null;
 		});
 	}
 }
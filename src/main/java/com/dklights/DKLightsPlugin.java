@@ -219,8 +219,8 @@ public class DKLightsPlugin extends Plugin
 		InventoryState inventoryState = InventoryState.NO_LIGHT_BULBS.getInventoryState(client);
 		WorldPoint playerLocation = client.getLocalPlayer().getWorldLocation();
 
-		navigationManager.update(stateManager.getLampStatuses(), stateManager.getLampWallCache(), inventoryState,
-				playerLocation, stateManager.getWireMachine());
+		WorldStateSnapshot snapshot = stateManager.publishSnapshot(inventoryState);
+		navigationManager.update(snapshot, playerLocation, stateManager.getWireMachine());
 
 		client.clearHintArrow();
 	}
@@ -2,6 +2,7 @@ package com.dklights;
 
 import com.dklights.enums.Area;
 import com.dklights.enums.Direction;
+import com.dklights.enums.InventoryState;
 import com.dklights.enums.Lamp;
 import com.dklights.enums.LampStatus;
 import java.util.EnumMap;
@@ -48,6 +49,12 @@ public class DKLightsStateManager
 	private GameObject wireMachine;
 	@Getter
 	private int wireRespawnTick = -1;
+	// Bumped whenever lamp statuses or the walls around lamps change
+	@Getter
+	private int lampStateVersion = 0;
+	// Latest snapshot handed to pathfinding tasks, see publishSnapshot
+	@Getter
+	private WorldStateSnapshot snapshot = WorldStateSnapshot.EMPTY;
 
 	private Set<Lamp> previouslyBrokenLamps = new HashSet<>();
 	@Getter
@@ -86,6 +93,18 @@ public class DKLightsStateManager
 		wireRespawnTick = -1;
 	}
 
+	/**
+	 * Captures the lamp, wall and inventory state for this tick. Parts
+	 * that did not change since the last call are shared with the previous
+	 * snapshot, and if nothing changed the previous snapshot itself is returned.
+	 * Must be called on the client thread.
+	 */
+	public WorldStateSnapshot publishSnapshot(InventoryState inventoryState)
+	{
+		snapshot = snapshot.update(lampStateVersion, lampStatuses, lampWallCache, inventoryState);
+		return snapshot;
+	}
+
 	public void onGameTick()
 	{
 		WorldPoint playerLocation = client.getLocalPlayer().getWorldLocation();
@@ -138,6 +157,11 @@ public class DKLightsStateManager
 			isLampFixed = false;
 		}
 
+		if (!newStatuses.equals(lampStatuses))
+		{
+			lampStateVersion++;
+		}
+
 		lampStatuses.clear();
 		lampStatuses.putAll(newStatuses);
 
@@ -229,6 +253,7 @@ public class DKLightsStateManager
 			stairTargetAreaMap.clear();
 			informativeStairs.clear();
 			lampWallCache.clear();
+			lampStateVersion++;
 			wireMachine = null;
 			wireRespawnTick = -1;
 			currentArea = null;
@@ -268,13 +293,19 @@ public class DKLightsStateManager
 				{
 					if (isSpawned)
 					{
-						lampWallCache.computeIfAbsent(lamp, k -> new HashSet<>()).add(dir);
+						if (lampWallCache.computeIfAbsent(lamp, k -> new HashSet<>()).add(dir))
+						{
+							lampStateVersion++;
+						}
 					}
 					else
 					{
 						lampWallCache.computeIfPresent(lamp, (k, v) ->
 						{
-							v.remove(dir);
+							if (v.remove(dir))
+							{
+								lampStateVersion++;
+							}
 							return v.isEmpty() ? null : v;
 						});
 					}
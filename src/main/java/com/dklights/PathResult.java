@@ -0,0 +1,156 @@
+package com.dklights;
+
+import com.dklights.enums.Lamp;
+import com.dklights.enums.TargetType;
+import com.dklights.pathfinder.WorldPointUtil;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import lombok.Getter;
+import net.runelite.api.coords.WorldPoint;
+
+/**
+ * Immutable outcome of one navigation request, published by
+ * {@link DKLightsNavigationManager} from the pathfinding thread and read as a
+ * whole by the overlays, so a frame never mixes the path of one request with
+ * the distance or target of another.
+ */
+public final class PathResult
+{
+	public static final PathResult EMPTY = empty(TargetType.NONE);
+
+	/**
+	 * Path points, start first. Unmodifiable.
+	 */
+	@Getter
+	private final List<WorldPoint> path;
+
+	/**
+	 * Distance shown to the player; the path length, or a straight line
+	 * estimate when no path was found.
+	 */
+	@Getter
+	private final int distance;
+
+	@Getter
+	private final TargetType targetType;
+
+	/**
+	 * Lamp the path leads to, {@code null} for other targets.
+	 */
+	@Getter
+	private final Lamp targetLamp;
+
+	/**
+	 * Lamp state version the path was computed against, zero for targets that
+	 * do not depend on lamps.
+	 */
+	@Getter
+	private final int version;
+
+	/**
+	 * {@code true} if no route was found and the path is just the start and the
+	 * target, which cannot be followed or repaired.
+	 */
+	@Getter
+	private final boolean estimate;
+
+	private final int[] packedPath;
+	private final int[] sortedPackedPath;
+
+	private PathResult(int[] packedPath, int distance, TargetType targetType, Lamp targetLamp, int version,
+			boolean estimate)
+	{
+		this.packedPath = packedPath;
+		this.distance = distance;
+		this.targetType = targetType;
+		this.targetLamp = targetLamp;
+		this.version = version;
+		this.estimate = estimate;
+
+		final List<WorldPoint> points = new ArrayList<>(packedPath.length);
+		for (int packedPoint : packedPath)
+		{
+			points.add(WorldPointUtil.unpackWorldPoint(packedPoint));
+		}
+		path = Collections.unmodifiableList(points);
+
+		sortedPackedPath = packedPath.clone();
+		Arrays.sort(sortedPackedPath);
+	}
+
+	/**
+	 * @return a result for a route that was found; the distance is its length.
+	 */
+	public static PathResult of(List<WorldPoint> path, TargetType targetType, Lamp targetLamp, int version)
+	{
+		final int[] packedPath = new int[path.size()];
+		for (int i = 0; i < packedPath.length; i++)
+		{
+			packedPath[i] = WorldPointUtil.packWorldPoint(path.get(i));
+		}
+		return new PathResult(packedPath, packedPath.length, targetType, targetLamp, version, false);
+	}
+
+	/**
+	 * @return a straight line from {@code start} to {@code target}, shown when
+	 *         no route was found.
+	 */
+	public static PathResult estimate(WorldPoint start, WorldPoint target, TargetType targetType)
+	{
+		final int[] packedPath = { WorldPointUtil.packWorldPoint(start), WorldPointUtil.packWorldPoint(target) };
+		return new PathResult(packedPath, target.distanceTo(start), targetType, null, 0, true);
+	}
+
+	/**
+	 * @return a result without a path that still reports the target type.
+	 */
+	public static PathResult empty(TargetType targetType)
+	{
+		return new PathResult(new int[0], 0, targetType, null, 0, false);
+	}
+
+	public boolean isEmpty()
+	{
+		return packedPath.length == 0;
+	}
+
+	/**
+	 * @return {@code true} if {@code point} lies on the path. Allocates nothing.
+	 */
+	public boolean contains(WorldPoint point)
+	{
+		return Arrays.binarySearch(sortedPackedPath, WorldPointUtil.packWorldPoint(point)) >= 0;
+	}
+
+	/**
+	 * @return index of {@code point} on the path, or -1.
+	 */
+	public int indexOf(WorldPoint point)
+	{
+		final int packedPoint = WorldPointUtil.packWorldPoint(point);
+		for (int i = 0; i < packedPath.length; i++)
+		{
+			if (packedPath[i] == packedPoint)
+			{
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * @return the same result with the first {@code count} points removed and
+	 *         the distance shortened to match.
+	 */
+	public PathResult withoutPrefix(int count)
+	{
+		if (count == 0)
+		{
+			return this;
+		}
+		return new PathResult(Arrays.copyOfRange(packedPath, count, packedPath.length),
+				Math.max(distance - count, 0), targetType, targetLamp, version, estimate);
+	}
+}
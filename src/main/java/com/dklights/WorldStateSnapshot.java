@@ -0,0 +1,200 @@
+package com.dklights;
+
+import com.dklights.enums.Direction;
+import com.dklights.enums.InventoryState;
+import com.dklights.enums.Lamp;
+import com.dklights.enums.LampStatus;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.Map;
+import java.util.Set;
+import lombok.Getter;
+
+/**
+ * Immutable view of the state a navigation request depends on, published by
+ * {@link DKLightsStateManager} once per tick so pathfinding tasks can read it
+ * from another thread without locks.
+ * <p>
+ * Broken lamps are a bit mask indexed by lamp ordinal, and the walled
+ * directions around each lamp are packed eight bits per lamp, one per
+ * {@link Direction} ordinal. The wall part is shared with the previous
+ * snapshot when it did not change, so publishing an unchanged tick allocates
+ * nothing.
+ * <p>
+ * Doors are not captured because the collision data the searches use does not
+ * model them.
+ */
+public final class WorldStateSnapshot
+{
+	// The broken lamp mask is a single long, which holds all 64 lamps
+	private static final int LAMP_COUNT = Lamp.values().length;
+	private static final int LAMPS_PER_WALL_WORD = Long.SIZE / Byte.SIZE;
+	private static final int WALL_WORDS = (LAMP_COUNT + LAMPS_PER_WALL_WORD - 1) / LAMPS_PER_WALL_WORD;
+
+	public static final WorldStateSnapshot EMPTY = new WorldStateSnapshot(0, 0L, new Walls(new long[WALL_WORDS]),
+			null);
+
+	/**
+	 * Bumped whenever lamp statuses or the walls around lamps change, see
+	 * {@link DKLightsStateManager#getLampStateVersion()}. Keys anything derived
+	 * from the broken lamps and walls alone.
+	 */
+	@Getter
+	private final int lampStateVersion;
+
+	/**
+	 * Bit {@code lamp.ordinal()} is set for every lamp known to be broken.
+	 */
+	@Getter
+	private final long brokenLampMask;
+
+	private final Walls walls;
+
+	@Getter
+	private final InventoryState inventoryState;
+
+	private WorldStateSnapshot(int lampStateVersion, long brokenLampMask, Walls walls, InventoryState inventoryState)
+	{
+		this.lampStateVersion = lampStateVersion;
+		this.brokenLampMask = brokenLampMask;
+		this.walls = walls;
+		this.inventoryState = inventoryState;
+	}
+
+	/**
+	 * @return this snapshot if nothing changed, otherwise a new one that shares
+	 *         every unchanged part.
+	 */
+	WorldStateSnapshot update(int lampStateVersion, Map<Lamp, LampStatus> lampStatuses,
+			Map<Lamp, Set<Direction>> lampWallCache, InventoryState inventoryState)
+	{
+		final boolean lampsChanged = lampStateVersion != this.lampStateVersion;
+		if (!lampsChanged && inventoryState == this.inventoryState)
+		{
+			return this;
+		}
+
+		long brokenLampMask = this.brokenLampMask;
+		Walls walls = this.walls;
+		if (lampsChanged)
+		{
+			brokenLampMask = 0L;
+			for (Map.Entry<Lamp, LampStatus> entry : lampStatuses.entrySet())
+			{
+				if (entry.getValue() == LampStatus.BROKEN)
+				{
+					brokenLampMask |= 1L << entry.getKey().ordinal();
+				}
+			}
+
+			final long[] wallBits = packWalls(lampWallCache);
+			if (!Arrays.equals(wallBits, this.walls.bits))
+			{
+				walls = new Walls(wallBits);
+			}
+		}
+
+		return new WorldStateSnapshot(lampStateVersion, brokenLampMask, walls, inventoryState);
+	}
+
+	public boolean isBroken(Lamp lamp)
+	{
+		return (brokenLampMask & (1L << lamp.ordinal())) != 0;
+	}
+
+	/**
+	 * @return the broken lamps as a new set.
+	 */
+	public Set<Lamp> getBrokenLamps()
+	{
+		final Set<Lamp> lamps = EnumSet.noneOf(Lamp.class);
+		for (Lamp lamp : Lamp.values())
+		{
+			if (isBroken(lamp))
+			{
+				lamps.add(lamp);
+			}
+		}
+		return lamps;
+	}
+
+	/**
+	 * @return bit {@code direction.ordinal()} is set for every direction around
+	 *         {@code lamp} that is blocked by a wall.
+	 */
+	public int getWalledDirections(Lamp lamp)
+	{
+		return walls.get(lamp.ordinal());
+	}
+
+	/**
+	 * @return immutable walled directions per lamp, in the shape the pathfinder
+	 *         takes. Lamps without walls are absent.
+	 */
+	public Map<Lamp, Set<Direction>> getLampWalls()
+	{
+		return walls.view;
+	}
+
+	private static long[] packWalls(Map<Lamp, Set<Direction>> lampWallCache)
+	{
+		final long[] bits = new long[WALL_WORDS];
+		for (Map.Entry<Lamp, Set<Direction>> entry : lampWallCache.entrySet())
+		{
+			final int lamp = entry.getKey().ordinal();
+			long directions = 0L;
+			for (Direction direction : entry.getValue())
+			{
+				directions |= 1L << direction.ordinal();
+			}
+			bits[lamp / LAMPS_PER_WALL_WORD] |= directions << (lamp % LAMPS_PER_WALL_WORD * Byte.SIZE);
+		}
+		return bits;
+	}
+
+	/**
+	 * Packed wall bits together with the map view built from them, shared
+	 * between snapshots until the walls change.
+	 */
+	private static final class Walls
+	{
+		private static final Direction[] DIRECTIONS = Direction.values();
+
+		private final long[] bits;
+		private final Map<Lamp, Set<Direction>> view;
+
+		private Walls(long[] bits)
+		{
+			this.bits = bits;
+
+			final Map<Lamp, Set<Direction>> lampWalls = new EnumMap<>(Lamp.class);
+			for (Lamp lamp : Lamp.values())
+			{
+				final int directions = get(lamp.ordinal());
+				if (directions == 0)
+				{
+					continue;
+				}
+
+				final Set<Direction> walled = EnumSet.noneOf(Direction.class);
+				for (Direction direction : DIRECTIONS)
+				{
+					if ((directions & (1 << direction.ordinal())) != 0)
+					{
+						walled.add(direction);
+					}
+				}
+				lampWalls.put(lamp, Sets.immutableEnumSet(walled));
+			}
+			view = Maps.immutableEnumMap(lampWalls);
+		}
+
+		private int get(int lamp)
+		{
+			return (int) (bits[lamp / LAMPS_PER_WALL_WORD] >>> (lamp % LAMPS_PER_WALL_WORD * Byte.SIZE)) & 0xFF;
+		}
+	}
+}
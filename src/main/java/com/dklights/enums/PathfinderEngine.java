@@ -0,0 +1,36 @@
+package com.dklights.enums;
+
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+
+@Getter
+@RequiredArgsConstructor
+public enum PathfinderEngine
+{
+	LEGACY("Legacy A*"),
+	PACKED("Packed A*"),
+	// Packed A* for single targets, bitboard flood fill for the nearest lamp
+	BITBOARD("Bitboard flood fill"),
+	// Packed A* for single targets, cached reverse distance field for the nearest lamp
+	DISTANCE_FIELD("Distance field"),
+	// D* Lite sessions that keep their search tree between queries and replan incrementally
+	INCREMENTAL("Incremental (D* Lite)"),
+	// Bidirectional A* for single targets, packed Dijkstra for the nearest lamp
+	BIDIRECTIONAL("Bidirectional A*"),
+	// HPA* over room-sized clusters for single targets, packed Dijkstra for the nearest lamp
+	HIERARCHICAL("Hierarchical (HPA*)"),
+	// Packed A* with landmark (ALT) lower bounds for single targets, packed Dijkstra for the nearest lamp
+	LANDMARK("Landmark A* (ALT)"),
+	// Jump point search with precomputed forced neighbours for single targets, packed Dijkstra for the nearest lamp
+	JUMP_POINT("Jump point search"),
+	// Contraction hierarchy over transport, doorway and lamp portals for single targets, packed Dijkstra for the nearest lamp
+	CONTRACTION("Contraction hierarchy");
+
+	private final String displayName;
+
+	@Override
+	public String toString()
+	{
+		return displayName;
+	}
+}
@@ -19,6 +19,7 @@ import com.dklights.DKLightsConfig;
 import com.dklights.DKLightsConstants;
 import com.dklights.DKLightsHelper;
 import com.dklights.DKLightsPlugin;
+import com.dklights.PathResult;
 import com.dklights.enums.HighlightType;
 import com.dklights.enums.Lamp;
 import com.dklights.enums.LampStatus;
@@ -71,7 +72,7 @@ public class DKLightsOverlay extends Overlay
 			return null;
 		}
 
-		Set<WorldPoint> pathPoints = new HashSet<>(plugin.getNavigationManager().getShortestPath());
+		PathResult pathResult = plugin.getNavigationManager().getPathResult();
 
 		Map<WorldPoint, WallObject> doorsMap = plugin.getStateManager().getSpawnedDoors();
 		Map<WorldPoint, GameObject> stairsMap = plugin.getStateManager().getSpawnedStairs();
@@ -80,7 +81,7 @@ public class DKLightsOverlay extends Overlay
 
 		renderLamps(graphics);
 
-		drawPathToLocation(graphics, pathPoints, pathRenderedObjects, doorsMap, stairsMap);
+		drawPathToLocation(graphics, pathResult, pathRenderedObjects, doorsMap, stairsMap);
 
 		if (config.highlightClosedDoors())
 		{
@@ -202,7 +203,7 @@ public class DKLightsOverlay extends Overlay
 		}
 	}
 
-	private void drawPathToLocation(Graphics2D graphics, Set<WorldPoint> pathPoints,
+	private void drawPathToLocation(Graphics2D graphics, PathResult pathResult,
 			Set<TileObject> pathRenderedObjects, Map<WorldPoint, WallObject> doorsMap,
 			Map<WorldPoint, GameObject> stairsMap)
 	{
@@ -211,13 +212,13 @@ public class DKLightsOverlay extends Overlay
 			return;
 		}
 
-		List<WorldPoint> path = plugin.getNavigationManager().getShortestPath();
-		if (path == null || path.isEmpty())
+		if (pathResult.isEmpty())
 		{
 			return;
 		}
 
-		TargetType targetType = plugin.getNavigationManager().getCurrentTargetType();
+		List<WorldPoint> path = pathResult.getPath();
+		TargetType targetType = pathResult.getTargetType();
 		boolean isUtilityTarget = targetType == TargetType.BANK || targetType == TargetType.WIRING_MACHINE;
 
 		Set<Transport> activeTransports = new HashSet<>();
@@ -303,7 +304,7 @@ public class DKLightsOverlay extends Overlay
 			List<Transport> transports = plugin.getPathfinder().getTransportsAt(point);
 			for (Transport transport : transports)
 			{
-				if (pathPoints.contains(transport.getOrigin()) && pathPoints.contains(transport.getDestination()))
+				if (pathResult.contains(transport.getOrigin()) && pathResult.contains(transport.getDestination()))
 				{
 					activeTransports.add(transport);
 				}
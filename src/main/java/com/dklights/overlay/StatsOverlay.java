@@ -3,6 +3,7 @@ package com.dklights.overlay;
 import com.dklights.DKLightsConfig;
 import com.dklights.DKLightsHelper;
 import com.dklights.DKLightsPlugin;
+import com.dklights.PathResult;
 import com.dklights.enums.Area;
 import com.dklights.enums.TargetType;
 
@@ -58,20 +59,23 @@ public class StatsOverlay extends OverlayPanel
 
 		panelComponent.getChildren().add(TitleComponent.builder().text("Dorgesh-Kaan Lights").color(Color.CYAN).build());
 
+		PathResult pathResult = plugin.getNavigationManager().getPathResult();
+		TargetType targetType = plugin.getNavigationManager().getCurrentTargetType();
+
 		panelComponent.getChildren()
 				.add(LineComponent.builder().left("Target:")
-						.right(plugin.getNavigationManager().getCurrentTargetType().getDisplayName())
+						.right(targetType.getDisplayName())
 						.rightColor(config.pathColor()).build());
 
-		if (config.showClosestDistance() && config.showPathToLocation() && plugin.getNavigationManager().getCurrentTargetType() != TargetType.NONE)
+		if (config.showClosestDistance() && config.showPathToLocation() && targetType != TargetType.NONE)
 		{
-			int closestDist = plugin.getNavigationManager().getClosestDistance();
+			int closestDist = pathResult.getDistance();
 
 			String distText = (closestDist == 0) ? "---" : (String.valueOf(closestDist) + " tiles");
 			LineComponentBuilder line = LineComponent.builder().left("Distance:").right(distText);
 
 			if ((closestDist > config.maxPathDistance() || closestDist == 0)
-					&& plugin.getNavigationManager().getCurrentTargetType() == TargetType.LAMP)
+					&& targetType == TargetType.LAMP)
 			{
 				boolean blinkOn = (System.currentTimeMillis() / 600) % 2 == 0;
 				line.rightColor(blinkOn ? Color.RED : Color.WHITE);
@@ -9,6 +9,7 @@ import javax.inject.Inject;
 import com.dklights.DKLightsConfig;
 import com.dklights.DKLightsConstants;
 import com.dklights.DKLightsPlugin;
+import com.dklights.PathResult;
 import com.dklights.enums.TargetType;
 
 import net.runelite.api.coords.WorldPoint;
@@ -37,7 +38,8 @@ public class TeleportOverlay extends WidgetItemOverlay
 			return;
 		}
 
-        int closestDist = plugin.getNavigationManager().getClosestDistance();
+        PathResult pathResult = plugin.getNavigationManager().getPathResult();
+        int closestDist = pathResult.getDistance();
 
 		if ((closestDist > config.maxPathDistance() || closestDist == 0)
 				&& plugin.getNavigationManager().getCurrentTargetType() == TargetType.LAMP)
@@ -0,0 +1,394 @@
+package com.dklights.pathfinder;
+
+import com.dklights.enums.Direction;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Bidirectional A* between a start tile and the tiles cardinally adjacent to a
+ * target, meeting in the middle.
+ * <p>
+ * The forward search follows {@link CollisionMap} moves and outgoing
+ * transports from the start; the backward search runs from every goal tile
+ * over the reversed edges, using the neighbour offsets in reverse for walking
+ * and {@link TransportIndex#getIncomingEdge(int)} for transports. Each side
+ * uses its own admissible heuristic towards the other end. Because the
+ * cross-plane bounds are not consistent, closed tiles are reopened when
+ * reached more cheaply, and the search stops once the lowest f-cost on either
+ * side is no lower than the best meeting cost found so far; every cheaper
+ * route would have to pass through a tile that side has still queued.
+ * <p>
+ * The two sides use separate per-thread {@link SearchContext}s, so instances
+ * can be shared between threads like {@link PackedPathfinder}.
+ */
+@Slf4j
+class BidirectionalSearch
+{
+	private static final int DIRECTION_COUNT = Direction.values().length;
+	private static final Direction[] CARDINAL_DIRECTIONS =
+	{ Direction.NORTH, Direction.EAST, Direction.SOUTH, Direction.WEST };
+
+	private static final byte REACHED = 1;
+	private static final byte CLOSED = 1 << 1;
+
+	private static final int NO_MEETING = Integer.MAX_VALUE;
+
+	private final CollisionMap collisionMap;
+	private final TransportIndex transports;
+	private final ConnectedComponents components;
+	private final int maxIterations;
+	private final int maxPathLength;
+
+	private final ThreadLocal<SearchContext> forwardContexts;
+	private final ThreadLocal<SearchContext> backwardContexts;
+
+	BidirectionalSearch(CollisionMap collisionMap, TransportIndex transports, ConnectedComponents components,
+			ThreadLocal<SearchContext> forwardContexts, ThreadLocal<SearchContext> backwardContexts, int maxIterations,
+			int maxPathLength)
+	{
+		this.collisionMap = collisionMap;
+		this.transports = transports;
+		this.components = components;
+		this.forwardContexts = forwardContexts;
+		this.backwardContexts = backwardContexts;
+		this.maxIterations = maxIterations;
+		this.maxPathLength = maxPathLength;
+	}
+
+	/**
+	 * Shortest path from {@code start} to any walkable tile cardinally adjacent
+	 * to {@code end}.
+	 *
+	 * @param start packed start point.
+	 * @param end   packed target point.
+	 * @param path  receives the packed path, start first. Cleared on entry.
+	 * @return {@link SearchStatus#FOUND}, or {@link SearchStatus#NOT_FOUND} if
+	 *         there is no path or the iteration limit was hit.
+	 * @throws SearchCancelledException if the thread is interrupted mid-search.
+	 */
+	SearchStatus findPath(int start, int end, PrimitiveIntList path)
+	{
+		path.clear();
+
+		final int startTile = collisionMap.getTileIndex(start);
+		if (startTile < 0)
+		{
+			return SearchStatus.NOT_FOUND;
+		}
+
+		if (start == end)
+		{
+			path.add(start);
+			return SearchStatus.FOUND;
+		}
+
+		final Query query = new Query(startTile, end);
+		final SearchContext forward = forwardContexts.get();
+		final SearchContext backward = backwardContexts.get();
+		forward.reset();
+		backward.reset();
+
+		for (Direction direction : CARDINAL_DIRECTIONS)
+		{
+			final int tile = collisionMap.getTileIndex(query.endX + direction.getX(), query.endY + direction.getY(),
+					query.endZ);
+			if (tile >= 0 && isWalkable(tile) && components.isConnected(startTile, tile)
+					&& !backward.hasFlags(tile, REACHED))
+			{
+				backward.addFlags(tile, REACHED);
+				backward.getGCost()[tile] = 0;
+				backward.getParent()[tile] = -1;
+				final int h = backwardEstimate(tile, query);
+				backward.getOpenSet().addOrDecrease(tile, IndexedMinHeap.priority(h, h));
+			}
+		}
+
+		if (backward.getOpenSet().isEmpty())
+		{
+			log.debug("No reachable tiles next to {}", WorldPointUtil.unpackWorldPoint(end));
+			return SearchStatus.NOT_FOUND;
+		}
+
+		forward.addFlags(startTile, REACHED);
+		forward.getGCost()[startTile] = 0;
+		forward.getParent()[startTile] = -1;
+		final int startEstimate = forwardEstimate(startTile, query);
+		forward.getOpenSet().addOrDecrease(startTile, IndexedMinHeap.priority(startEstimate, startEstimate));
+		if (backward.hasFlags(startTile, REACHED))
+		{
+			query.meet(startTile, 0);
+		}
+
+		final IndexedMinHeap forwardOpen = forward.getOpenSet();
+		final IndexedMinHeap backwardOpen = backward.getOpenSet();
+		int iterations = 0;
+		while (!forwardOpen.isEmpty() && !backwardOpen.isEmpty()
+				&& lowestF(forwardOpen) < query.bestCost && lowestF(backwardOpen) < query.bestCost)
+		{
+			if (++iterations > maxIterations)
+			{
+				log.debug("Bidirectional findPath hit MAX_ITERATIONS ({})", maxIterations);
+				return SearchStatus.NOT_FOUND;
+			}
+			SearchCancelledException.checkInterrupted(iterations);
+
+			// Grow the smaller frontier, which keeps the two roughly balanced
+			if (forwardOpen.size() <= backwardOpen.size())
+			{
+				expandForward(forward, backward, query);
+			}
+			else
+			{
+				expandBackward(backward, forward, query);
+			}
+		}
+
+		if (query.meeting < 0)
+		{
+			return SearchStatus.NOT_FOUND;
+		}
+
+		log.debug("Bidirectional findPath expanded {} tiles", iterations);
+		reconstructPath(forward, backward, query.meeting, path);
+		return SearchStatus.FOUND;
+	}
+
+	private void expandForward(SearchContext forward, SearchContext backward, Query query)
+	{
+		final int current = forward.getOpenSet().poll();
+		forward.addFlags(current, CLOSED);
+		forward.countExpansion();
+
+		final int[] gCost = forward.getGCost();
+		final int directions = collisionMap.getTraversableDirections(current);
+		for (int d = 0; d < DIRECTION_COUNT; d++)
+		{
+			if ((directions & (1 << d)) != 0)
+			{
+				final int neighbor = collisionMap.getNeighborTileIndex(current, d);
+				if (relax(forward, current, neighbor, gCost[current] + 1, forwardEstimate(neighbor, query)))
+				{
+					checkMeeting(forward, backward, neighbor, query);
+				}
+			}
+		}
+
+		for (int t = transports.getOutgoingStart(current); t < transports.getOutgoingEnd(current); t++)
+		{
+			final int neighbor = transports.getDestination(t);
+			if (relax(forward, current, neighbor, gCost[current] + transports.getCost(t),
+					forwardEstimate(neighbor, query)))
+			{
+				checkMeeting(forward, backward, neighbor, query);
+			}
+		}
+	}
+
+	private void expandBackward(SearchContext backward, SearchContext forward, Query query)
+	{
+		final int current = backward.getOpenSet().poll();
+		backward.addFlags(current, CLOSED);
+		// Both directions are reported through the forward context
+		forward.countExpansion();
+
+		final int[] gCost = backward.getGCost();
+		final int tileCount = collisionMap.getTileCount();
+		for (int d = 0; d < DIRECTION_COUNT; d++)
+		{
+			// The tile that reaches current by stepping in direction d
+			final int previous = current - (collisionMap.getNeighborTileIndex(current, d) - current);
+			if (previous >= 0 && previous < tileCount
+					&& (collisionMap.getTraversableDirections(previous) & (1 << d)) != 0
+					&& relax(backward, current, previous, gCost[current] + 1, backwardEstimate(previous, query)))
+			{
+				checkMeeting(forward, backward, previous, query);
+			}
+		}
+
+		for (int i = transports.getIncomingStart(current); i < transports.getIncomingEnd(current); i++)
+		{
+			final int edge = transports.getIncomingEdge(i);
+			final int previous = transports.getOrigin(edge);
+			if (relax(backward, current, previous, gCost[current] + transports.getCost(edge),
+					backwardEstimate(previous, query)))
+			{
+				checkMeeting(forward, backward, previous, query);
+			}
+		}
+	}
+
+	/**
+	 * @return {@code true} if {@code neighbor} got a lower cost.
+	 */
+	private boolean relax(SearchContext context, int current, int neighbor, int cost, int h)
+	{
+		if (cost > maxPathLength)
+		{
+			return false;
+		}
+
+		final int[] gCost = context.getGCost();
+		if (context.hasFlags(neighbor, REACHED))
+		{
+			if (cost >= gCost[neighbor])
+			{
+				return false;
+			}
+			context.removeFlags(neighbor, CLOSED);
+		}
+
+		context.addFlags(neighbor, REACHED);
+		gCost[neighbor] = cost;
+		context.getParent()[neighbor] = current;
+		context.getOpenSet().addOrDecrease(neighbor, IndexedMinHeap.priority(cost + h, h));
+		return true;
+	}
+
+	private static void checkMeeting(SearchContext forward, SearchContext backward, int tile, Query query)
+	{
+		if (forward.hasFlags(tile, REACHED) && backward.hasFlags(tile, REACHED))
+		{
+			query.meet(tile, forward.getGCost()[tile] + backward.getGCost()[tile]);
+		}
+	}
+
+	private static int lowestF(IndexedMinHeap openSet)
+	{
+		return (int) (openSet.getPriority(openSet.peek()) >>> 32);
+	}
+
+	private boolean isWalkable(int tile)
+	{
+		return transports.hasOutgoing(tile) || collisionMap.getTraversableDirections(tile) != 0;
+	}
+
+	/**
+	 * Admissible estimate of the cost from {@code tile} to a goal. Off the
+	 * target plane this is the bound the packed A* uses; on it, the Chebyshev
+	 * distance is capped by the cheapest detour over another plane, since the
+	 * stopping rule is only exact with an admissible estimate.
+	 */
+	private int forwardEstimate(int tile, Query query)
+	{
+		final int point = collisionMap.getPackedPoint(tile);
+		final int z = WorldPointUtil.unpackWorldPlane(point);
+		if (z != query.endZ)
+		{
+			int estimate = Math.max(transports.getPlaneLowerBound(z, query.endZ), 0);
+			final int exitDistance = transports.getExitDistance(tile);
+			if (exitDistance != TransportIndex.NO_ROUTE && query.entryCost != TransportIndex.NO_ROUTE)
+			{
+				estimate = Math.max(estimate, exitDistance + query.entryCost);
+			}
+			return estimate;
+		}
+
+		final int dx = Math.abs(WorldPointUtil.unpackWorldX(point) - query.endX);
+		final int dy = Math.abs(WorldPointUtil.unpackWorldY(point) - query.endY);
+		final int estimate = Math.max(Math.max(dx, dy) - 1, 0);
+
+		// Stairs can cut across the plane: leave it for at least one, then
+		// arrive back near the target
+		final int exitDistance = transports.getExitDistance(tile);
+		if (exitDistance != TransportIndex.NO_ROUTE && query.entryCost != TransportIndex.NO_ROUTE)
+		{
+			return Math.min(estimate, exitDistance + 1 + query.entryCost);
+		}
+		return estimate;
+	}
+
+	/**
+	 * Admissible estimate of the cost from the start to {@code tile}. Off the
+	 * start plane the route first walks to a portal leaving it, then pays at
+	 * least the cheapest transport cost between the two planes. On the start
+	 * plane the Chebyshev distance is capped the same way as in
+	 * {@link #forwardEstimate(int, Query)}.
+	 */
+	private int backwardEstimate(int tile, Query query)
+	{
+		final int point = collisionMap.getPackedPoint(tile);
+		final int z = WorldPointUtil.unpackWorldPlane(point);
+		if (z != query.startZ)
+		{
+			final int planeLowerBound = transports.getPlaneLowerBound(query.startZ, z);
+			int estimate = Math.max(planeLowerBound, 0);
+			if (query.startExitDistance != TransportIndex.NO_ROUTE && planeLowerBound != TransportIndex.NO_ROUTE)
+			{
+				estimate = Math.max(estimate, query.startExitDistance + planeLowerBound);
+			}
+			return estimate;
+		}
+
+		final int dx = Math.abs(WorldPointUtil.unpackWorldX(point) - query.startX);
+		final int dy = Math.abs(WorldPointUtil.unpackWorldY(point) - query.startY);
+		final int estimate = Math.max(dx, dy);
+
+		// Or walk to a portal, leave the plane and come back, two transports
+		if (query.startExitDistance != TransportIndex.NO_ROUTE)
+		{
+			return Math.min(estimate, query.startExitDistance + 2);
+		}
+		return estimate;
+	}
+
+	private void reconstructPath(SearchContext forward, SearchContext backward, int meeting, PrimitiveIntList path)
+	{
+		final int[] forwardParent = forward.getParent();
+		for (int tile = meeting; tile != -1; tile = forwardParent[tile])
+		{
+			path.add(collisionMap.getPackedPoint(tile));
+		}
+
+		for (int i = 0, j = path.size() - 1; i < j; i++, j--)
+		{
+			path.set(j, path.set(i, path.get(j)));
+		}
+
+		// Backward parents point towards the goals
+		final int[] backwardParent = backward.getParent();
+		for (int tile = backwardParent[meeting]; tile != -1; tile = backwardParent[tile])
+		{
+			path.add(collisionMap.getPackedPoint(tile));
+		}
+	}
+
+	/**
+	 * Endpoints and per-query constants of one search, and the best meeting
+	 * tile found so far.
+	 */
+	private final class Query
+	{
+		private final int startX;
+		private final int startY;
+		private final int startZ;
+		private final int startExitDistance;
+		private final int endX;
+		private final int endY;
+		private final int endZ;
+		private final int entryCost;
+
+		private int meeting = -1;
+		private int bestCost = NO_MEETING;
+
+		private Query(int startTile, int end)
+		{
+			final int start = collisionMap.getPackedPoint(startTile);
+			startX = WorldPointUtil.unpackWorldX(start);
+			startY = WorldPointUtil.unpackWorldY(start);
+			startZ = WorldPointUtil.unpackWorldPlane(start);
+			startExitDistance = transports.getExitDistance(startTile);
+			endX = WorldPointUtil.unpackWorldX(end);
+			endY = WorldPointUtil.unpackWorldY(end);
+			endZ = WorldPointUtil.unpackWorldPlane(end);
+			entryCost = transports.getEntryCost(endZ, endX, endY, 1);
+		}
+
+		private void meet(int tile, int cost)
+		{
+			if (cost < bestCost)
+			{
+				bestCost = cost;
+				meeting = tile;
+			}
+		}
+	}
+}
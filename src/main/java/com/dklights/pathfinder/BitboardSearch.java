@@ -0,0 +1,377 @@
+package com.dklights.pathfinder;
+
+import com.dklights.enums.Direction;
+import java.util.Arrays;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Shortest-path search that expands a whole ring of equally distant tiles at a
+ * time using bitwise operations.
+ * <p>
+ * Dorgesh-Kaan is exactly 64 tiles wide, so a row of one plane fits in one
+ * {@code long} and tile index {@code i} of {@link CollisionMap} is bit
+ * {@code i & 63} of word {@code i >> 6}. For every direction a passability
+ * bitboard holds the tiles that may step that way; the next ring is the union
+ * of the current ring masked by each passability board and shifted by the
+ * direction's offset, minus everything already visited. Ring {@code r} holds
+ * the tiles that cost exactly {@code r} to reach, so a transport costing
+ * {@code c} is applied by testing its origin bit in ring {@code r - c}.
+ * <p>
+ * Every ring is kept as a snapshot so the path can be traced back from the
+ * goal by looking for a predecessor in the previous ring, or in an earlier
+ * ring for a transport that costs more than one. Snapshots are
+ * allocated on first use and reused by later queries; only the rows a ring can
+ * touch are cleared.
+ * <p>
+ * Instances are <strong>not</strong> thread-safe.
+ */
+@Slf4j
+class BitboardSearch
+{
+	private static final Direction[] DIRECTIONS = Direction.values();
+	private static final int ROW_BITS = 6;
+	private static final int ROW_MASK = (1 << ROW_BITS) - 1;
+
+	// Boards are padded with an empty row on each side so vertical shifts never
+	// need a bounds check
+	private static final int PADDING = 1;
+
+	private final CollisionMap collisionMap;
+	private final int maxRings;
+	private final int rows;
+	private final int words;
+
+	private final long[][] passable;
+	private final int[] tileOffsets;
+	private final int[] transportOrigins;
+	private final int[] transportDestinations;
+	private final int[] transportCosts;
+	private final int maxTransportCost;
+
+	private final long[] visited;
+	private final long[] goals;
+	private long[][] rings = new long[64][];
+	private int[] ringLow = new int[64];
+	private int[] ringHigh = new int[64];
+
+	/**
+	 * @throws IllegalArgumentException if the collision grid is not 64 tiles
+	 *                                  wide.
+	 */
+	BitboardSearch(CollisionMap collisionMap, TransportIndex transports, int maxRings)
+	{
+		if (collisionMap.getGridWidth() != Long.SIZE)
+		{
+			throw new IllegalArgumentException("Bitboard search needs a 64 tile wide grid, got "
+					+ collisionMap.getGridWidth());
+		}
+
+		this.collisionMap = collisionMap;
+		this.maxRings = maxRings;
+		this.rows = collisionMap.getGridHeight() * CollisionMap.PLANE_COUNT;
+		this.words = rows + 2 * PADDING;
+
+		passable = new long[DIRECTIONS.length][words];
+		tileOffsets = new int[DIRECTIONS.length];
+		for (int d = 0; d < DIRECTIONS.length; d++)
+		{
+			tileOffsets[d] = DIRECTIONS[d].getX() + DIRECTIONS[d].getY() * Long.SIZE;
+		}
+
+		for (int tile = 0; tile < collisionMap.getTileCount(); tile++)
+		{
+			final int directions = collisionMap.getTraversableDirections(tile);
+			for (int d = 0; d < DIRECTIONS.length; d++)
+			{
+				if ((directions & (1 << d)) != 0)
+				{
+					setBit(passable[d], tile);
+				}
+			}
+		}
+
+		transportOrigins = new int[transports.size()];
+		transportDestinations = new int[transports.size()];
+		transportCosts = new int[transports.size()];
+		int maxCost = 1;
+		for (int t = 0; t < transports.size(); t++)
+		{
+			transportOrigins[t] = transports.getOrigin(t);
+			transportDestinations[t] = transports.getDestination(t);
+			transportCosts[t] = transports.getCost(t);
+			maxCost = Math.max(maxCost, transportCosts[t]);
+		}
+		maxTransportCost = maxCost;
+
+		visited = new long[words];
+		goals = new long[words];
+	}
+
+	/**
+	 * Finds a shortest path, counting one per step and the transport duration
+	 * per transport, from {@code start} to the nearest of the given goal tiles.
+	 *
+	 * @param start     packed start point.
+	 * @param goalTiles packed goal points; points outside the collision grid are
+	 *                  ignored.
+	 * @param path      receives the packed path, start first. Cleared on entry.
+	 * @return {@code true} if a path was found within the ring limit.
+	 */
+	boolean findNearestPath(int start, PrimitiveIntList goalTiles, PrimitiveIntList path)
+	{
+		path.clear();
+
+		final int startTile = collisionMap.getTileIndex(start);
+		if (startTile < 0)
+		{
+			return false;
+		}
+
+		Arrays.fill(visited, 0L);
+		Arrays.fill(goals, 0L);
+
+		boolean anyGoal = false;
+		for (int i = 0; i < goalTiles.size(); i++)
+		{
+			final int tile = collisionMap.getTileIndex(goalTiles.get(i));
+			if (tile >= 0)
+			{
+				setBit(goals, tile);
+				anyGoal = true;
+			}
+		}
+
+		if (!anyGoal)
+		{
+			return false;
+		}
+
+		if (getBit(goals, startTile))
+		{
+			path.add(start);
+			return true;
+		}
+
+		long[] current = ring(0);
+		int low = wordIndex(startTile);
+		int high = low;
+		current[low] = 0L;
+		setBit(current, startTile);
+		setBit(visited, startTile);
+		ringLow[0] = low;
+		ringHigh[0] = high;
+
+		// A ring with no fresh tiles only ends the search once no transport from
+		// an earlier ring can still land in a later one
+		int emptyRings = 0;
+		for (int ring = 1; ring <= maxRings; ring++)
+		{
+			SearchCancelledException.checkInterrupted();
+
+			// Only the words a ring can write to are cleared, the rest of the
+			// snapshot is stale and ignored through ringLow and ringHigh
+			final long[] next = ring(ring);
+			int nextLow = low - 1;
+			int nextHigh = high + 1;
+			Arrays.fill(next, nextLow, nextHigh + 1, 0L);
+
+			for (int w = low; w <= high; w++)
+			{
+				final long frontier = current[w];
+				if (frontier == 0L)
+				{
+					continue;
+				}
+
+				// Order matches Direction: W, E, S, N, SW, SE, NW, NE
+				next[w] |= (frontier & passable[0][w]) >>> 1;
+				next[w] |= (frontier & passable[1][w]) << 1;
+				next[w - 1] |= frontier & passable[2][w];
+				next[w + 1] |= frontier & passable[3][w];
+				next[w - 1] |= (frontier & passable[4][w]) >>> 1;
+				next[w - 1] |= (frontier & passable[5][w]) << 1;
+				next[w + 1] |= (frontier & passable[6][w]) >>> 1;
+				next[w + 1] |= (frontier & passable[7][w]) << 1;
+			}
+
+			for (int t = 0; t < transportOrigins.length; t++)
+			{
+				final int from = ring - transportCosts[t];
+				if (from >= 0 && getBit(rings[from], ringLow[from], ringHigh[from], transportOrigins[t]))
+				{
+					final int w = wordIndex(transportDestinations[t]);
+					if (w < nextLow)
+					{
+						Arrays.fill(next, w, nextLow, 0L);
+						nextLow = w;
+					}
+					else if (w > nextHigh)
+					{
+						Arrays.fill(next, nextHigh + 1, w + 1, 0L);
+						nextHigh = w;
+					}
+					setBit(next, transportDestinations[t]);
+				}
+			}
+
+			int reached = -1;
+			low = Integer.MAX_VALUE;
+			high = Integer.MIN_VALUE;
+
+			for (int w = nextLow; w <= nextHigh; w++)
+			{
+				final long fresh = next[w] & ~visited[w];
+				next[w] = fresh;
+				if (fresh == 0L)
+				{
+					continue;
+				}
+
+				visited[w] |= fresh;
+				low = Math.min(low, w);
+				high = Math.max(high, w);
+
+				final long hit = fresh & goals[w];
+				if (hit != 0L && reached < 0)
+				{
+					reached = ((w - PADDING) << ROW_BITS) | Long.numberOfTrailingZeros(hit);
+				}
+			}
+
+			ringLow[ring] = nextLow;
+			ringHigh[ring] = nextHigh;
+
+			if (reached >= 0)
+			{
+				tracePath(reached, ring, path);
+				return true;
+			}
+
+			if (low > high)
+			{
+				if (++emptyRings >= maxTransportCost)
+				{
+					return false;
+				}
+
+				// Keep the next fill range inside the board
+				low = PADDING;
+				high = PADDING - 1;
+			}
+			else
+			{
+				emptyRings = 0;
+			}
+
+			current = next;
+		}
+
+		log.debug("Bitboard findNearestPath hit ring limit ({})", maxRings);
+		return false;
+	}
+
+	private void tracePath(int goalTile, int goalRing, PrimitiveIntList path)
+	{
+		int tile = goalTile;
+		path.add(collisionMap.getPackedPoint(tile));
+
+		int ring = goalRing;
+		while (ring > 0)
+		{
+			final int step = findStepPredecessor(ring - 1, tile);
+			if (step >= 0)
+			{
+				tile = step;
+				ring--;
+			}
+			else
+			{
+				final int t = findTransportPredecessor(ring, tile);
+				tile = transportOrigins[t];
+				ring -= transportCosts[t];
+			}
+			path.add(collisionMap.getPackedPoint(tile));
+		}
+
+		for (int i = 0, j = path.size() - 1; i < j; i++, j--)
+		{
+			path.set(j, path.set(i, path.get(j)));
+		}
+	}
+
+	private int findStepPredecessor(int ringIndex, int tile)
+	{
+		final long[] ring = rings[ringIndex];
+		final int low = ringLow[ringIndex];
+		final int high = ringHigh[ringIndex];
+
+		for (int d = 0; d < DIRECTIONS.length; d++)
+		{
+			final int candidate = tile - tileOffsets[d];
+			if (candidate >= 0 && candidate < collisionMap.getTileCount() && getBit(ring, low, high, candidate)
+					&& getBit(passable[d], candidate))
+			{
+				return candidate;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * @return the transport that reaches {@code tile} in ring {@code ringIndex}
+	 *         from the ring its cost earlier.
+	 */
+	private int findTransportPredecessor(int ringIndex, int tile)
+	{
+		for (int t = 0; t < transportOrigins.length; t++)
+		{
+			final int from = ringIndex - transportCosts[t];
+			if (transportDestinations[t] == tile && from >= 0
+					&& getBit(rings[from], ringLow[from], ringHigh[from], transportOrigins[t]))
+			{
+				return t;
+			}
+		}
+
+		throw new IllegalStateException("No predecessor for tile " + tile + " in ring " + ringIndex);
+	}
+
+	private long[] ring(int index)
+	{
+		if (index >= rings.length)
+		{
+			rings = Arrays.copyOf(rings, Math.max(rings.length << 1, index + 1));
+		}
+		if (rings[index] == null)
+		{
+			rings[index] = new long[words];
+		}
+		if (index >= ringLow.length)
+		{
+			ringLow = Arrays.copyOf(ringLow, rings.length);
+			ringHigh = Arrays.copyOf(ringHigh, rings.length);
+		}
+		return rings[index];
+	}
+
+	private static int wordIndex(int tile)
+	{
+		return (tile >> ROW_BITS) + PADDING;
+	}
+
+	private static boolean getBit(long[] board, int low, int high, int tile)
+	{
+		final int w = wordIndex(tile);
+		return w >= low && w <= high && (board[w] & (1L << (tile & ROW_MASK))) != 0L;
+	}
+
+	private static boolean getBit(long[] board, int tile)
+	{
+		return (board[wordIndex(tile)] & (1L << (tile & ROW_MASK))) != 0L;
+	}
+
+	private static void setBit(long[] board, int tile)
+	{
+		board[wordIndex(tile)] |= 1L << (tile & ROW_MASK);
+	}
+}
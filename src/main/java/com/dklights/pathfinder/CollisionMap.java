@@ -6,13 +6,30 @@ import net.runelite.api.coords.WorldPoint;
 import com.dklights.enums.Transport;
 import com.dklights.enums.Direction;
 
+import static net.runelite.api.Constants.REGION_SIZE;
+
 public class CollisionMap
 {
 
 	private static final java.util.List<Direction> ORDINAL_VALUES = java.util.Arrays.asList(Direction.values());
 
+	/**
+	 * Number of planes covered by the dense tile grid. Packed world points only
+	 * carry two plane bits, so this is also the maximum.
+	 */
+	public static final int PLANE_COUNT = 4;
+
 	private final SplitFlagMap collisionData;
 
+	private final int gridMinX;
+	private final int gridMinY;
+	private final int gridWidth;
+	private final int gridHeight;
+
+	// One byte per grid tile, bit i set if Direction.values()[i] is traversable
+	private final byte[] directionMasks;
+	private final int[] directionOffsets;
+
 	public byte[] getPlanes()
 	{
 		return collisionData.getRegionMapPlaneCounts();
@@ -21,6 +38,102 @@ public class CollisionMap
 	public CollisionMap(SplitFlagMap collisionData)
 	{
 		this.collisionData = collisionData;
+
+		SplitFlagMap.RegionExtent extent = SplitFlagMap.getRegionExtents();
+		this.gridMinX = extent.getMinX() * REGION_SIZE;
+		this.gridMinY = extent.getMinY() * REGION_SIZE;
+		this.gridWidth = (extent.getWidth() + 1) * REGION_SIZE;
+		this.gridHeight = (extent.getHeight() + 1) * REGION_SIZE;
+
+		this.directionOffsets = new int[ORDINAL_VALUES.size()];
+		for (int i = 0; i < directionOffsets.length; i++)
+		{
+			Direction d = ORDINAL_VALUES.get(i);
+			directionOffsets[i] = d.getX() + d.getY() * gridWidth;
+		}
+
+		this.directionMasks = new byte[getTileCount()];
+		for (int z = 0; z < PLANE_COUNT; z++)
+		{
+			for (int y = gridMinY; y < gridMinY + gridHeight; y++)
+			{
+				for (int x = gridMinX; x < gridMinX + gridWidth; x++)
+				{
+					directionMasks[getTileIndex(x, y, z)] = (byte) computeTraversableDirections(x, y, z);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Returns the number of tiles in the dense grid covering the loaded collision
+	 * extent on every plane. Tile indices are in {@code [0, getTileCount())}.
+	 */
+	public int getTileCount()
+	{
+		return gridWidth * gridHeight * PLANE_COUNT;
+	}
+
+	/**
+	 * Width of the dense tile grid in tiles. Tile indices are laid out row by row,
+	 * so stepping one tile north adds this value to the index.
+	 */
+	public int getGridWidth()
+	{
+		return gridWidth;
+	}
+
+	/**
+	 * Height of the dense tile grid in tiles, per plane.
+	 */
+	public int getGridHeight()
+	{
+		return gridHeight;
+	}
+
+	/**
+	 * Maps a world coordinate onto the dense tile grid.
+	 *
+	 * @return tile index, or {@code -1} if the coordinate lies outside the loaded
+	 *         collision extent.
+	 */
+	public int getTileIndex(int x, int y, int z)
+	{
+		final int localX = x - gridMinX;
+		final int localY = y - gridMinY;
+		if (localX < 0 || localX >= gridWidth || localY < 0 || localY >= gridHeight || z < 0 || z >= PLANE_COUNT)
+		{
+			return -1;
+		}
+		return (z * gridHeight + localY) * gridWidth + localX;
+	}
+
+	/**
+	 * Maps a packed world point (see {@link WorldPointUtil}) onto the dense tile
+	 * grid.
+	 *
+	 * @return tile index, or {@code -1} if the point lies outside the loaded
+	 *         collision extent.
+	 */
+	public int getTileIndex(int packedPoint)
+	{
+		return getTileIndex(WorldPointUtil.unpackWorldX(packedPoint), WorldPointUtil.unpackWorldY(packedPoint),
+				WorldPointUtil.unpackWorldPlane(packedPoint));
+	}
+
+	/**
+	 * Inverse of {@link #getTileIndex(int)}.
+	 *
+	 * @param tileIndex index in {@code [0, getTileCount())}.
+	 * @return packed world point of the tile.
+	 */
+	public int getPackedPoint(int tileIndex)
+	{
+		final int localX = tileIndex % gridWidth;
+		final int rest = tileIndex / gridWidth;
+		final int localY = rest % gridHeight;
+		final int z = rest / gridHeight;
+		return WorldPointUtil.packWorldPoint(gridMinX + localX, gridMinY + localY, z);
 	}
 
 	private boolean get(int x, int y, int z, int flag)
@@ -81,6 +194,90 @@ public class CollisionMap
 		return "N: " + n(x, y, z) + ", S: " + s(x, y, z) + ", E: " + e(x, y, z) + ", W: " + w(x, y, z);
 	}
 
+	/**
+	 * Returns which of the eight movement directions are traversable from a tile.
+	 * Bit {@code i} of the result corresponds to {@code Direction.values()[i]}.
+	 * The masks are precomputed when the map is loaded, so this is a single array
+	 * read.
+	 *
+	 * @param tileIndex index in {@code [0, getTileCount())}.
+	 */
+	public int getTraversableDirections(int tileIndex)
+	{
+		return directionMasks[tileIndex] & 0xFF;
+	}
+
+	/**
+	 * @see #getTraversableDirections(int)
+	 * @return the direction mask, or {@code 0} outside the loaded collision
+	 *         extent.
+	 */
+	public int getTraversableDirections(int x, int y, int z)
+	{
+		final int tileIndex = getTileIndex(x, y, z);
+		return tileIndex < 0 ? 0 : directionMasks[tileIndex] & 0xFF;
+	}
+
+	/**
+	 * Returns the tile reached by stepping from {@code tileIndex} in the given
+	 * direction. Only valid when that direction's bit is set in
+	 * {@link #getTraversableDirections(int)}.
+	 *
+	 * @param direction ordinal of the {@link Direction}.
+	 */
+	public int getNeighborTileIndex(int tileIndex, int direction)
+	{
+		return tileIndex + directionOffsets[direction];
+	}
+
+	private int computeTraversableDirections(int x, int y, int z)
+	{
+		int mask = 0;
+		if (w(x, y, z))
+		{
+			mask |= 1; // WEST
+		}
+		if (e(x, y, z))
+		{
+			mask |= 1 << 1; // EAST
+		}
+		if (s(x, y, z))
+		{
+			mask |= 1 << 2; // SOUTH
+		}
+		if (n(x, y, z))
+		{
+			mask |= 1 << 3; // NORTH
+		}
+		if (sw(x, y, z))
+		{
+			mask |= 1 << 4; // SOUTH_WEST
+		}
+		if (se(x, y, z))
+		{
+			mask |= 1 << 5; // SOUTH_EAST
+		}
+		if (nw(x, y, z))
+		{
+			mask |= 1 << 6; // NORTH_WEST
+		}
+		if (ne(x, y, z))
+		{
+			mask |= 1 << 7; // NORTH_EAST
+		}
+
+		// Steps that would leave the grid cannot be indexed, drop them
+		for (int i = 0; i < ORDINAL_VALUES.size(); i++)
+		{
+			Direction d = ORDINAL_VALUES.get(i);
+			if (getTileIndex(x + d.getX(), y + d.getY(), z) < 0)
+			{
+				mask &= ~(1 << i);
+			}
+		}
+		return mask;
+	}
+
 	public List<Node> getValidNeighbors(Node node, java.util.Map<WorldPoint, java.util.List<Transport>> transports)
 	{
 		List<Node> neighbors = new ArrayList<>();
@@ -89,20 +286,11 @@ public class CollisionMap
 		final int y = p.getY();
 		final int z = p.getPlane();
 
-		boolean[] traversable = new boolean[8];
-
-		traversable[0] = w(x, y, z); // WEST
-		traversable[1] = e(x, y, z); // EAST
-		traversable[2] = s(x, y, z); // SOUTH
-		traversable[3] = n(x, y, z); // NORTH
-		traversable[4] = sw(x, y, z); // SOUTH_WEST
-		traversable[5] = se(x, y, z); // SOUTH_EAST
-		traversable[6] = nw(x, y, z); // NORTH_WEST
-		traversable[7] = ne(x, y, z); // NORTH_EAST
+		final int traversable = getTraversableDirections(x, y, z);
 
-		for (int i = 0; i < traversable.length; i++)
+		for (int i = 0; i < ORDINAL_VALUES.size(); i++)
 		{
-			if (traversable[i])
+			if ((traversable & (1 << i)) != 0)
 			{
 				Direction d = ORDINAL_VALUES.get(i);
 				int newX = x + d.getX();
@@ -0,0 +1,92 @@
+package com.dklights.pathfinder;
+
+import com.dklights.enums.Direction;
+
+/**
+ * Labels every tile of the {@link CollisionMap} grid with the connected
+ * component it belongs to, following movement and {@link TransportIndex}
+ * edges.
+ * <p>
+ * Edges are treated as undirected, so two tiles with different labels can
+ * never reach each other, while equal labels only mean a path may exist. That
+ * is enough to reject searches towards walled off or unreachable targets
+ * before they exhaust their iteration budget.
+ */
+class ConnectedComponents
+{
+	private static final int DIRECTION_COUNT = Direction.values().length;
+
+	private final int[] labels;
+
+	ConnectedComponents(CollisionMap collisionMap, TransportIndex transports)
+	{
+		final int tileCount = collisionMap.getTileCount();
+
+		// Union-find with path halving, then flattened into the label array
+		final int[] parents = new int[tileCount];
+		for (int tile = 0; tile < tileCount; tile++)
+		{
+			parents[tile] = tile;
+		}
+
+		for (int tile = 0; tile < tileCount; tile++)
+		{
+			final int directions = collisionMap.getTraversableDirections(tile);
+			for (int d = 0; d < DIRECTION_COUNT; d++)
+			{
+				if ((directions & (1 << d)) != 0)
+				{
+					union(parents, tile, collisionMap.getNeighborTileIndex(tile, d));
+				}
+			}
+		}
+
+		for (int edge = 0; edge < transports.size(); edge++)
+		{
+			union(parents, transports.getOrigin(edge), transports.getDestination(edge));
+		}
+
+		labels = new int[tileCount];
+		for (int tile = 0; tile < tileCount; tile++)
+		{
+			labels[tile] = find(parents, tile);
+		}
+	}
+
+	/**
+	 * @return component label of {@code tile}; tiles that cannot be left or
+	 *         entered are their own component.
+	 */
+	int getComponent(int tile)
+	{
+		return labels[tile];
+	}
+
+	/**
+	 * @return {@code false} if no path can exist between the two tiles.
+	 */
+	boolean isConnected(int firstTile, int secondTile)
+	{
+		return labels[firstTile] == labels[secondTile];
+	}
+
+	private static void union(int[] parents, int first, int second)
+	{
+		final int firstRoot = find(parents, first);
+		final int secondRoot = find(parents, second);
+		if (firstRoot != secondRoot)
+		{
+			parents[Math.max(firstRoot, secondRoot)] = Math.min(firstRoot, secondRoot);
+		}
+	}
+
+	private static int find(int[] parents, int tile)
+	{
+		while (parents[tile] != tile)
+		{
+			parents[tile] = parents[parents[tile]];
+			tile = parents[tile];
+		}
+		return tile;
+	}
+}
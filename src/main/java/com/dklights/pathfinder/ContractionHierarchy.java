@@ -0,0 +1,1076 @@
+package com.dklights.pathfinder;
+
+import com.dklights.enums.Direction;
+import java.util.Arrays;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Contraction hierarchy over the portal graph, for long routes across planes.
+ * <p>
+ * Portals are the ends of every {@link TransportIndex} edge, every chokepoint
+ * such as a doorway or a narrow corridor, and the approach tiles of every
+ * lamp, the bank and the wire machine. Chokepoints keep the local searches of
+ * a query inside the room they start in. Portals are joined by
+ * their transports and by walking edges, weighted with the walking distance to
+ * every portal reachable without passing another one. Nodes are then
+ * contracted one at a time, cheapest edge difference first, adding a shortcut
+ * wherever a witness search finds no route around the contracted node that is
+ * at least as short.
+ * <p>
+ * A query walks from the start and, backwards, from the goals to the nearest
+ * portals, stopping at each portal it reaches, and joins the two with a
+ * bidirectional Dijkstra that only climbs the hierarchy. A route that reaches
+ * a goal without passing a portal is found by the local search directly. The
+ * result is unpacked through the shortcuts, and walking edges are filled in
+ * with a breadth-first search between their ends. Costs match the packed A*:
+ * one per step and {@link TransportIndex#getCost(int)} per transport.
+ * <p>
+ * The two local searches use separate per-thread {@link SearchContext}s, and
+ * the hierarchy search a per-thread {@link QueryScratch} over the portals, so
+ * instances can be shared between threads like {@link PackedPathfinder} and
+ * queries allocate nothing beyond growing the path.
+ */
+@Slf4j
+class ContractionHierarchy
+{
+	private static final int DIRECTION_COUNT = Direction.values().length;
+	private static final Direction[] CARDINAL_DIRECTIONS =
+	{ Direction.NORTH, Direction.EAST, Direction.SOUTH, Direction.WEST };
+
+	private static final byte VISITED = 1;
+	private static final byte GOAL = 1 << 1;
+
+	private static final int NO_NODE = -1;
+	private static final int NO_EDGE = -1;
+	private static final int INFINITE = Integer.MAX_VALUE / 2;
+
+	// Witness searches give up after settling this many nodes; a missed witness
+	// only adds a redundant shortcut. Priority estimates use the smaller limit
+	private static final int WITNESS_LIMIT = 64;
+	private static final int SIMULATION_LIMIT = 8;
+
+	private final CollisionMap collisionMap;
+	private final TransportIndex transports;
+	private final ConnectedComponents components;
+	private final int maxIterations;
+	private final int maxPathLength;
+
+	private final ThreadLocal<SearchContext> forwardContexts;
+	private final ThreadLocal<SearchContext> backwardContexts;
+	private final ThreadLocal<QueryScratch> scratches;
+
+	private final int[] nodeTiles;
+	private final int[] nodeByTile;
+
+	// Every edge, original and shortcut. A shortcut is made of the edges
+	// edgeFirst and edgeSecond; an original edge is a transport, or a walk if
+	// edgeTransport is NO_EDGE
+	private final int[] edgeFrom;
+	private final int[] edgeTo;
+	private final int[] edgeCost;
+	private final int[] edgeFirst;
+	private final int[] edgeSecond;
+	private final int[] edgeTransport;
+
+	// Edges climbing the hierarchy: leaving node n for the forward search at
+	// [upOffsets[n], upOffsets[n + 1]) of upEdges, entering node n for the
+	// backward search at [downOffsets[n], downOffsets[n + 1]) of downEdges
+	private final int[] upOffsets;
+	private final int[] upEdges;
+	private final int[] downOffsets;
+	private final int[] downEdges;
+
+	ContractionHierarchy(CollisionMap collisionMap, TransportIndex transports, ConnectedComponents components,
+			ThreadLocal<SearchContext> forwardContexts, ThreadLocal<SearchContext> backwardContexts, int maxIterations,
+			int maxPathLength)
+	{
+		this.collisionMap = collisionMap;
+		this.transports = transports;
+		this.components = components;
+		this.forwardContexts = forwardContexts;
+		this.backwardContexts = backwardContexts;
+		this.maxIterations = maxIterations;
+		this.maxPathLength = maxPathLength;
+
+		nodeByTile = new int[collisionMap.getTileCount()];
+		Arrays.fill(nodeByTile, NO_NODE);
+		final PrimitiveIntList nodes = new PrimitiveIntList();
+		for (int edge = 0; edge < transports.size(); edge++)
+		{
+			addNode(nodes, transports.getOrigin(edge));
+			addNode(nodes, transports.getDestination(edge));
+		}
+		for (int tile = 0; tile < collisionMap.getTileCount(); tile++)
+		{
+			if (isChokepoint(tile))
+			{
+				addNode(nodes, tile);
+			}
+		}
+		for (int node = 0; node < LampDistanceMatrix.NODE_COUNT; node++)
+		{
+			final PrimitiveIntList approachTiles = LampDistanceMatrix.getApproachTiles(collisionMap, transports,
+					LampDistanceMatrix.getLocation(node));
+			for (int i = 0; i < approachTiles.size(); i++)
+			{
+				addNode(nodes, collisionMap.getTileIndex(approachTiles.get(i)));
+			}
+		}
+
+		final int nodeCount = nodes.size();
+		nodeTiles = new int[nodeCount];
+		for (int node = 0; node < nodeCount; node++)
+		{
+			nodeTiles[node] = nodes.get(node);
+		}
+
+		final Builder builder = new Builder(nodeCount);
+		for (int edge = 0; edge < transports.size(); edge++)
+		{
+			builder.addEdge(nodeByTile[transports.getOrigin(edge)], nodeByTile[transports.getDestination(edge)],
+					transports.getCost(edge), NO_EDGE, NO_EDGE, edge);
+		}
+		addWalkingEdges(builder);
+		final int originalEdges = builder.edgeCount;
+		final int[] rank = builder.contract();
+
+		final int edgeCount = builder.edgeCount;
+		edgeFrom = toArray(builder.from);
+		edgeTo = toArray(builder.to);
+		edgeCost = toArray(builder.cost);
+		edgeFirst = toArray(builder.first);
+		edgeSecond = toArray(builder.second);
+		edgeTransport = toArray(builder.transport);
+
+		upOffsets = new int[nodeCount + 1];
+		downOffsets = new int[nodeCount + 1];
+		for (int edge = 0; edge < edgeCount; edge++)
+		{
+			if (rank[edgeTo[edge]] > rank[edgeFrom[edge]])
+			{
+				upOffsets[edgeFrom[edge] + 1]++;
+			}
+			else
+			{
+				downOffsets[edgeTo[edge] + 1]++;
+			}
+		}
+		for (int node = 0; node < nodeCount; node++)
+		{
+			upOffsets[node + 1] += upOffsets[node];
+			downOffsets[node + 1] += downOffsets[node];
+		}
+
+		upEdges = new int[upOffsets[nodeCount]];
+		downEdges = new int[downOffsets[nodeCount]];
+		final int[] upFill = Arrays.copyOf(upOffsets, nodeCount);
+		final int[] downFill = Arrays.copyOf(downOffsets, nodeCount);
+		for (int edge = 0; edge < edgeCount; edge++)
+		{
+			if (rank[edgeTo[edge]] > rank[edgeFrom[edge]])
+			{
+				upEdges[upFill[edgeFrom[edge]]++] = edge;
+			}
+			else
+			{
+				downEdges[downFill[edgeTo[edge]]++] = edge;
+			}
+		}
+
+		scratches = ThreadLocal.withInitial(() -> new QueryScratch(nodeCount));
+		log.debug("Contraction hierarchy: {} portals, {} edges, {} shortcuts", nodeCount, originalEdges,
+				edgeCount - originalEdges);
+	}
+
+	private static int[] toArray(PrimitiveIntList list)
+	{
+		final int[] array = new int[list.size()];
+		for (int i = 0; i < array.length; i++)
+		{
+			array[i] = list.get(i);
+		}
+		return array;
+	}
+
+	/**
+	 * Whether {@code tile} is the only link between some of its neighbours
+	 * within the surrounding three by three tiles, as in a doorway or a
+	 * corridor one tile wide.
+	 */
+	private boolean isChokepoint(int tile)
+	{
+		final int directions = collisionMap.getTraversableDirections(tile);
+		if (directions == 0)
+		{
+			return false;
+		}
+
+		// Flood the neighbours reachable from the first one without the tile
+		int first = -1;
+		for (int d = 0; d < DIRECTION_COUNT && first < 0; d++)
+		{
+			if ((directions & (1 << d)) != 0)
+			{
+				first = d;
+			}
+		}
+
+		int reached = 1 << first;
+		boolean grown = true;
+		while (grown)
+		{
+			grown = false;
+			for (int a = 0; a < DIRECTION_COUNT; a++)
+			{
+				if ((reached & (1 << a)) == 0)
+				{
+					continue;
+				}
+
+				final int from = collisionMap.getNeighborTileIndex(tile, a);
+				for (int b = 0; b < DIRECTION_COUNT; b++)
+				{
+					if ((reached & (1 << b)) == 0 && isLinked(from, collisionMap.getNeighborTileIndex(tile, b)))
+					{
+						reached |= 1 << b;
+						grown = true;
+					}
+				}
+			}
+		}
+		return (directions & ~reached) != 0;
+	}
+
+	/**
+	 * @return {@code true} if either tile can step onto the other.
+	 */
+	private boolean isLinked(int a, int b)
+	{
+		for (int d = 0; d < DIRECTION_COUNT; d++)
+		{
+			if (((collisionMap.getTraversableDirections(a) & (1 << d)) != 0 && collisionMap.getNeighborTileIndex(a, d) == b)
+					|| ((collisionMap.getTraversableDirections(b) & (1 << d)) != 0
+							&& collisionMap.getNeighborTileIndex(b, d) == a))
+			{
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private void addNode(PrimitiveIntList nodes, int tile)
+	{
+		if (tile >= 0 && nodeByTile[tile] == NO_NODE)
+		{
+			nodeByTile[tile] = nodes.size();
+			nodes.add(tile);
+		}
+	}
+
+	/**
+	 * Joins every portal to the portals it reaches on foot without passing
+	 * another one.
+	 */
+	private void addWalkingEdges(Builder builder)
+	{
+		final SearchContext context = new SearchContext(collisionMap.getTileCount());
+		final int[] queue = context.getQueue();
+		final int[] depth = context.getGCost();
+		for (int from = 0; from < nodeTiles.length; from++)
+		{
+			context.reset();
+			int head = 0;
+			int tail = 0;
+			queue[tail++] = nodeTiles[from];
+			depth[nodeTiles[from]] = 0;
+			context.addFlags(nodeTiles[from], VISITED);
+
+			while (head < tail)
+			{
+				final int current = queue[head++];
+				final int node = nodeByTile[current];
+				if (node != NO_NODE && node != from)
+				{
+					builder.addEdge(from, node, depth[current], NO_EDGE, NO_EDGE, NO_EDGE);
+					continue;
+				}
+
+				final int directions = collisionMap.getTraversableDirections(current);
+				for (int d = 0; d < DIRECTION_COUNT; d++)
+				{
+					if ((directions & (1 << d)) == 0)
+					{
+						continue;
+					}
+
+					final int neighbor = collisionMap.getNeighborTileIndex(current, d);
+					if (!context.hasFlags(neighbor, VISITED))
+					{
+						context.addFlags(neighbor, VISITED);
+						depth[neighbor] = depth[current] + 1;
+						queue[tail++] = neighbor;
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * Shortest path from {@code start} to any walkable tile cardinally adjacent
+	 * to {@code end}.
+	 *
+	 * @param start packed start point.
+	 * @param end   packed target point.
+	 * @param path  receives the packed path, start first. Cleared on entry.
+	 * @return {@link SearchStatus#FOUND}, or {@link SearchStatus#NOT_FOUND} if
+	 *         there is no path or a local search hit the iteration limit.
+	 * @throws SearchCancelledException if the thread is interrupted mid-search.
+	 */
+	SearchStatus findPath(int start, int end, PrimitiveIntList path)
+	{
+		path.clear();
+
+		final int startTile = collisionMap.getTileIndex(start);
+		if (startTile < 0)
+		{
+			return SearchStatus.NOT_FOUND;
+		}
+
+		if (start == end)
+		{
+			path.add(start);
+			return SearchStatus.FOUND;
+		}
+
+		final int endX = WorldPointUtil.unpackWorldX(end);
+		final int endY = WorldPointUtil.unpackWorldY(end);
+		final int endZ = WorldPointUtil.unpackWorldPlane(end);
+
+		final SearchContext forward = forwardContexts.get();
+		final SearchContext backward = backwardContexts.get();
+		final QueryScratch scratch = scratches.get();
+		forward.reset();
+		backward.reset();
+		scratch.reset();
+
+		final PrimitiveIntList goals = scratch.goals;
+		for (Direction direction : CARDINAL_DIRECTIONS)
+		{
+			final int tile = collisionMap.getTileIndex(endX + direction.getX(), endY + direction.getY(), endZ);
+			if (tile >= 0 && isWalkable(tile) && components.isConnected(startTile, tile)
+					&& !backward.hasFlags(tile, GOAL))
+			{
+				backward.addFlags(tile, GOAL);
+				goals.add(tile);
+			}
+		}
+
+		if (goals.isEmpty())
+		{
+			log.debug("No reachable tiles next to {}", WorldPointUtil.unpackWorldPoint(end));
+			return SearchStatus.NOT_FOUND;
+		}
+
+		final PrimitiveIntList startSources = scratch.sources;
+		startSources.add(startTile);
+		final int directGoal = searchLocally(forward, backward, scratch, startSources, false);
+		if (directGoal == NO_NODE - 1 || searchLocally(backward, forward, scratch, goals, true) == NO_NODE - 1)
+		{
+			log.debug("Contraction hierarchy local search hit MAX_ITERATIONS ({})", maxIterations);
+			return SearchStatus.NOT_FOUND;
+		}
+
+		scratch.meetingNode = NO_NODE;
+		scratch.meetingCost = directGoal >= 0 ? forward.getGCost()[directGoal] : INFINITE;
+		searchHierarchy(forward, scratch);
+
+		if (scratch.meetingCost >= INFINITE || scratch.meetingCost > maxPathLength)
+		{
+			return SearchStatus.NOT_FOUND;
+		}
+
+		if (scratch.meetingNode == NO_NODE)
+		{
+			appendLocalPath(forward, directGoal, false, path);
+			return SearchStatus.FOUND;
+		}
+
+		// Chain of hierarchy edges from the start portal through the meeting
+		// node to the goal portal
+		final PrimitiveIntList route = scratch.route;
+		int node = scratch.meetingNode;
+		while (scratch.getEdge(false, node) != NO_EDGE)
+		{
+			route.add(scratch.getEdge(false, node));
+			node = edgeFrom[scratch.getEdge(false, node)];
+		}
+		final int startPortal = node;
+		for (int i = 0, j = route.size() - 1; i < j; i++, j--)
+		{
+			route.set(j, route.set(i, route.get(j)));
+		}
+		node = scratch.meetingNode;
+		while (scratch.getEdge(true, node) != NO_EDGE)
+		{
+			route.add(scratch.getEdge(true, node));
+			node = edgeTo[scratch.getEdge(true, node)];
+		}
+		final int goalPortal = node;
+
+		appendLocalPath(forward, nodeTiles[startPortal], false, path);
+		final PrimitiveIntList goalSegment = scratch.goalSegment;
+		appendLocalPath(backward, nodeTiles[goalPortal], true, goalSegment);
+
+		// The backward context is free now that the goal segment is copied
+		for (int i = 0; i < route.size(); i++)
+		{
+			unpack(backward, route.get(i), path);
+		}
+		for (int i = 1; i < goalSegment.size(); i++)
+		{
+			path.add(goalSegment.get(i));
+		}
+		return SearchStatus.FOUND;
+	}
+
+	/**
+	 * Breadth-first search on foot from {@code sources} that stops at every
+	 * portal, recording its cost for its side in {@code scratch}. The backward
+	 * search follows moves in reverse.
+	 *
+	 * @param other the context of the other side. It holds the goal flags for
+	 *              the forward search, and is the forward context that counts
+	 *              the expansions of the backward search.
+	 * @return the first goal reached by a forward search, {@link #NO_NODE} if
+	 *         none was, or {@code NO_NODE - 1} if the iteration limit was hit.
+	 */
+	private int searchLocally(SearchContext context, SearchContext other, QueryScratch scratch,
+			PrimitiveIntList sources, boolean backward)
+	{
+		final SearchContext forwardContext = backward ? other : context;
+		final int[] queue = context.getQueue();
+		final int[] depth = context.getGCost();
+		final int[] parent = context.getParent();
+		int head = 0;
+		int tail = 0;
+		for (int i = 0; i < sources.size(); i++)
+		{
+			final int tile = sources.get(i);
+			context.addFlags(tile, VISITED);
+			depth[tile] = 0;
+			parent[tile] = -1;
+			queue[tail++] = tile;
+		}
+
+		final int tileCount = collisionMap.getTileCount();
+		while (head < tail)
+		{
+			if (head >= maxIterations)
+			{
+				return NO_NODE - 1;
+			}
+			SearchCancelledException.checkInterrupted(head);
+			final int current = queue[head++];
+			forwardContext.countExpansion();
+
+			if (!backward && other.hasFlags(current, GOAL))
+			{
+				return current;
+			}
+
+			final int node = nodeByTile[current];
+			if (node != NO_NODE)
+			{
+				scratch.setCost(backward, node, depth[current], NO_EDGE);
+				continue;
+			}
+
+			final int directions = collisionMap.getTraversableDirections(current);
+			for (int d = 0; d < DIRECTION_COUNT; d++)
+			{
+				final int neighbor;
+				if (backward)
+				{
+					neighbor = current - (collisionMap.getNeighborTileIndex(current, d) - current);
+					if (neighbor < 0 || neighbor >= tileCount
+							|| (collisionMap.getTraversableDirections(neighbor) & (1 << d)) == 0)
+					{
+						continue;
+					}
+				}
+				else
+				{
+					if ((directions & (1 << d)) == 0)
+					{
+						continue;
+					}
+					neighbor = collisionMap.getNeighborTileIndex(current, d);
+				}
+
+				if (!context.hasFlags(neighbor, VISITED))
+				{
+					context.addFlags(neighbor, VISITED);
+					depth[neighbor] = depth[current] + 1;
+					parent[neighbor] = current;
+					queue[tail++] = neighbor;
+				}
+			}
+		}
+		return NO_NODE;
+	}
+
+	/**
+	 * Bidirectional Dijkstra over the upward edges, seeded with the portal costs
+	 * of the local searches. Updates the meeting node and cost of
+	 * {@code scratch} in place.
+	 */
+	private void searchHierarchy(SearchContext counter, QueryScratch scratch)
+	{
+		final IndexedMinHeap forwardOpen = scratch.forwardOpen;
+		final IndexedMinHeap backwardOpen = scratch.backwardOpen;
+		final PrimitiveIntList seeds = scratch.touched;
+		for (int i = 0; i < seeds.size(); i++)
+		{
+			final int node = seeds.get(i);
+			if (scratch.getCost(false, node) < INFINITE)
+			{
+				forwardOpen.addOrDecrease(node, IndexedMinHeap.priority(scratch.getCost(false, node), 0));
+			}
+			if (scratch.getCost(true, node) < INFINITE)
+			{
+				backwardOpen.addOrDecrease(node, IndexedMinHeap.priority(scratch.getCost(true, node), 0));
+			}
+			scratch.meet(node);
+		}
+
+		// Unlike plain bidirectional Dijkstra, neither side may stop before its
+		// own queue passes the best cost, since each only climbs
+		while (!forwardOpen.isEmpty() || !backwardOpen.isEmpty())
+		{
+			if (!forwardOpen.isEmpty() && scratch.getCost(false, forwardOpen.peek()) < scratch.meetingCost)
+			{
+				final int node = forwardOpen.poll();
+				counter.countExpansion();
+				for (int i = upOffsets[node]; i < upOffsets[node + 1]; i++)
+				{
+					final int edge = upEdges[i];
+					final int target = edgeTo[edge];
+					final int cost = scratch.getCost(false, node) + edgeCost[edge];
+					if (cost < scratch.getCost(false, target))
+					{
+						scratch.setCost(false, target, cost, edge);
+						forwardOpen.addOrDecrease(target, IndexedMinHeap.priority(cost, 0));
+						scratch.meet(target);
+					}
+				}
+			}
+			else
+			{
+				forwardOpen.clear();
+			}
+
+			if (!backwardOpen.isEmpty() && scratch.getCost(true, backwardOpen.peek()) < scratch.meetingCost)
+			{
+				final int node = backwardOpen.poll();
+				counter.countExpansion();
+				for (int i = downOffsets[node]; i < downOffsets[node + 1]; i++)
+				{
+					final int edge = downEdges[i];
+					final int source = edgeFrom[edge];
+					final int cost = scratch.getCost(true, node) + edgeCost[edge];
+					if (cost < scratch.getCost(true, source))
+					{
+						scratch.setCost(true, source, cost, edge);
+						backwardOpen.addOrDecrease(source, IndexedMinHeap.priority(cost, 0));
+						scratch.meet(source);
+					}
+				}
+			}
+			else
+			{
+				backwardOpen.clear();
+			}
+		}
+	}
+
+	/**
+	 * Appends the local search path ending at {@code tile}: from the start to
+	 * it, or, for the backward search, from it to the goal.
+	 */
+	private void appendLocalPath(SearchContext context, int tile, boolean backward, PrimitiveIntList path)
+	{
+		final int offset = path.size();
+		final int[] parent = context.getParent();
+		for (int current = tile; current != -1; current = parent[current])
+		{
+			path.add(collisionMap.getPackedPoint(current));
+		}
+
+		if (!backward)
+		{
+			for (int i = offset, j = path.size() - 1; i < j; i++, j--)
+			{
+				path.set(j, path.set(i, path.get(j)));
+			}
+		}
+	}
+
+	/**
+	 * Appends the tiles after the start of {@code edge}.
+	 */
+	private void unpack(SearchContext context, int edge, PrimitiveIntList path)
+	{
+		if (edgeFirst[edge] != NO_EDGE)
+		{
+			unpack(context, edgeFirst[edge], path);
+			unpack(context, edgeSecond[edge], path);
+			return;
+		}
+
+		final int target = nodeTiles[edgeTo[edge]];
+		if (edgeTransport[edge] != NO_EDGE)
+		{
+			path.add(collisionMap.getPackedPoint(target));
+			return;
+		}
+
+		final int source = nodeTiles[edgeFrom[edge]];
+		context.reset();
+		final int[] queue = context.getQueue();
+		final int[] parent = context.getParent();
+		int head = 0;
+		int tail = 0;
+		queue[tail++] = source;
+		parent[source] = -1;
+		context.addFlags(source, VISITED);
+
+		while (head < tail && !context.hasFlags(target, VISITED))
+		{
+			final int current = queue[head++];
+			final int directions = collisionMap.getTraversableDirections(current);
+			for (int d = 0; d < DIRECTION_COUNT; d++)
+			{
+				if ((directions & (1 << d)) == 0)
+				{
+					continue;
+				}
+
+				final int neighbor = collisionMap.getNeighborTileIndex(current, d);
+				if (!context.hasFlags(neighbor, VISITED))
+				{
+					context.addFlags(neighbor, VISITED);
+					parent[neighbor] = current;
+					queue[tail++] = neighbor;
+				}
+			}
+		}
+
+		final int offset = path.size();
+		for (int current = target; current != source; current = parent[current])
+		{
+			path.add(collisionMap.getPackedPoint(current));
+		}
+		for (int i = offset, j = path.size() - 1; i < j; i++, j--)
+		{
+			path.set(j, path.set(i, path.get(j)));
+		}
+	}
+
+	private boolean isWalkable(int tile)
+	{
+		return transports.hasOutgoing(tile) || collisionMap.getTraversableDirections(tile) != 0;
+	}
+
+	/**
+	 * Per-query state over the portals, one per thread. As in
+	 * {@link SearchContext}, nothing is cleared between queries: every portal
+	 * carries the generation it was last touched in, and untouched portals
+	 * read as unreached.
+	 */
+	private static final class QueryScratch
+	{
+		private final int[] generations;
+		private int generation;
+
+		// Cost from the start and to the goals, and the edge each was reached by
+		private final int[] forwardCost;
+		private final int[] backwardCost;
+		private final int[] forwardEdge;
+		private final int[] backwardEdge;
+
+		private final IndexedMinHeap forwardOpen;
+		private final IndexedMinHeap backwardOpen;
+
+		// Portals touched in this generation; before the hierarchy search, the
+		// ones the local searches reached
+		private final PrimitiveIntList touched = new PrimitiveIntList();
+		private final PrimitiveIntList goals = new PrimitiveIntList(CARDINAL_DIRECTIONS.length);
+		private final PrimitiveIntList sources = new PrimitiveIntList(1);
+		private final PrimitiveIntList route = new PrimitiveIntList();
+		private final PrimitiveIntList goalSegment = new PrimitiveIntList();
+
+		private int meetingNode;
+		private int meetingCost;
+
+		private QueryScratch(int nodeCount)
+		{
+			generations = new int[nodeCount];
+			forwardCost = new int[nodeCount];
+			backwardCost = new int[nodeCount];
+			forwardEdge = new int[nodeCount];
+			backwardEdge = new int[nodeCount];
+			forwardOpen = new IndexedMinHeap(nodeCount);
+			backwardOpen = new IndexedMinHeap(nodeCount);
+		}
+
+		private void reset()
+		{
+			if (++generation == 0)
+			{
+				Arrays.fill(generations, 0);
+				generation = 1;
+			}
+			forwardOpen.clear();
+			backwardOpen.clear();
+			touched.clear();
+			goals.clear();
+			sources.clear();
+			route.clear();
+			goalSegment.clear();
+		}
+
+		private int getCost(boolean backward, int node)
+		{
+			if (generations[node] != generation)
+			{
+				return INFINITE;
+			}
+			return backward ? backwardCost[node] : forwardCost[node];
+		}
+
+		private int getEdge(boolean backward, int node)
+		{
+			if (generations[node] != generation)
+			{
+				return NO_EDGE;
+			}
+			return backward ? backwardEdge[node] : forwardEdge[node];
+		}
+
+		private void setCost(boolean backward, int node, int cost, int edge)
+		{
+			if (generations[node] != generation)
+			{
+				generations[node] = generation;
+				forwardCost[node] = INFINITE;
+				backwardCost[node] = INFINITE;
+				forwardEdge[node] = NO_EDGE;
+				backwardEdge[node] = NO_EDGE;
+				touched.add(node);
+			}
+
+			if (backward)
+			{
+				backwardCost[node] = cost;
+				backwardEdge[node] = edge;
+			}
+			else
+			{
+				forwardCost[node] = cost;
+				forwardEdge[node] = edge;
+			}
+		}
+
+		/**
+		 * Takes {@code node} as the meeting node if both sides reached it and
+		 * it beats the best cost so far.
+		 */
+		private void meet(int node)
+		{
+			final int forward = getCost(false, node);
+			final int backward = getCost(true, node);
+			if (forward < INFINITE && backward < INFINITE && forward + backward < meetingCost)
+			{
+				meetingNode = node;
+				meetingCost = forward + backward;
+			}
+		}
+	}
+
+	/**
+	 * Portal graph under construction, and the contraction that orders it.
+	 */
+	private static final class Builder
+	{
+		private final int nodeCount;
+		private final PrimitiveIntList from = new PrimitiveIntList();
+		private final PrimitiveIntList to = new PrimitiveIntList();
+		private final PrimitiveIntList cost = new PrimitiveIntList();
+		private final PrimitiveIntList first = new PrimitiveIntList();
+		private final PrimitiveIntList second = new PrimitiveIntList();
+		private final PrimitiveIntList transport = new PrimitiveIntList();
+		private int edgeCount;
+
+		// Edges leaving and entering each node, including shortcuts
+		private final PrimitiveIntList[] outgoing;
+		private final PrimitiveIntList[] incoming;
+		private final boolean[] contracted;
+
+		// Scratch state of the witness search
+		private final int[] witnessCost;
+		private final PrimitiveIntList witnessTouched = new PrimitiveIntList();
+		private final IndexedMinHeap witnessOpen;
+		// Targets of the current search are marked with its number, and it stops
+		// once all of them are settled
+		private final int[] witnessTarget;
+		private int witnessSearch;
+
+		private Builder(int nodeCount)
+		{
+			this.nodeCount = nodeCount;
+			outgoing = new PrimitiveIntList[nodeCount];
+			incoming = new PrimitiveIntList[nodeCount];
+			for (int node = 0; node < nodeCount; node++)
+			{
+				outgoing[node] = new PrimitiveIntList();
+				incoming[node] = new PrimitiveIntList();
+			}
+			contracted = new boolean[nodeCount];
+			witnessCost = new int[nodeCount];
+			Arrays.fill(witnessCost, INFINITE);
+			witnessOpen = new IndexedMinHeap(nodeCount);
+			witnessTarget = new int[nodeCount];
+		}
+
+		/**
+		 * Adds an edge unless one at least as cheap already joins the two nodes.
+		 */
+		private void addEdge(int source, int target, int edgeCostValue, int firstEdge, int secondEdge,
+				int transportEdge)
+		{
+			final PrimitiveIntList edges = outgoing[source];
+			for (int i = 0; i < edges.size(); i++)
+			{
+				if (to.get(edges.get(i)) == target && cost.get(edges.get(i)) <= edgeCostValue)
+				{
+					return;
+				}
+			}
+
+			from.add(source);
+			to.add(target);
+			cost.add(edgeCostValue);
+			first.add(firstEdge);
+			second.add(secondEdge);
+			transport.add(transportEdge);
+			outgoing[source].add(edgeCount);
+			incoming[target].add(edgeCount);
+			edgeCount++;
+		}
+
+		/**
+		 * Contracts every node, lowest priority first. Contracted nodes are
+		 * detached from the lists of their neighbours, so later witness searches
+		 * only walk the remaining graph.
+		 *
+		 * @return the contraction order of every node.
+		 */
+		private int[] contract()
+		{
+			final int[] rank = new int[nodeCount];
+			final int[] contractedNeighbours = new int[nodeCount];
+			final IndexedMinHeap queue = new IndexedMinHeap(nodeCount);
+			for (int node = 0; node < nodeCount; node++)
+			{
+				queue.addOrDecrease(node, IndexedMinHeap.priority(getPriority(node, contractedNeighbours), 0));
+			}
+
+			// Neighbours of the contracted node, each listed once
+			final PrimitiveIntList neighbors = new PrimitiveIntList();
+			final int[] listedFor = new int[nodeCount];
+			Arrays.fill(listedFor, NO_NODE);
+
+			int order = 0;
+			while (!queue.isEmpty())
+			{
+				// Priorities go stale as the graph shrinks; recheck the cheapest
+				// before contracting it
+				final int node = queue.peek();
+				final long priority = IndexedMinHeap.priority(getPriority(node, contractedNeighbours), 0);
+				if (priority > queue.getPriority(node))
+				{
+					queue.update(node, priority);
+					continue;
+				}
+
+				queue.poll();
+				addShortcuts(node, false);
+				contracted[node] = true;
+				rank[node] = order++;
+
+				neighbors.clear();
+				for (int i = 0; i < outgoing[node].size(); i++)
+				{
+					listNeighbor(neighbors, listedFor, node, to.get(outgoing[node].get(i)));
+				}
+				for (int i = 0; i < incoming[node].size(); i++)
+				{
+					listNeighbor(neighbors, listedFor, node, from.get(incoming[node].get(i)));
+				}
+
+				// The remaining graph no longer reaches the node
+				for (int i = 0; i < outgoing[node].size(); i++)
+				{
+					final PrimitiveIntList edges = incoming[to.get(outgoing[node].get(i))];
+					edges.removeAt(edges.indexOf(outgoing[node].get(i)));
+				}
+				for (int i = 0; i < incoming[node].size(); i++)
+				{
+					final PrimitiveIntList edges = outgoing[from.get(incoming[node].get(i))];
+					edges.removeAt(edges.indexOf(incoming[node].get(i)));
+				}
+
+				for (int i = 0; i < neighbors.size(); i++)
+				{
+					final int neighbor = neighbors.get(i);
+					contractedNeighbours[neighbor]++;
+				}
+			}
+			return rank;
+		}
+
+		private void listNeighbor(PrimitiveIntList neighbors, int[] listedFor, int node, int neighbor)
+		{
+			if (!contracted[neighbor] && listedFor[neighbor] != node)
+			{
+				listedFor[neighbor] = node;
+				neighbors.add(neighbor);
+			}
+		}
+
+		/**
+		 * Edge difference plus the number of contracted neighbours, which
+		 * spreads contraction evenly over the graph.
+		 */
+		private int getPriority(int node, int[] contractedNeighbours)
+		{
+			int degree = 0;
+			for (int i = 0; i < outgoing[node].size(); i++)
+			{
+				degree += contracted[to.get(outgoing[node].get(i))] ? 0 : 1;
+			}
+			for (int i = 0; i < incoming[node].size(); i++)
+			{
+				degree += contracted[from.get(incoming[node].get(i))] ? 0 : 1;
+			}
+			return addShortcuts(node, true) - degree + contractedNeighbours[node];
+		}
+
+		/**
+		 * Adds a shortcut for every pair of remaining neighbours whose shortest
+		 * route runs through {@code node}.
+		 *
+		 * @param simulate only count the shortcuts.
+		 * @return number of shortcuts needed.
+		 */
+		private int addShortcuts(int node, boolean simulate)
+		{
+			int shortcuts = 0;
+			final PrimitiveIntList in = incoming[node];
+			final PrimitiveIntList out = outgoing[node];
+			for (int i = 0; i < in.size(); i++)
+			{
+				final int inEdge = in.get(i);
+				final int source = from.get(inEdge);
+				if (contracted[source])
+				{
+					continue;
+				}
+
+				witnessSearch++;
+				int targets = 0;
+				int maxCost = 0;
+				for (int j = 0; j < out.size(); j++)
+				{
+					final int target = to.get(out.get(j));
+					if (target != source && witnessTarget[target] != witnessSearch)
+					{
+						witnessTarget[target] = witnessSearch;
+						targets++;
+					}
+					maxCost = Math.max(maxCost, cost.get(inEdge) + cost.get(out.get(j)));
+				}
+				searchWitnesses(source, node, maxCost, targets, simulate ? SIMULATION_LIMIT : WITNESS_LIMIT);
+
+				for (int j = 0; j < out.size(); j++)
+				{
+					final int outEdge = out.get(j);
+					final int target = to.get(outEdge);
+					final int viaCost = cost.get(inEdge) + cost.get(outEdge);
+					if (contracted[target] || target == source || witnessCost[target] <= viaCost)
+					{
+						continue;
+					}
+
+					shortcuts++;
+					if (!simulate)
+					{
+						addEdge(source, target, viaCost, inEdge, outEdge, NO_EDGE);
+					}
+				}
+				clearWitnesses();
+			}
+			return shortcuts;
+		}
+
+		/**
+		 * Dijkstra from {@code source} over the remaining graph without
+		 * {@code excluded}, up to {@code maxCost} or until {@code targets} marked
+		 * targets are settled.
+		 */
+		private void searchWitnesses(int source, int excluded, int maxCost, int targets, int limit)
+		{
+			witnessCost[source] = 0;
+			witnessTouched.add(source);
+			witnessOpen.addOrDecrease(source, IndexedMinHeap.priority(0, 0));
+
+			int settled = 0;
+			while (!witnessOpen.isEmpty() && settled++ < limit)
+			{
+				final int node = witnessOpen.poll();
+				if (witnessCost[node] > maxCost
+						|| witnessTarget[node] == witnessSearch && --targets == 0)
+				{
+					break;
+				}
+
+				final PrimitiveIntList edges = outgoing[node];
+				for (int i = 0; i < edges.size(); i++)
+				{
+					final int edge = edges.get(i);
+					final int target = to.get(edge);
+					final int targetCost = witnessCost[node] + cost.get(edge);
+					if (target != excluded && !contracted[target] && targetCost < witnessCost[target])
+					{
+						if (witnessCost[target] == INFINITE)
+						{
+							witnessTouched.add(target);
+						}
+						witnessCost[target] = targetCost;
+						witnessOpen.addOrDecrease(target, IndexedMinHeap.priority(targetCost, 0));
+					}
+				}
+			}
+		}
+
+		private void clearWitnesses()
+		{
+			for (int i = 0; i < witnessTouched.size(); i++)
+			{
+				witnessCost[witnessTouched.get(i)] = INFINITE;
+			}
+			witnessTouched.clear();
+			witnessOpen.clear();
+		}
+	}
+}
@@ -0,0 +1,445 @@
+package com.dklights.pathfinder;
+
+import com.dklights.enums.Direction;
+import java.util.Arrays;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Incremental planner (D* Lite) that keeps its search tree between queries.
+ * <p>
+ * The search runs backwards from a set of goal tiles, so every tile carries
+ * its cost to the nearest goal ({@code g}) and a one-step lookahead of it
+ * ({@code rhs}). When the player moves, only the priorities of queued tiles
+ * become stale, which the planner corrects lazily through the {@code km}
+ * offset instead of starting over. Changing the goals, for instance when a
+ * lamp is fixed or a wall spawns next to one, is handled as a change of the
+ * edges into a virtual goal: only tiles whose cost actually changes are
+ * revisited. Replanning cost therefore scales with the size of the change, not
+ * with the size of the map.
+ * <p>
+ * Movement costs one per step and transports cost
+ * {@link TransportIndex#getCost(int)}, matching the packed A*. The heuristic
+ * has to be consistent, which rules out the plain Chebyshev distance because
+ * stairs jump several tiles for one step; it is the larger of
+ * {@link TransportIndex#getPlaneLowerBound(int, int)} and the Chebyshev
+ * distance divided by the longest transport jump.
+ * <p>
+ * Instances are <strong>not</strong> thread-safe. An interrupted update leaves
+ * the session consistent, and the next query resumes the work. Should the kept
+ * tree still fail to yield a path to a connected goal, the session starts over
+ * from its goals.
+ */
+@Slf4j
+class DStarLiteSession
+{
+	private static final int INFINITE = Integer.MAX_VALUE / 2;
+	private static final int DIRECTION_COUNT = Direction.values().length;
+
+	private final CollisionMap collisionMap;
+	private final TransportIndex transports;
+	private final ConnectedComponents components;
+	private final int maxIterations;
+
+	// Chebyshev distance one unit of cost can cover at most
+	private final int maxJump;
+
+	private final int[] g;
+	private final int[] rhs;
+	private final boolean[] goal;
+	private final IndexedMinHeap open;
+	private final PrimitiveIntList goals = new PrimitiveIntList();
+
+	private int start = -1;
+	private int km;
+
+	DStarLiteSession(CollisionMap collisionMap, TransportIndex transports, ConnectedComponents components,
+			int maxIterations)
+	{
+		this.collisionMap = collisionMap;
+		this.transports = transports;
+		this.components = components;
+		this.maxIterations = maxIterations;
+
+		int jump = 1;
+		for (int edge = 0; edge < transports.size(); edge++)
+		{
+			final int origin = collisionMap.getPackedPoint(transports.getOrigin(edge));
+			final int destination = collisionMap.getPackedPoint(transports.getDestination(edge));
+			final int dx = Math.abs(WorldPointUtil.unpackWorldX(origin) - WorldPointUtil.unpackWorldX(destination));
+			final int dy = Math.abs(WorldPointUtil.unpackWorldY(origin) - WorldPointUtil.unpackWorldY(destination));
+			final int cost = transports.getCost(edge);
+			jump = Math.max(jump, (Math.max(dx, dy) + cost - 1) / cost);
+		}
+		maxJump = jump;
+
+		final int tileCount = collisionMap.getTileCount();
+		g = new int[tileCount];
+		rhs = new int[tileCount];
+		goal = new boolean[tileCount];
+		open = new IndexedMinHeap(tileCount);
+		Arrays.fill(g, INFINITE);
+		Arrays.fill(rhs, INFINITE);
+	}
+
+	/**
+	 * Replaces the goal tiles. Only tiles that stop or start being goals are
+	 * updated; their effect spreads on the next {@link #findPath}.
+	 *
+	 * @param packedGoals packed goal points; points outside the grid are ignored.
+	 */
+	void setGoals(PrimitiveIntList packedGoals)
+	{
+		final PrimitiveIntList previous = new PrimitiveIntList(goals.size());
+		for (int i = 0; i < goals.size(); i++)
+		{
+			final int tile = goals.get(i);
+			previous.add(tile);
+			goal[tile] = false;
+		}
+
+		goals.clear();
+		for (int i = 0; i < packedGoals.size(); i++)
+		{
+			final int tile = collisionMap.getTileIndex(packedGoals.get(i));
+			if (tile >= 0 && !goal[tile])
+			{
+				goal[tile] = true;
+				goals.add(tile);
+			}
+		}
+
+		for (int i = 0; i < previous.size(); i++)
+		{
+			final int tile = previous.get(i);
+			if (!goal[tile])
+			{
+				rhs[tile] = lookahead(tile);
+				updateVertex(tile);
+			}
+		}
+
+		for (int i = 0; i < goals.size(); i++)
+		{
+			final int tile = goals.get(i);
+			if (rhs[tile] != 0)
+			{
+				rhs[tile] = 0;
+				updateVertex(tile);
+			}
+		}
+	}
+
+	/**
+	 * Shortest path from {@code packedStart} to the nearest goal, reusing
+	 * whatever earlier queries left.
+	 *
+	 * @param path receives the packed path, start first. Cleared on entry.
+	 * @return {@code true} if a goal is reachable.
+	 * @throws SearchCancelledException if the thread is interrupted mid-search.
+	 */
+	boolean findPath(int packedStart, PrimitiveIntList path)
+	{
+		path.clear();
+
+		final int tile = collisionMap.getTileIndex(packedStart);
+		if (tile < 0 || !anyGoalConnected(tile))
+		{
+			return false;
+		}
+
+		if (start >= 0 && start != tile)
+		{
+			// Queued keys were computed from the old start; they stay lower bounds
+			// once the distance moved is added to every new key
+			km += heuristic(start, tile);
+		}
+		start = tile;
+
+		if (!computeShortestPath())
+		{
+			return false;
+		}
+
+		if (extractPath(path))
+		{
+			return true;
+		}
+
+		// A goal is connected, so the kept tree is wrong; rebuilding it is slower
+		// than an update but keeps one bad query from failing every later one
+		log.debug("D* Lite session lost the path from {}, rebuilding", WorldPointUtil.unpackWorldPoint(packedStart));
+		reset();
+		return computeShortestPath() && extractPath(path);
+	}
+
+	/**
+	 * Follows the cheapest successors from {@link #start} to a goal.
+	 *
+	 * @return {@code false}, with {@code path} cleared, if the tree holds no
+	 *         such path.
+	 */
+	private boolean extractPath(PrimitiveIntList path)
+	{
+		path.clear();
+		if (g[start] >= INFINITE)
+		{
+			return false;
+		}
+
+		int current = start;
+		path.add(collisionMap.getPackedPoint(current));
+		while (!goal[current])
+		{
+			final int next = bestSuccessor(current);
+			if (next < 0 || path.size() > g[start] + 1)
+			{
+				log.debug("D* Lite path extraction failed at {}", WorldPointUtil.unpackWorldPoint(
+						collisionMap.getPackedPoint(current)));
+				path.clear();
+				return false;
+			}
+			current = next;
+			path.add(collisionMap.getPackedPoint(current));
+		}
+		return true;
+	}
+
+	/**
+	 * Forgets every cost and queues the goals again, as for a new session.
+	 */
+	private void reset()
+	{
+		Arrays.fill(g, INFINITE);
+		Arrays.fill(rhs, INFINITE);
+		open.clear();
+		km = 0;
+
+		for (int i = 0; i < goals.size(); i++)
+		{
+			final int tile = goals.get(i);
+			rhs[tile] = 0;
+			updateVertex(tile);
+		}
+	}
+
+	/**
+	 * @return {@code false} if the iteration limit was hit first.
+	 */
+	private boolean computeShortestPath()
+	{
+		int iterations = 0;
+		while (!open.isEmpty() && (open.getPriority(open.peek()) < key(start) || rhs[start] != g[start]))
+		{
+			if (++iterations > maxIterations)
+			{
+				log.debug("D* Lite hit MAX_ITERATIONS ({})", maxIterations);
+				return false;
+			}
+			SearchCancelledException.checkInterrupted(iterations);
+
+			final int u = open.peek();
+			final long oldKey = open.getPriority(u);
+			final long newKey = key(u);
+
+			if (oldKey < newKey)
+			{
+				open.update(u, newKey);
+			}
+			else if (g[u] > rhs[u])
+			{
+				g[u] = rhs[u];
+				open.remove(u);
+				relaxPredecessors(u);
+			}
+			else
+			{
+				final int oldG = g[u];
+				g[u] = INFINITE;
+				invalidatePredecessors(u, oldG);
+				if (!goal[u])
+				{
+					rhs[u] = lookahead(u);
+				}
+				updateVertex(u);
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * {@code u} got cheaper; predecessors may now route through it.
+	 */
+	private void relaxPredecessors(int u)
+	{
+		final int tileCount = collisionMap.getTileCount();
+		for (int d = 0; d < DIRECTION_COUNT; d++)
+		{
+			final int previous = u - (collisionMap.getNeighborTileIndex(u, d) - u);
+			if (previous >= 0 && previous < tileCount
+					&& (collisionMap.getTraversableDirections(previous) & (1 << d)) != 0)
+			{
+				relax(previous, 1 + g[u]);
+			}
+		}
+
+		for (int i = transports.getIncomingStart(u); i < transports.getIncomingEnd(u); i++)
+		{
+			final int edge = transports.getIncomingEdge(i);
+			relax(transports.getOrigin(edge), transports.getCost(edge) + g[u]);
+		}
+	}
+
+	private void relax(int tile, int cost)
+	{
+		if (!goal[tile] && cost < rhs[tile])
+		{
+			rhs[tile] = cost;
+			updateVertex(tile);
+		}
+	}
+
+	/**
+	 * {@code u} got more expensive; predecessors that routed through it need a
+	 * new lookahead.
+	 */
+	private void invalidatePredecessors(int u, int oldG)
+	{
+		final int tileCount = collisionMap.getTileCount();
+		for (int d = 0; d < DIRECTION_COUNT; d++)
+		{
+			final int previous = u - (collisionMap.getNeighborTileIndex(u, d) - u);
+			if (previous >= 0 && previous < tileCount
+					&& (collisionMap.getTraversableDirections(previous) & (1 << d)) != 0)
+			{
+				invalidate(previous, 1 + oldG);
+			}
+		}
+
+		for (int i = transports.getIncomingStart(u); i < transports.getIncomingEnd(u); i++)
+		{
+			final int edge = transports.getIncomingEdge(i);
+			invalidate(transports.getOrigin(edge), transports.getCost(edge) + oldG);
+		}
+	}
+
+	private void invalidate(int tile, int costThroughU)
+	{
+		if (!goal[tile] && rhs[tile] == costThroughU)
+		{
+			rhs[tile] = lookahead(tile);
+			updateVertex(tile);
+		}
+	}
+
+	/**
+	 * @return the cheapest step cost plus {@code g} over the successors of
+	 *         {@code tile}.
+	 */
+	private int lookahead(int tile)
+	{
+		int best = INFINITE;
+		final int directions = collisionMap.getTraversableDirections(tile);
+		for (int d = 0; d < DIRECTION_COUNT; d++)
+		{
+			if ((directions & (1 << d)) != 0)
+			{
+				best = Math.min(best, 1 + g[collisionMap.getNeighborTileIndex(tile, d)]);
+			}
+		}
+
+		for (int t = transports.getOutgoingStart(tile); t < transports.getOutgoingEnd(tile); t++)
+		{
+			best = Math.min(best, transports.getCost(t) + g[transports.getDestination(t)]);
+		}
+		return Math.min(best, INFINITE);
+	}
+
+	/**
+	 * @return the successor on a shortest path from {@code tile}, or -1.
+	 */
+	private int bestSuccessor(int tile)
+	{
+		int best = INFINITE;
+		int next = -1;
+		final int directions = collisionMap.getTraversableDirections(tile);
+		for (int d = 0; d < DIRECTION_COUNT; d++)
+		{
+			if ((directions & (1 << d)) != 0)
+			{
+				final int neighbor = collisionMap.getNeighborTileIndex(tile, d);
+				if (1 + g[neighbor] < best)
+				{
+					best = 1 + g[neighbor];
+					next = neighbor;
+				}
+			}
+		}
+
+		for (int t = transports.getOutgoingStart(tile); t < transports.getOutgoingEnd(tile); t++)
+		{
+			final int destination = transports.getDestination(t);
+			if (transports.getCost(t) + g[destination] < best)
+			{
+				best = transports.getCost(t) + g[destination];
+				next = destination;
+			}
+		}
+		return best < INFINITE ? next : -1;
+	}
+
+	private void updateVertex(int tile)
+	{
+		if (g[tile] != rhs[tile])
+		{
+			open.update(tile, key(tile));
+		}
+		else
+		{
+			open.remove(tile);
+		}
+	}
+
+	/**
+	 * D* Lite key: estimated total cost through {@code tile} first, then its
+	 * cost to the goals. Tiles that cannot reach a goal sort last.
+	 */
+	private long key(int tile)
+	{
+		final int cost = Math.min(g[tile], rhs[tile]);
+		if (cost >= INFINITE)
+		{
+			return Long.MAX_VALUE;
+		}
+		final int estimate = start < 0 ? 0 : heuristic(start, tile);
+		return IndexedMinHeap.priority(cost + estimate + km, cost);
+	}
+
+	/**
+	 * Consistent lower bound on the cost between two tiles: the cheapest portal
+	 * chain between their planes, and at most {@link #maxJump} tiles covered
+	 * per unit of cost. Some transports skip a plane, so the number of planes
+	 * apart is no bound.
+	 */
+	private int heuristic(int from, int to)
+	{
+		final int a = collisionMap.getPackedPoint(from);
+		final int b = collisionMap.getPackedPoint(to);
+		final int planes = transports.getPlaneLowerBound(WorldPointUtil.unpackWorldPlane(a),
+				WorldPointUtil.unpackWorldPlane(b));
+		final int dx = Math.abs(WorldPointUtil.unpackWorldX(a) - WorldPointUtil.unpackWorldX(b));
+		final int dy = Math.abs(WorldPointUtil.unpackWorldY(a) - WorldPointUtil.unpackWorldY(b));
+		return Math.max(Math.max(planes, 0), (Math.max(dx, dy) + maxJump - 1) / maxJump);
+	}
+
+	private boolean anyGoalConnected(int tile)
+	{
+		for (int i = 0; i < goals.size(); i++)
+		{
+			if (components.isConnected(tile, goals.get(i)))
+			{
+				return true;
+			}
+		}
+		return false;
+	}
+}
@@ -0,0 +1,171 @@
+package com.dklights.pathfinder;
+
+import com.dklights.enums.Direction;
+import java.util.Arrays;
+
+/**
+ * Walking cost from every tile of the {@link CollisionMap} grid to the
+ * nearest of a set of source tiles, together with the first step to take.
+ * <p>
+ * The field is built with a Dijkstra search that starts from all sources at
+ * once and follows movement and {@link TransportIndex} edges backwards, so
+ * once built the cost and next step from any tile are single array reads and
+ * the full path is a walk along the next steps. A step costs one and a
+ * transport {@link TransportIndex#getCost(int)}, matching the packed
+ * searches.
+ * <p>
+ * Instances are <strong>not</strong> thread-safe; build and read on the same
+ * thread.
+ */
+class DistanceField
+{
+	static final int UNREACHABLE = -1;
+
+	private static final int DIRECTION_COUNT = Direction.values().length;
+
+	private final CollisionMap collisionMap;
+	private final TransportIndex transports;
+
+	private final int[] distances;
+	private final int[] nextHops;
+	private final IndexedMinHeap openSet;
+
+	DistanceField(CollisionMap collisionMap, TransportIndex transports)
+	{
+		this.collisionMap = collisionMap;
+		this.transports = transports;
+
+		final int tileCount = collisionMap.getTileCount();
+		distances = new int[tileCount];
+		nextHops = new int[tileCount];
+		openSet = new IndexedMinHeap(tileCount);
+		Arrays.fill(distances, UNREACHABLE);
+	}
+
+	/**
+	 * Rebuilds the field for a new set of sources.
+	 *
+	 * @param sources packed source points; points outside the collision grid are
+	 *                ignored.
+	 * @return {@code true} if at least one source lies on the grid.
+	 */
+	boolean build(PrimitiveIntList sources)
+	{
+		Arrays.fill(distances, UNREACHABLE);
+		openSet.clear();
+
+		// Ties go to the tile queued first, as in a breadth-first search
+		int queued = 0;
+		for (int i = 0; i < sources.size(); i++)
+		{
+			final int tile = collisionMap.getTileIndex(sources.get(i));
+			if (tile >= 0 && distances[tile] == UNREACHABLE)
+			{
+				distances[tile] = 0;
+				nextHops[tile] = -1;
+				openSet.addOrDecrease(tile, IndexedMinHeap.priority(0, queued++));
+			}
+		}
+
+		final int tileCount = collisionMap.getTileCount();
+		int settled = 0;
+		while (!openSet.isEmpty())
+		{
+			SearchCancelledException.checkInterrupted(++settled);
+			final int current = openSet.poll();
+			final int nextDistance = distances[current] + 1;
+
+			// A tile steps onto current in direction d if it sits one step against
+			// d and its own mask allows moving that way
+			for (int d = 0; d < DIRECTION_COUNT; d++)
+			{
+				final int previous = current - (collisionMap.getNeighborTileIndex(current, d) - current);
+				if (previous >= 0 && previous < tileCount
+						&& (collisionMap.getTraversableDirections(previous) & (1 << d)) != 0)
+				{
+					queued = relax(previous, current, nextDistance, queued);
+				}
+			}
+
+			for (int i = transports.getIncomingStart(current); i < transports.getIncomingEnd(current); i++)
+			{
+				final int edge = transports.getIncomingEdge(i);
+				queued = relax(transports.getOrigin(edge), current, distances[current] + transports.getCost(edge),
+						queued);
+			}
+		}
+
+		return queued > 0;
+	}
+
+	/**
+	 * Routes {@code previous} through {@code current} if that is cheaper.
+	 *
+	 * @return the updated number of tiles queued so far.
+	 */
+	private int relax(int previous, int current, int distance, int queued)
+	{
+		if (distances[previous] != UNREACHABLE && distances[previous] <= distance)
+		{
+			return queued;
+		}
+
+		distances[previous] = distance;
+		nextHops[previous] = current;
+		openSet.addOrDecrease(previous, IndexedMinHeap.priority(distance, queued));
+		return queued + 1;
+	}
+
+	/**
+	 * @param packedPoint packed world point.
+	 * @return cost to the nearest source, or {@link #UNREACHABLE}.
+	 */
+	int getDistance(int packedPoint)
+	{
+		final int tile = collisionMap.getTileIndex(packedPoint);
+		return tile < 0 ? UNREACHABLE : distances[tile];
+	}
+
+	/**
+	 * @param packedPoint packed world point.
+	 * @return packed point of the next tile towards the nearest source, or
+	 *         {@link WorldPointUtil#UNDEFINED} if the point is a source or cannot
+	 *         reach one.
+	 */
+	int getNextStep(int packedPoint)
+	{
+		final int tile = collisionMap.getTileIndex(packedPoint);
+		if (tile < 0 || distances[tile] <= 0)
+		{
+			return WorldPointUtil.UNDEFINED;
+		}
+		return collisionMap.getPackedPoint(nextHops[tile]);
+	}
+
+	/**
+	 * Walks the next steps from {@code start} to the nearest source.
+	 *
+	 * @param start packed start point.
+	 * @param path  receives the packed path, start first. Cleared on entry.
+	 * @return {@code true} if a source is reachable from {@code start}.
+	 */
+	boolean getPath(int start, PrimitiveIntList path)
+	{
+		path.clear();
+
+		int tile = collisionMap.getTileIndex(start);
+		if (tile < 0 || distances[tile] == UNREACHABLE)
+		{
+			return false;
+		}
+
+		path.ensureCapacity(distances[tile] + 1);
+		path.add(start);
+		while (distances[tile] > 0)
+		{
+			tile = nextHops[tile];
+			path.add(collisionMap.getPackedPoint(tile));
+		}
+		return true;
+	}
+}
@@ -0,0 +1,351 @@
+package com.dklights.pathfinder;
+
+import com.dklights.enums.Direction;
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+
+/**
+ * Compressed path database: the first move from every tile towards every lamp,
+ * the bank and the wire machine, indexed like {@link LampDistanceMatrix}.
+ * <p>
+ * A route is rebuilt by looking up the first move, taking it, and repeating, so
+ * a path costs one lookup per step and no search. Moves follow a shortest path
+ * to the nearest walkable tile cardinally adjacent to the node, with the costs
+ * of {@link DistanceField}. Walls that spawn at runtime are not taken into
+ * account.
+ * <p>
+ * Neighbouring tiles mostly share their first move, so each node's moves are
+ * stored run-length encoded in tile index order and looked up by binary
+ * search. Tiles that cannot be left do not break a run, since no route starts
+ * or passes there; lookups for them are rejected instead. A move is a
+ * {@link Direction} ordinal, or {@link #TRANSPORT} plus the position among the
+ * tile's outgoing transports in {@link TransportIndex}. Where several moves
+ * are equally short, the one that continues the current run is kept.
+ * <p>
+ * The database is generated at build time (see the {@code generateFirstMoves}
+ * Gradle task) and stored as {@value #RESOURCE}: a magic number, the node
+ * count, a hash of the node locations,
+ * {@link LampDistanceMatrix#mapHash(CollisionMap, TransportIndex)}, and then
+ * per node the run count followed by the runs. Each run is a variable-length
+ * int (seven bits per byte, low bits first) holding the distance from the
+ * first tile of the previous run shifted left by four and the move in the low
+ * four bits.
+ */
+class FirstMoveDatabase
+{
+	static final String RESOURCE = "/first_moves.bin";
+
+	private static final int MAGIC = 0x444B464D;
+
+	private static final int DIRECTION_COUNT = Direction.values().length;
+	private static final int TRANSPORT = DIRECTION_COUNT;
+	// The tile is next to the node
+	private static final int ARRIVED = 14;
+	private static final int UNREACHABLE = 15;
+
+	private static final int MOVE_BITS = 4;
+	private static final int MOVE_MASK = (1 << MOVE_BITS) - 1;
+
+	private final CollisionMap collisionMap;
+	private final TransportIndex transports;
+
+	// Sorted runs per node, see the class comment
+	private final int[][] runs;
+
+	private FirstMoveDatabase(CollisionMap collisionMap, TransportIndex transports, int[][] runs)
+	{
+		this.collisionMap = collisionMap;
+		this.transports = transports;
+		this.runs = runs;
+	}
+
+	/**
+	 * Builds one reverse {@link DistanceField} per node and compresses the
+	 * first moves it implies.
+	 */
+	static FirstMoveDatabase compute(CollisionMap collisionMap, TransportIndex transports)
+	{
+		final int tileCount = collisionMap.getTileCount();
+		final DistanceField field = new DistanceField(collisionMap, transports);
+		final int[] distances = new int[tileCount];
+		final int[][] runs = new int[LampDistanceMatrix.NODE_COUNT][];
+		final PrimitiveIntList nodeRuns = new PrimitiveIntList();
+
+		for (int node = 0; node < LampDistanceMatrix.NODE_COUNT; node++)
+		{
+			field.build(LampDistanceMatrix.getApproachTiles(collisionMap, transports,
+					LampDistanceMatrix.getLocation(node)));
+			for (int tile = 0; tile < tileCount; tile++)
+			{
+				distances[tile] = field.getDistance(collisionMap.getPackedPoint(tile));
+			}
+
+			nodeRuns.clear();
+			int previousMove = -1;
+			for (int tile = 0; tile < tileCount; tile++)
+			{
+				if (!isWalkable(collisionMap, transports, tile))
+				{
+					// Nobody starts or passes here, any move will do
+					continue;
+				}
+
+				final int move = getFirstMove(collisionMap, transports, distances, tile, previousMove);
+				if (move != previousMove)
+				{
+					nodeRuns.add(tile << MOVE_BITS | move);
+					previousMove = move;
+				}
+			}
+
+			runs[node] = new int[nodeRuns.size()];
+			for (int i = 0; i < nodeRuns.size(); i++)
+			{
+				runs[node][i] = nodeRuns.get(i);
+			}
+		}
+		return new FirstMoveDatabase(collisionMap, transports, runs);
+	}
+
+	/**
+	 * @return a move from {@code tile} on a shortest path, preferring
+	 *         {@code preferred}.
+	 */
+	private static int getFirstMove(CollisionMap collisionMap, TransportIndex transports, int[] distances, int tile,
+			int preferred)
+	{
+		final int distance = distances[tile];
+		if (distance == DistanceField.UNREACHABLE)
+		{
+			return UNREACHABLE;
+		}
+		if (distance == 0)
+		{
+			return ARRIVED;
+		}
+
+		int first = -1;
+		final int directions = collisionMap.getTraversableDirections(tile);
+		for (int d = 0; d < DIRECTION_COUNT; d++)
+		{
+			if ((directions & (1 << d)) != 0 && distances[collisionMap.getNeighborTileIndex(tile, d)] == distance - 1)
+			{
+				if (d == preferred)
+				{
+					return d;
+				}
+				first = first < 0 ? d : first;
+			}
+		}
+
+		final int transportStart = transports.getOutgoingStart(tile);
+		if (TRANSPORT + transports.getOutgoingEnd(tile) - transportStart > ARRIVED)
+		{
+			throw new IllegalStateException("Too many transports to encode at " + WorldPointUtil.unpackWorldPoint(
+					collisionMap.getPackedPoint(tile)));
+		}
+
+		for (int t = transportStart; t < transports.getOutgoingEnd(tile); t++)
+		{
+			if (distances[transports.getDestination(t)] == distance - transports.getCost(t))
+			{
+				final int move = TRANSPORT + t - transportStart;
+				if (move == preferred)
+				{
+					return move;
+				}
+				first = first < 0 ? move : first;
+			}
+		}
+		return first;
+	}
+
+	/**
+	 * @throws IOException if the resource is missing, truncated or was generated
+	 *                     for different lamps or a different collision map.
+	 */
+	static FirstMoveDatabase loadFromResources(CollisionMap collisionMap, TransportIndex transports)
+			throws IOException
+	{
+		try (InputStream in = FirstMoveDatabase.class.getResourceAsStream(RESOURCE))
+		{
+			if (in == null)
+			{
+				throw new IOException("First move database not found: " + RESOURCE);
+			}
+
+			final DataInputStream data = new DataInputStream(new BufferedInputStream(in));
+			if (data.readInt() != MAGIC || data.readUnsignedShort() != LampDistanceMatrix.NODE_COUNT
+					|| data.readInt() != LampDistanceMatrix.locationHash()
+					|| data.readInt() != LampDistanceMatrix.mapHash(collisionMap, transports))
+			{
+				throw new IOException("First move database is out of date, run generateFirstMoves");
+			}
+
+			final int[][] runs = new int[LampDistanceMatrix.NODE_COUNT][];
+			for (int node = 0; node < runs.length; node++)
+			{
+				runs[node] = new int[data.readInt()];
+				int tile = 0;
+				for (int i = 0; i < runs[node].length; i++)
+				{
+					final int run = readVarInt(data);
+					tile += run >>> MOVE_BITS;
+					runs[node][i] = tile << MOVE_BITS | run & MOVE_MASK;
+				}
+			}
+			return new FirstMoveDatabase(collisionMap, transports, runs);
+		}
+	}
+
+	void write(OutputStream out) throws IOException
+	{
+		final DataOutputStream data = new DataOutputStream(out);
+		data.writeInt(MAGIC);
+		data.writeShort(LampDistanceMatrix.NODE_COUNT);
+		data.writeInt(LampDistanceMatrix.locationHash());
+		data.writeInt(LampDistanceMatrix.mapHash(collisionMap, transports));
+		for (int[] nodeRuns : runs)
+		{
+			data.writeInt(nodeRuns.length);
+			int tile = 0;
+			for (int run : nodeRuns)
+			{
+				writeVarInt(data, run - (tile << MOVE_BITS));
+				tile = run >>> MOVE_BITS;
+			}
+		}
+		data.flush();
+	}
+
+	private static void writeVarInt(DataOutputStream data, int value) throws IOException
+	{
+		while ((value & ~0x7F) != 0)
+		{
+			data.writeByte(value & 0x7F | 0x80);
+			value >>>= 7;
+		}
+		data.writeByte(value);
+	}
+
+	private static int readVarInt(DataInputStream data) throws IOException
+	{
+		int value = 0;
+		for (int shift = 0;; shift += 7)
+		{
+			final int b = data.readUnsignedByte();
+			value |= (b & 0x7F) << shift;
+			if ((b & 0x80) == 0)
+			{
+				return value;
+			}
+		}
+	}
+
+	/**
+	 * @param packedPoint packed world point.
+	 * @param node        node index, see {@link LampDistanceMatrix#indexOf}.
+	 * @return packed point of the next tile towards {@code node}, or
+	 *         {@link WorldPointUtil#UNDEFINED} if the point is next to the node
+	 *         or cannot reach it.
+	 */
+	int getNextStep(int packedPoint, int node)
+	{
+		final int tile = collisionMap.getTileIndex(packedPoint);
+		if (tile < 0 || !isWalkable(collisionMap, transports, tile))
+		{
+			return WorldPointUtil.UNDEFINED;
+		}
+
+		final int next = getNextTile(tile, node);
+		return next < 0 ? WorldPointUtil.UNDEFINED : collisionMap.getPackedPoint(next);
+	}
+
+	/**
+	 * Follows the first moves from {@code start} to {@code node}.
+	 *
+	 * @param start packed start point.
+	 * @param node  node index, see {@link LampDistanceMatrix#indexOf}.
+	 * @param path  receives the packed path, start first, ending next to the
+	 *              node. Cleared on entry.
+	 * @return {@code true} if the node is reachable from {@code start};
+	 *         {@code false}, with {@code path} cleared, if it is not or the
+	 *         moves do not lead there within one visit per tile.
+	 */
+	boolean getPath(int start, int node, PrimitiveIntList path)
+	{
+		path.clear();
+
+		int tile = collisionMap.getTileIndex(start);
+		if (tile < 0 || !isWalkable(collisionMap, transports, tile) || getMove(tile, node) == UNREACHABLE)
+		{
+			return false;
+		}
+
+		path.add(start);
+		// A shortest path visits each tile at most once, so a longer walk means a
+		// corrupt database led into a cycle
+		for (int next = getNextTile(tile, node); next >= 0; next = getNextTile(tile, node))
+		{
+			if (path.size() >= collisionMap.getTileCount())
+			{
+				path.clear();
+				return false;
+			}
+			tile = next;
+			path.add(collisionMap.getPackedPoint(tile));
+		}
+		return true;
+	}
+
+	/**
+	 * @return the node index whose location is {@code packedLocation}, or -1.
+	 */
+	static int getNode(int packedLocation)
+	{
+		for (int node = 0; node < LampDistanceMatrix.NODE_COUNT; node++)
+		{
+			if (WorldPointUtil.packWorldPoint(LampDistanceMatrix.getLocation(node)) == packedLocation)
+			{
+				return node;
+			}
+		}
+		return -1;
+	}
+
+	private static boolean isWalkable(CollisionMap collisionMap, TransportIndex transports, int tile)
+	{
+		return transports.hasOutgoing(tile) || collisionMap.getTraversableDirections(tile) != 0;
+	}
+
+	private int getNextTile(int tile, int node)
+	{
+		final int move = getMove(tile, node);
+		if (move < TRANSPORT)
+		{
+			return collisionMap.getNeighborTileIndex(tile, move);
+		}
+		if (move < ARRIVED)
+		{
+			return transports.getDestination(transports.getOutgoingStart(tile) + move - TRANSPORT);
+		}
+		return -1;
+	}
+
+	private int getMove(int tile, int node)
+	{
+		final int[] nodeRuns = runs[node];
+		// Largest run starting at or before the tile
+		int index = Arrays.binarySearch(nodeRuns, tile << MOVE_BITS | MOVE_MASK);
+		if (index < 0)
+		{
+			index = -index - 2;
+		}
+		return nodeRuns[index] & MOVE_MASK;
+	}
+}
@@ -0,0 +1,688 @@
+package com.dklights.pathfinder;
+
+import com.dklights.enums.Direction;
+import java.util.Arrays;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Hierarchical path-finding (HPA*) over square clusters of the
+ * {@link CollisionMap} grid.
+ * <p>
+ * Each plane is cut into {@link #CLUSTER_SIZE} by {@link #CLUSTER_SIZE}
+ * clusters. Where walking crosses from one cluster into the next, every run of
+ * crossable border tiles gets an entrance: a pair of abstract nodes on either
+ * side, in the middle of the run or at both ends of a long one. Transport
+ * endpoints are abstract nodes too. Abstract edges are the single steps across
+ * a border, the transports, and the walking distance between every two nodes
+ * of a cluster, measured without leaving it. All of this is built once.
+ * <p>
+ * A query connects the start and the goal tiles to the nodes of their own
+ * clusters, runs Dijkstra over the abstract graph, and then refines the route
+ * into tiles with a search confined to the clusters it passes through. Paths
+ * stay inside that corridor and may be a few steps longer than the shortest.
+ * <p>
+ * Queries use two per-thread {@link SearchContext}s, one for the abstract
+ * graph and one for walking inside a cluster, so instances can be shared
+ * between threads like {@link PackedPathfinder}.
+ */
+@Slf4j
+class HierarchicalSearch
+{
+	static final int CLUSTER_SIZE = 8;
+
+	// A run of crossable border tiles at least this long gets an entrance at
+	// both ends instead of one in the middle
+	private static final int LONG_ENTRANCE = 6;
+
+	private static final Direction[] DIRECTIONS = Direction.values();
+	private static final int DIRECTION_COUNT = DIRECTIONS.length;
+	private static final Direction[] CARDINAL_DIRECTIONS =
+	{ Direction.NORTH, Direction.EAST, Direction.SOUTH, Direction.WEST };
+	private static final int NORTH = 1 << Direction.NORTH.ordinal();
+	private static final int EAST = 1 << Direction.EAST.ordinal();
+	private static final int SOUTH = 1 << Direction.SOUTH.ordinal();
+	private static final int WEST = 1 << Direction.WEST.ordinal();
+
+	private static final byte VISITED = 1;
+	private static final byte CLOSED = 1 << 1;
+	private static final byte GOAL = 1 << 2;
+
+	private static final int NO_NODE = -1;
+	private static final int INFINITE = Integer.MAX_VALUE;
+
+	private final CollisionMap collisionMap;
+	private final TransportIndex transports;
+	private final ConnectedComponents components;
+	private final ThreadLocal<SearchContext> abstractContexts;
+	private final ThreadLocal<SearchContext> clusterContexts;
+
+	private final int gridWidth;
+	private final int gridHeight;
+	private final int clustersX;
+	private final int clustersY;
+
+	// Abstract node of every tile, or NO_NODE
+	private final int[] tileNodes;
+	private final int[] nodeTiles;
+
+	// Nodes of cluster c are clusterNodes[clusterOffsets[c] .. clusterOffsets[c + 1])
+	private final int[] clusterOffsets;
+	private final int[] clusterNodes;
+
+	// Edges leaving node n are [edgeOffsets[n], edgeOffsets[n + 1])
+	private final int[] edgeOffsets;
+	private final int[] edgeTargets;
+	private final int[] edgeCosts;
+
+	/**
+	 * Number of abstract nodes.
+	 */
+	@Getter
+	private final int nodeCount;
+
+	HierarchicalSearch(CollisionMap collisionMap, TransportIndex transports, ConnectedComponents components,
+			ThreadLocal<SearchContext> abstractContexts, ThreadLocal<SearchContext> clusterContexts)
+	{
+		this.collisionMap = collisionMap;
+		this.transports = transports;
+		this.components = components;
+		this.abstractContexts = abstractContexts;
+		this.clusterContexts = clusterContexts;
+
+		gridWidth = collisionMap.getGridWidth();
+		gridHeight = collisionMap.getGridHeight();
+		clustersX = (gridWidth + CLUSTER_SIZE - 1) / CLUSTER_SIZE;
+		clustersY = (gridHeight + CLUSTER_SIZE - 1) / CLUSTER_SIZE;
+
+		final int tileCount = collisionMap.getTileCount();
+		tileNodes = new int[tileCount];
+		Arrays.fill(tileNodes, NO_NODE);
+
+		final PrimitiveIntList nodes = new PrimitiveIntList();
+		final PrimitiveIntList edges = new PrimitiveIntList();
+		addEntrances(nodes, edges);
+		addDiagonalEntrances(nodes, edges);
+		for (int edge = 0; edge < transports.size(); edge++)
+		{
+			addEdge(nodes, edges, transports.getOrigin(edge), transports.getDestination(edge),
+					transports.getCost(edge));
+		}
+
+		nodeCount = nodes.size();
+		nodeTiles = new int[nodeCount];
+		for (int node = 0; node < nodeCount; node++)
+		{
+			nodeTiles[node] = nodes.get(node);
+		}
+
+		// Group nodes by cluster
+		final int clusterCount = clustersX * clustersY * CollisionMap.PLANE_COUNT;
+		clusterOffsets = new int[clusterCount + 1];
+		for (int node = 0; node < nodeCount; node++)
+		{
+			clusterOffsets[getCluster(nodeTiles[node]) + 1]++;
+		}
+		for (int cluster = 0; cluster < clusterCount; cluster++)
+		{
+			clusterOffsets[cluster + 1] += clusterOffsets[cluster];
+		}
+		clusterNodes = new int[nodeCount];
+		final int[] fill = Arrays.copyOf(clusterOffsets, clusterCount);
+		for (int node = 0; node < nodeCount; node++)
+		{
+			clusterNodes[fill[getCluster(nodeTiles[node])]++] = node;
+		}
+
+		addClusterEdges(nodes, edges);
+
+		// Edges were collected as (from, to, cost) triples
+		final int edgeCount = edges.size() / 3;
+		edgeOffsets = new int[nodeCount + 1];
+		for (int i = 0; i < edgeCount; i++)
+		{
+			edgeOffsets[edges.get(i * 3) + 1]++;
+		}
+		for (int node = 0; node < nodeCount; node++)
+		{
+			edgeOffsets[node + 1] += edgeOffsets[node];
+		}
+		edgeTargets = new int[edgeCount];
+		edgeCosts = new int[edgeCount];
+		final int[] next = Arrays.copyOf(edgeOffsets, nodeCount);
+		for (int i = 0; i < edgeCount; i++)
+		{
+			final int slot = next[edges.get(i * 3)]++;
+			edgeTargets[slot] = edges.get(i * 3 + 1);
+			edgeCosts[slot] = edges.get(i * 3 + 2);
+		}
+
+		log.debug("Hierarchical graph has {} nodes and {} edges", nodeCount, edgeCount);
+	}
+
+	/**
+	 * Path from {@code start} to any walkable tile cardinally adjacent to
+	 * {@code end}.
+	 *
+	 * @param start packed start point.
+	 * @param end   packed target point.
+	 * @param path  receives the packed path, start first. Cleared on entry.
+	 * @return {@link SearchStatus#FOUND} or {@link SearchStatus#NOT_FOUND}.
+	 * @throws SearchCancelledException if the thread is interrupted mid-search.
+	 */
+	SearchStatus findPath(int start, int end, PrimitiveIntList path)
+	{
+		path.clear();
+
+		final int startTile = collisionMap.getTileIndex(start);
+		if (startTile < 0)
+		{
+			return SearchStatus.NOT_FOUND;
+		}
+
+		if (start == end)
+		{
+			path.add(start);
+			return SearchStatus.FOUND;
+		}
+
+		final PrimitiveIntList goals = new PrimitiveIntList(CARDINAL_DIRECTIONS.length);
+		for (Direction direction : CARDINAL_DIRECTIONS)
+		{
+			final int tile = collisionMap.getTileIndex(WorldPointUtil.dxdy(end, direction.getX(), direction.getY()));
+			if (tile >= 0 && isWalkable(tile) && components.isConnected(startTile, tile))
+			{
+				goals.add(tile);
+			}
+		}
+
+		if (goals.isEmpty())
+		{
+			log.debug("No reachable tiles next to {}", WorldPointUtil.unpackWorldPoint(end));
+			return SearchStatus.NOT_FOUND;
+		}
+
+		final SearchContext graph = abstractContexts.get();
+		final SearchContext cluster = clusterContexts.get();
+		graph.reset();
+
+		// Walking cost from the nodes of each goal cluster to the nearest goal
+		final PrimitiveIntList exitNodes = new PrimitiveIntList();
+		final PrimitiveIntList exitCosts = new PrimitiveIntList();
+		final PrimitiveIntList clusterGoals = new PrimitiveIntList(goals.size());
+		for (int i = 0; i < goals.size(); i++)
+		{
+			final int goalCluster = getCluster(goals.get(i));
+			if (!isFirstInCluster(goals, i, goalCluster))
+			{
+				continue;
+			}
+
+			clusterGoals.clear();
+			for (int j = i; j < goals.size(); j++)
+			{
+				if (getCluster(goals.get(j)) == goalCluster)
+				{
+					clusterGoals.add(goals.get(j));
+				}
+			}
+
+			searchCluster(cluster, clusterGoals, goalCluster, true);
+			for (int n = clusterOffsets[goalCluster]; n < clusterOffsets[goalCluster + 1]; n++)
+			{
+				final int node = clusterNodes[n];
+				if (cluster.hasFlags(nodeTiles[node], VISITED))
+				{
+					graph.addFlags(node, GOAL);
+					exitNodes.add(node);
+					exitCosts.add(cluster.getGCost()[nodeTiles[node]]);
+				}
+			}
+		}
+
+		// Seed the abstract search with the nodes reachable inside the start
+		// cluster, and note a goal reachable without leaving it
+		final int startCluster = getCluster(startTile);
+		final PrimitiveIntList sources = new PrimitiveIntList(1);
+		sources.add(startTile);
+		searchCluster(cluster, sources, startCluster, false);
+
+		int bestCost = INFINITE;
+		int bestNode = NO_NODE;
+		for (int i = 0; i < goals.size(); i++)
+		{
+			if (cluster.hasFlags(goals.get(i), VISITED))
+			{
+				bestCost = Math.min(bestCost, cluster.getGCost()[goals.get(i)]);
+			}
+		}
+
+		final int[] cost = graph.getGCost();
+		final int[] parent = graph.getParent();
+		final IndexedMinHeap openSet = graph.getOpenSet();
+		for (int n = clusterOffsets[startCluster]; n < clusterOffsets[startCluster + 1]; n++)
+		{
+			final int node = clusterNodes[n];
+			if (cluster.hasFlags(nodeTiles[node], VISITED))
+			{
+				graph.addFlags(node, VISITED);
+				cost[node] = cluster.getGCost()[nodeTiles[node]];
+				parent[node] = NO_NODE;
+				openSet.addOrDecrease(node, IndexedMinHeap.priority(cost[node], 0));
+			}
+		}
+
+		int iterations = 0;
+		while (!openSet.isEmpty())
+		{
+			final int node = openSet.poll();
+			if (cost[node] >= bestCost)
+			{
+				break;
+			}
+			SearchCancelledException.checkInterrupted(++iterations);
+			graph.addFlags(node, CLOSED);
+			graph.countExpansion();
+
+			if (graph.hasFlags(node, GOAL))
+			{
+				final int total = cost[node] + exitCosts.get(exitNodes.indexOf(node));
+				if (total < bestCost)
+				{
+					bestCost = total;
+					bestNode = node;
+				}
+			}
+
+			for (int e = edgeOffsets[node]; e < edgeOffsets[node + 1]; e++)
+			{
+				final int target = edgeTargets[e];
+				final int targetCost = cost[node] + edgeCosts[e];
+				if (!graph.hasFlags(target, CLOSED)
+						&& (!graph.hasFlags(target, VISITED) || targetCost < cost[target]))
+				{
+					graph.addFlags(target, VISITED);
+					cost[target] = targetCost;
+					parent[target] = node;
+					openSet.addOrDecrease(target, IndexedMinHeap.priority(targetCost, 0));
+				}
+			}
+		}
+
+		if (bestCost == INFINITE)
+		{
+			return SearchStatus.NOT_FOUND;
+		}
+
+		log.debug("Hierarchical findPath expanded {} abstract nodes", iterations);
+		refine(graph, cluster, startTile, bestNode, goals, path);
+		return SearchStatus.FOUND;
+	}
+
+	/**
+	 * Expands the abstract route ending at {@code lastNode} into tiles with a
+	 * search confined to the clusters it passes through and those of the
+	 * goals, which also straightens the detours through entrance tiles. The route itself lies in
+	 * that corridor, so the result is never longer. {@link #NO_NODE} means the
+	 * goal is reached without leaving the start cluster.
+	 */
+	private void refine(SearchContext graph, SearchContext cluster, int startTile, int lastNode,
+			PrimitiveIntList goals, PrimitiveIntList path)
+	{
+		final boolean[] corridor = new boolean[clusterOffsets.length - 1];
+		corridor[getCluster(startTile)] = true;
+		for (int i = 0; i < goals.size(); i++)
+		{
+			corridor[getCluster(goals.get(i))] = true;
+		}
+		for (int node = lastNode; node != NO_NODE; node = graph.getParent()[node])
+		{
+			corridor[getCluster(nodeTiles[node])] = true;
+		}
+
+		cluster.reset();
+		final int[] cost = cluster.getGCost();
+		final int[] parent = cluster.getParent();
+		final IndexedMinHeap openSet = cluster.getOpenSet();
+		cost[startTile] = 0;
+		parent[startTile] = NO_NODE;
+		cluster.addFlags(startTile, VISITED);
+		openSet.addOrDecrease(startTile, 0);
+
+		int iterations = 0;
+		while (!openSet.isEmpty())
+		{
+			final int current = openSet.poll();
+			SearchCancelledException.checkInterrupted(++iterations);
+			// Refinement is reported together with the abstract search
+			graph.countExpansion();
+			if (goals.contains(current))
+			{
+				appendPath(parent, current, path);
+				return;
+			}
+			cluster.addFlags(current, CLOSED);
+
+			final int directions = collisionMap.getTraversableDirections(current);
+			for (int d = 0; d < DIRECTION_COUNT; d++)
+			{
+				if ((directions & (1 << d)) != 0)
+				{
+					relaxInCorridor(cluster, corridor, current, collisionMap.getNeighborTileIndex(current, d), 1);
+				}
+			}
+
+			for (int t = transports.getOutgoingStart(current); t < transports.getOutgoingEnd(current); t++)
+			{
+				relaxInCorridor(cluster, corridor, current, transports.getDestination(t), transports.getCost(t));
+			}
+		}
+
+		log.debug("Hierarchical refinement lost the route from {}", WorldPointUtil.unpackWorldPoint(
+				collisionMap.getPackedPoint(startTile)));
+	}
+
+	private void relaxInCorridor(SearchContext cluster, boolean[] corridor, int current, int neighbor, int stepCost)
+	{
+		if (!corridor[getCluster(neighbor)] || cluster.hasFlags(neighbor, CLOSED))
+		{
+			return;
+		}
+
+		final int[] cost = cluster.getGCost();
+		final int neighborCost = cost[current] + stepCost;
+		if (!cluster.hasFlags(neighbor, VISITED) || neighborCost < cost[neighbor])
+		{
+			cluster.addFlags(neighbor, VISITED);
+			cost[neighbor] = neighborCost;
+			cluster.getParent()[neighbor] = current;
+			cluster.getOpenSet().addOrDecrease(neighbor, IndexedMinHeap.priority(neighborCost, 0));
+		}
+	}
+
+	private void appendPath(int[] parent, int goal, PrimitiveIntList path)
+	{
+		for (int tile = goal; tile != NO_NODE; tile = parent[tile])
+		{
+			path.add(collisionMap.getPackedPoint(tile));
+		}
+
+		for (int i = 0, j = path.size() - 1; i < j; i++, j--)
+		{
+			path.set(j, path.set(i, path.get(j)));
+		}
+	}
+	/**
+	 * Breadth-first search from {@code sources} that never leaves
+	 * {@code clusterId}. Reached tiles get {@link #VISITED} and their depth in
+	 * the g-cost array.
+	 *
+	 * @param backward follow moves in reverse, giving the distance to the
+	 *                 sources instead of from them.
+	 */
+	private void searchCluster(SearchContext cluster, PrimitiveIntList sources, int clusterId, boolean backward)
+	{
+		cluster.reset();
+		final int[] queue = cluster.getQueue();
+		final int[] depth = cluster.getGCost();
+		int head = 0;
+		int tail = 0;
+		for (int i = 0; i < sources.size(); i++)
+		{
+			final int tile = sources.get(i);
+			if (!cluster.hasFlags(tile, VISITED))
+			{
+				cluster.addFlags(tile, VISITED);
+				depth[tile] = 0;
+				queue[tail++] = tile;
+			}
+		}
+
+		final int tileCount = collisionMap.getTileCount();
+		while (head < tail)
+		{
+			final int current = queue[head++];
+			for (int d = 0; d < DIRECTION_COUNT; d++)
+			{
+				final int neighbor;
+				if (backward)
+				{
+					neighbor = current - (collisionMap.getNeighborTileIndex(current, d) - current);
+					if (neighbor < 0 || neighbor >= tileCount
+							|| (collisionMap.getTraversableDirections(neighbor) & (1 << d)) == 0)
+					{
+						continue;
+					}
+				}
+				else
+				{
+					if ((collisionMap.getTraversableDirections(current) & (1 << d)) == 0)
+					{
+						continue;
+					}
+					neighbor = collisionMap.getNeighborTileIndex(current, d);
+				}
+
+				if (!cluster.hasFlags(neighbor, VISITED) && getCluster(neighbor) == clusterId)
+				{
+					cluster.addFlags(neighbor, VISITED);
+					depth[neighbor] = depth[current] + 1;
+					queue[tail++] = neighbor;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Adds an entrance for every run of border tiles that can be crossed into
+	 * the next cluster, on every vertical and horizontal cluster border.
+	 */
+	private void addEntrances(PrimitiveIntList nodes, PrimitiveIntList edges)
+	{
+		for (int z = 0; z < CollisionMap.PLANE_COUNT; z++)
+		{
+			for (int cy = 0; cy < clustersY; cy++)
+			{
+				final int y = cy * CLUSTER_SIZE;
+				final int length = Math.min(CLUSTER_SIZE, gridHeight - y);
+				for (int x = CLUSTER_SIZE; x < gridWidth; x += CLUSTER_SIZE)
+				{
+					final int west = tileAt(x - 1, y, z);
+					final int east = tileAt(x, y, z);
+					addEntrances(nodes, edges, west, east, gridWidth, length, EAST, NORTH, SOUTH);
+					addEntrances(nodes, edges, east, west, gridWidth, length, WEST, NORTH, SOUTH);
+				}
+			}
+
+			for (int cx = 0; cx < clustersX; cx++)
+			{
+				final int x = cx * CLUSTER_SIZE;
+				final int length = Math.min(CLUSTER_SIZE, gridWidth - x);
+				for (int y = CLUSTER_SIZE; y < gridHeight; y += CLUSTER_SIZE)
+				{
+					final int south = tileAt(x, y - 1, z);
+					final int north = tileAt(x, y, z);
+					addEntrances(nodes, edges, south, north, 1, length, NORTH, EAST, WEST);
+					addEntrances(nodes, edges, north, south, 1, length, SOUTH, EAST, WEST);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Scans one border between tile rows {@code a} and {@code b} and adds an
+	 * entrance per run of tiles that can step from {@code a} to {@code b}.
+	 * Walls often block a border in one direction only, so each direction is
+	 * scanned on its own. A run only continues while both sides can walk along
+	 * the border, so every crossing in it is reachable from the entrance inside
+	 * its cluster.
+	 *
+	 * @param step      index offset between consecutive border tiles.
+	 * @param across    direction mask from side {@code a} to side {@code b}.
+	 * @param along     direction mask from one border tile to the next.
+	 * @param alongBack direction mask from one border tile to the previous.
+	 */
+	private void addEntrances(PrimitiveIntList nodes, PrimitiveIntList edges, int a, int b, int step, int length,
+			int across, int along, int alongBack)
+	{
+		int runStart = -1;
+		for (int i = 0; i <= length; i++)
+		{
+			final boolean crossable = i < length && (collisionMap.getTraversableDirections(a + i * step) & across) != 0;
+			final boolean continues = crossable && runStart >= 0
+					&& isLinked(a + (i - 1) * step, a + i * step, along, alongBack)
+					&& isLinked(b + (i - 1) * step, b + i * step, along, alongBack);
+
+			if (runStart >= 0 && !continues)
+			{
+				final int runEnd = i - 1;
+				if (runEnd - runStart + 1 >= LONG_ENTRANCE)
+				{
+					addEdge(nodes, edges, a + runStart * step, b + runStart * step, 1);
+					addEdge(nodes, edges, a + runEnd * step, b + runEnd * step, 1);
+				}
+				else
+				{
+					final int middle = (runStart + runEnd) / 2;
+					addEdge(nodes, edges, a + middle * step, b + middle * step, 1);
+				}
+				runStart = -1;
+			}
+
+			if (crossable && runStart < 0)
+			{
+				runStart = i;
+			}
+		}
+	}
+
+	/**
+	 * Adds an edge for every diagonal step into another cluster that cannot be
+	 * replaced by two cardinal steps, which the border runs would miss.
+	 */
+	private void addDiagonalEntrances(PrimitiveIntList nodes, PrimitiveIntList edges)
+	{
+		for (int tile = 0; tile < collisionMap.getTileCount(); tile++)
+		{
+			final int directions = collisionMap.getTraversableDirections(tile);
+			for (Direction direction : DIRECTIONS)
+			{
+				if (!direction.isDiagonal() || (directions & (1 << direction.ordinal())) == 0)
+				{
+					continue;
+				}
+
+				final int neighbor = collisionMap.getNeighborTileIndex(tile, direction.ordinal());
+				final Direction horizontal = getCardinal(direction.getX(), 0);
+				final Direction vertical = getCardinal(0, direction.getY());
+				if (getCluster(neighbor) != getCluster(tile) && !isTwoStep(tile, horizontal, vertical)
+						&& !isTwoStep(tile, vertical, horizontal))
+				{
+					addEdge(nodes, edges, tile, neighbor, 1);
+				}
+			}
+		}
+	}
+
+	private boolean isTwoStep(int tile, Direction first, Direction second)
+	{
+		return (collisionMap.getTraversableDirections(tile) & (1 << first.ordinal())) != 0
+				&& (collisionMap.getTraversableDirections(collisionMap.getNeighborTileIndex(tile, first.ordinal()))
+						& (1 << second.ordinal())) != 0;
+	}
+
+	private static Direction getCardinal(int x, int y)
+	{
+		for (Direction direction : CARDINAL_DIRECTIONS)
+		{
+			if (direction.getX() == x && direction.getY() == y)
+			{
+				return direction;
+			}
+		}
+		throw new IllegalArgumentException("Not a cardinal direction: " + x + ", " + y);
+	}
+
+	private boolean isLinked(int previous, int current, int along, int alongBack)
+	{
+		return (collisionMap.getTraversableDirections(previous) & along) != 0
+				&& (collisionMap.getTraversableDirections(current) & alongBack) != 0;
+	}
+
+	/**
+	 * Connects every two nodes of a cluster that can walk to each other
+	 * without leaving it.
+	 */
+	private void addClusterEdges(PrimitiveIntList nodes, PrimitiveIntList edges)
+	{
+		final SearchContext cluster = new SearchContext(collisionMap.getTileCount());
+		final PrimitiveIntList sources = new PrimitiveIntList(1);
+		for (int clusterId = 0; clusterId + 1 < clusterOffsets.length; clusterId++)
+		{
+			for (int n = clusterOffsets[clusterId]; n < clusterOffsets[clusterId + 1]; n++)
+			{
+				final int from = clusterNodes[n];
+				sources.clear();
+				sources.add(nodeTiles[from]);
+				searchCluster(cluster, sources, clusterId, false);
+
+				for (int m = clusterOffsets[clusterId]; m < clusterOffsets[clusterId + 1]; m++)
+				{
+					final int to = clusterNodes[m];
+					if (to != from && cluster.hasFlags(nodeTiles[to], VISITED))
+					{
+						addEdge(nodes, edges, nodeTiles[from], nodeTiles[to], cluster.getGCost()[nodeTiles[to]]);
+					}
+				}
+			}
+		}
+	}
+
+	private void addEdge(PrimitiveIntList nodes, PrimitiveIntList edges, int fromTile, int toTile, int cost)
+	{
+		edges.add(getOrAddNode(nodes, fromTile));
+		edges.add(getOrAddNode(nodes, toTile));
+		edges.add(cost);
+	}
+
+	private int getOrAddNode(PrimitiveIntList nodes, int tile)
+	{
+		if (tileNodes[tile] == NO_NODE)
+		{
+			tileNodes[tile] = nodes.size();
+			nodes.add(tile);
+		}
+		return tileNodes[tile];
+	}
+
+	private int getCluster(int tile)
+	{
+		final int localX = tile % gridWidth;
+		final int rest = tile / gridWidth;
+		final int localY = rest % gridHeight;
+		final int z = rest / gridHeight;
+		return (z * clustersY + localY / CLUSTER_SIZE) * clustersX + localX / CLUSTER_SIZE;
+	}
+
+	private int tileAt(int localX, int localY, int z)
+	{
+		return (z * gridHeight + localY) * gridWidth + localX;
+	}
+
+	private boolean isFirstInCluster(PrimitiveIntList tiles, int index, int clusterId)
+	{
+		for (int i = 0; i < index; i++)
+		{
+			if (getCluster(tiles.get(i)) == clusterId)
+			{
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private boolean isWalkable(int tile)
+	{
+		return transports.hasOutgoing(tile) || collisionMap.getTraversableDirections(tile) != 0;
+	}
+}
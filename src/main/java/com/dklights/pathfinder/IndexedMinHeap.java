@@ -0,0 +1,261 @@
+package com.dklights.pathfinder;
+
+import java.util.Arrays;
+
+/**
+ * Binary min-heap over integer keys in {@code [0, capacity)} with
+ * {@code long} priorities.
+ * <p>
+ * Each key's position in the heap is tracked in a side array, which gives
+ * O(1) {@link #contains(int)} and O(log n) {@link #decreaseKey(int, long)}.
+ * Keys are dense tile indices from {@link CollisionMap#getTileIndex(int)}, so
+ * the heap can serve as the A* open set without hashing or boxing.
+ * <p>
+ * Non-negative {@code float} priorities keep their ordering when converted
+ * with {@link Float#floatToIntBits(float)}, which is how the float based search
+ * packs its costs; see {@link #priority(float, float)}.
+ */
+class IndexedMinHeap
+{
+	private static final int ABSENT = -1;
+
+	private final int[] heap;
+	private final long[] priorities;
+	private final int[] positions;
+	private int size;
+
+	/**
+	 * @param capacity number of distinct keys, keys must be in
+	 *                 {@code [0, capacity)}.
+	 */
+	IndexedMinHeap(int capacity)
+	{
+		heap = new int[capacity];
+		priorities = new long[capacity];
+		positions = new int[capacity];
+		Arrays.fill(positions, ABSENT);
+	}
+
+	/**
+	 * Combines a primary and a tie-breaking non-negative {@code float} into a
+	 * single priority that orders by {@code primary} first.
+	 */
+	static long priority(float primary, float secondary)
+	{
+		return ((long) Float.floatToIntBits(primary) << 32) | (Float.floatToIntBits(secondary) & 0xFFFFFFFFL);
+	}
+
+	/**
+	 * Combines a primary and a tie-breaking non-negative {@code int} into a single
+	 * priority that orders by {@code primary} first.
+	 */
+	static long priority(int primary, int secondary)
+	{
+		return ((long) primary << 32) | (secondary & 0xFFFFFFFFL);
+	}
+
+	int size()
+	{
+		return size;
+	}
+
+	boolean isEmpty()
+	{
+		return size == 0;
+	}
+
+	boolean contains(int key)
+	{
+		return positions[key] != ABSENT;
+	}
+
+	/**
+	 * @return the current priority of {@code key}; undefined if the key is not
+	 *         in the heap.
+	 */
+	long getPriority(int key)
+	{
+		return priorities[key];
+	}
+
+	/**
+	 * Inserts {@code key}, or lowers its priority if it is already present with a
+	 * higher one.
+	 *
+	 * @return {@code true} if the heap changed.
+	 */
+	boolean addOrDecrease(int key, long priority)
+	{
+		if (contains(key))
+		{
+			return decreaseKey(key, priority);
+		}
+
+		priorities[key] = priority;
+		heap[size] = key;
+		positions[key] = size;
+		siftUp(size++);
+		return true;
+	}
+
+	/**
+	 * Lowers the priority of a key that is already in the heap.
+	 *
+	 * @return {@code true} if {@code priority} was lower than the current one.
+	 */
+	boolean decreaseKey(int key, long priority)
+	{
+		if (priority >= priorities[key])
+		{
+			return false;
+		}
+
+		priorities[key] = priority;
+		siftUp(positions[key]);
+		return true;
+	}
+
+	/**
+	 * Inserts {@code key}, or moves it to {@code priority} whether that is
+	 * higher or lower than its current one.
+	 */
+	void update(int key, long priority)
+	{
+		if (!contains(key))
+		{
+			addOrDecrease(key, priority);
+			return;
+		}
+
+		final long previous = priorities[key];
+		priorities[key] = priority;
+		if (priority < previous)
+		{
+			siftUp(positions[key]);
+		}
+		else
+		{
+			siftDown(positions[key]);
+		}
+	}
+
+	/**
+	 * @return {@code true} if {@code key} was in the heap.
+	 */
+	boolean remove(int key)
+	{
+		if (!contains(key))
+		{
+			return false;
+		}
+
+		final int index = positions[key];
+		positions[key] = ABSENT;
+
+		final int last = heap[--size];
+		if (index < size)
+		{
+			heap[index] = last;
+			positions[last] = index;
+			siftDown(index);
+			siftUp(positions[last]);
+		}
+		return true;
+	}
+
+	/**
+	 * @return the key with the lowest priority without removing it.
+	 * @throws IllegalStateException if the heap is empty.
+	 */
+	int peek()
+	{
+		if (size == 0)
+		{
+			throw new IllegalStateException("Heap is empty");
+		}
+		return heap[0];
+	}
+
+	/**
+	 * Removes and returns the key with the lowest priority.
+	 *
+	 * @throws IllegalStateException if the heap is empty.
+	 */
+	int poll()
+	{
+		final int top = peek();
+		positions[top] = ABSENT;
+
+		final int last = heap[--size];
+		if (size > 0)
+		{
+			heap[0] = last;
+			positions[last] = 0;
+			siftDown(0);
+		}
+		return top;
+	}
+
+	/**
+	 * Removes every key. Runs in time proportional to the number of keys still in
+	 * the heap, not its capacity.
+	 */
+	void clear()
+	{
+		for (int i = 0; i < size; i++)
+		{
+			positions[heap[i]] = ABSENT;
+		}
+		size = 0;
+	}
+
+	private void siftUp(int index)
+	{
+		final int key = heap[index];
+		final long priority = priorities[key];
+
+		while (index > 0)
+		{
+			final int parentIndex = (index - 1) >>> 1;
+			final int parentKey = heap[parentIndex];
+			if (priorities[parentKey] <= priority)
+			{
+				break;
+			}
+			heap[index] = parentKey;
+			positions[parentKey] = index;
+			index = parentIndex;
+		}
+
+		heap[index] = key;
+		positions[key] = index;
+	}
+
+	private void siftDown(int index)
+	{
+		final int key = heap[index];
+		final long priority = priorities[key];
+		final int half = size >>> 1;
+
+		while (index < half)
+		{
+			int child = (index << 1) + 1;
+			if (child + 1 < size && priorities[heap[child + 1]] < priorities[heap[child]])
+			{
+				child++;
+			}
+
+			final int childKey = heap[child];
+			if (priority <= priorities[childKey])
+			{
+				break;
+			}
+			heap[index] = childKey;
+			positions[childKey] = index;
+			index = child;
+		}
+
+		heap[index] = key;
+		positions[key] = index;
+	}
+}
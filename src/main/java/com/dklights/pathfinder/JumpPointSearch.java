@@ -0,0 +1,474 @@
+package com.dklights.pathfinder;
+
+import com.dklights.enums.Direction;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Jump point search between a start tile and the tiles cardinally adjacent to
+ * a target.
+ * <p>
+ * On open floor many equally short paths exist, and a plain A* expands all of
+ * them. Jump point search only queues tiles where a shortest path may have to
+ * turn. From a tile entered straight, the search keeps going straight; from a
+ * tile entered diagonally, it keeps going diagonally or branches into the two
+ * straight components. Every move costs one, so this still reaches every tile
+ * on a shortest path as long as each other neighbour can be reached from the
+ * previous tile in at most two moves without passing through this one. Where
+ * walls or the corner-cutting rules of {@link CollisionMap} break that, the
+ * tile has a forced neighbour. Forced neighbours only depend on the
+ * collision map, so they are precomputed per tile and arrival direction, as
+ * in JPS+.
+ * <p>
+ * A tile is a jump point, and expanded in every direction, if it has a forced
+ * neighbour, is a goal, or is the origin of a transport. Tiles reached by a
+ * transport and the start are expanded in every direction too, so routing
+ * across planes works like the packed A*.
+ * <p>
+ * Per-query state lives in a per-thread {@link SearchContext}, so instances
+ * can be shared between threads like {@link PackedPathfinder}.
+ */
+@Slf4j
+class JumpPointSearch
+{
+	private static final Direction[] DIRECTIONS = Direction.values();
+	private static final int DIRECTION_COUNT = DIRECTIONS.length;
+	private static final Direction[] CARDINAL_DIRECTIONS =
+	{ Direction.NORTH, Direction.EAST, Direction.SOUTH, Direction.WEST };
+
+	private static final byte CLOSED = 1;
+	private static final byte GOAL = 1 << 1;
+	// The parent link of the tile is a transport rather than a jump
+	private static final byte TRANSPORTED = 1 << 2;
+
+	// Direction ordinal by (dy + 1) * 3 + dx + 1, -1 for no movement
+	private static final int[] DIRECTION_BY_OFFSET = new int[9];
+
+	static
+	{
+		DIRECTION_BY_OFFSET[4] = -1;
+		for (Direction direction : DIRECTIONS)
+		{
+			DIRECTION_BY_OFFSET[(direction.getY() + 1) * 3 + direction.getX() + 1] = direction.ordinal();
+		}
+	}
+
+	private final CollisionMap collisionMap;
+	private final TransportIndex transports;
+	private final ConnectedComponents components;
+	private final ThreadLocal<SearchContext> contexts;
+	private final int maxIterations;
+	private final int maxPathLength;
+
+	// Bit d is set if the tile has a forced neighbour when entered in direction d
+	private final byte[] forcedDirections;
+
+	JumpPointSearch(CollisionMap collisionMap, TransportIndex transports, ConnectedComponents components,
+			ThreadLocal<SearchContext> contexts, int maxIterations, int maxPathLength)
+	{
+		this.collisionMap = collisionMap;
+		this.transports = transports;
+		this.components = components;
+		this.contexts = contexts;
+		this.maxIterations = maxIterations;
+		this.maxPathLength = maxPathLength;
+		this.forcedDirections = computeForcedDirections(collisionMap);
+	}
+
+	private static byte[] computeForcedDirections(CollisionMap collisionMap)
+	{
+		final int tileCount = collisionMap.getTileCount();
+		final byte[] forced = new byte[tileCount];
+		for (int tile = 0; tile < tileCount; tile++)
+		{
+			final int directions = collisionMap.getTraversableDirections(tile);
+			if (directions == 0)
+			{
+				continue;
+			}
+
+			for (int d = 0; d < DIRECTION_COUNT; d++)
+			{
+				final int previous = tile - (collisionMap.getNeighborTileIndex(tile, d) - tile);
+				if (previous < 0 || previous >= tileCount
+						|| (collisionMap.getTraversableDirections(previous) & (1 << d)) == 0)
+				{
+					continue;
+				}
+
+				final int natural = getNaturalDirections(d);
+				for (int next = 0; next < DIRECTION_COUNT; next++)
+				{
+					if ((directions & (1 << next)) == 0 || (natural & (1 << next)) != 0)
+					{
+						continue;
+					}
+
+					final int neighbor = collisionMap.getNeighborTileIndex(tile, next);
+					if (neighbor != previous && !isReachableAround(collisionMap, previous, neighbor, tile))
+					{
+						forced[tile] |= 1 << d;
+						break;
+					}
+				}
+			}
+		}
+		return forced;
+	}
+
+	/**
+	 * @return bit mask of the directions the search keeps following after
+	 *         entering a tile in {@code direction}.
+	 */
+	private static int getNaturalDirections(int direction)
+	{
+		final Direction arrival = DIRECTIONS[direction];
+		if (!arrival.isDiagonal())
+		{
+			return 1 << direction;
+		}
+		return 1 << direction | 1 << direction(arrival.getX(), 0) | 1 << direction(0, arrival.getY());
+	}
+
+	/**
+	 * @return {@code true} if {@code to} can be reached from {@code from} in at
+	 *         most two moves without stepping on {@code avoid}.
+	 */
+	private static boolean isReachableAround(CollisionMap collisionMap, int from, int to, int avoid)
+	{
+		final int directions = collisionMap.getTraversableDirections(from);
+		for (int d = 0; d < DIRECTION_COUNT; d++)
+		{
+			if ((directions & (1 << d)) == 0)
+			{
+				continue;
+			}
+
+			final int step = collisionMap.getNeighborTileIndex(from, d);
+			if (step == to)
+			{
+				return true;
+			}
+			if (step == avoid)
+			{
+				continue;
+			}
+
+			final int stepDirections = collisionMap.getTraversableDirections(step);
+			for (int e = 0; e < DIRECTION_COUNT; e++)
+			{
+				if ((stepDirections & (1 << e)) != 0 && collisionMap.getNeighborTileIndex(step, e) == to)
+				{
+					return true;
+				}
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Shortest path from {@code start} to any walkable tile cardinally adjacent
+	 * to {@code end}.
+	 *
+	 * @param start packed start point.
+	 * @param end   packed target point.
+	 * @param path  receives the packed path, start first. Cleared on entry.
+	 * @return {@link SearchStatus#FOUND}, or {@link SearchStatus#NOT_FOUND} if
+	 *         there is no path or the iteration limit was hit.
+	 * @throws SearchCancelledException if the thread is interrupted mid-search.
+	 */
+	SearchStatus findPath(int start, int end, PrimitiveIntList path)
+	{
+		path.clear();
+
+		final int startTile = collisionMap.getTileIndex(start);
+		if (startTile < 0)
+		{
+			return SearchStatus.NOT_FOUND;
+		}
+
+		if (start == end)
+		{
+			path.add(start);
+			return SearchStatus.FOUND;
+		}
+
+		final int endX = WorldPointUtil.unpackWorldX(end);
+		final int endY = WorldPointUtil.unpackWorldY(end);
+		final int endZ = WorldPointUtil.unpackWorldPlane(end);
+		final int entryCost = transports.getEntryCost(endZ, endX, endY, 1);
+
+		final SearchContext context = contexts.get();
+		context.reset();
+
+		int goalCount = 0;
+		for (Direction direction : CARDINAL_DIRECTIONS)
+		{
+			final int tile = collisionMap.getTileIndex(endX + direction.getX(), endY + direction.getY(), endZ);
+			if (tile >= 0 && isWalkable(tile) && components.isConnected(startTile, tile))
+			{
+				context.addFlags(tile, GOAL);
+				goalCount++;
+			}
+		}
+
+		if (goalCount == 0)
+		{
+			log.debug("No reachable tiles next to {}", WorldPointUtil.unpackWorldPoint(end));
+			return SearchStatus.NOT_FOUND;
+		}
+
+		final int[] gCost = context.getGCost();
+		final IndexedMinHeap openSet = context.getOpenSet();
+		gCost[startTile] = 0;
+		context.getParent()[startTile] = -1;
+		final int startHeuristic = heuristic(startTile, endX, endY, endZ, entryCost);
+		openSet.addOrDecrease(startTile, IndexedMinHeap.priority(startHeuristic, startHeuristic));
+
+		int iterations = 0;
+		while (!openSet.isEmpty())
+		{
+			if (++iterations > maxIterations)
+			{
+				log.debug("Jump point findPath hit MAX_ITERATIONS ({})", maxIterations);
+				return SearchStatus.NOT_FOUND;
+			}
+			SearchCancelledException.checkInterrupted(iterations);
+
+			final int current = openSet.poll();
+			if (context.hasFlags(current, GOAL))
+			{
+				reconstructPath(context, current, path);
+				return SearchStatus.FOUND;
+			}
+
+			context.addFlags(current, CLOSED);
+			context.countExpansion();
+
+			final int arrival = getArrivalDirection(context, current);
+			if (arrival < 0 || isJumpPoint(context, current, arrival))
+			{
+				for (int d = 0; d < DIRECTION_COUNT; d++)
+				{
+					jumpAndRelax(context, current, d, endX, endY, endZ, entryCost);
+				}
+			}
+			else
+			{
+				jumpAndRelax(context, current, arrival, endX, endY, endZ, entryCost);
+				if (DIRECTIONS[arrival].isDiagonal())
+				{
+					jumpAndRelax(context, current, direction(DIRECTIONS[arrival].getX(), 0), endX, endY, endZ,
+							entryCost);
+					jumpAndRelax(context, current, direction(0, DIRECTIONS[arrival].getY()), endX, endY, endZ,
+							entryCost);
+				}
+			}
+
+			for (int t = transports.getOutgoingStart(current); t < transports.getOutgoingEnd(current); t++)
+			{
+				final int destination = transports.getDestination(t);
+				if (relax(context, current, destination, gCost[current] + transports.getCost(t),
+						heuristic(destination, endX, endY, endZ, entryCost)))
+				{
+					context.addFlags(destination, TRANSPORTED);
+				}
+			}
+		}
+
+		return SearchStatus.NOT_FOUND;
+	}
+
+	private void jumpAndRelax(SearchContext context, int current, int direction, int endX, int endY, int endZ,
+			int entryCost)
+	{
+		final int jumpPoint = DIRECTIONS[direction].isDiagonal()
+				? jumpDiagonal(context, current, direction)
+				: jumpStraight(context, current, direction);
+		if (jumpPoint >= 0 && relax(context, current, jumpPoint, context.getGCost()[current]
+				+ getSteps(current, jumpPoint), heuristic(jumpPoint, endX, endY, endZ, entryCost)))
+		{
+			context.removeFlags(jumpPoint, TRANSPORTED);
+		}
+	}
+
+	/**
+	 * @return the first jump point reached by walking straight from
+	 *         {@code tile}, or -1 if a wall comes first.
+	 */
+	private int jumpStraight(SearchContext context, int tile, int direction)
+	{
+		while ((collisionMap.getTraversableDirections(tile) & (1 << direction)) != 0)
+		{
+			tile = collisionMap.getNeighborTileIndex(tile, direction);
+			if (isJumpPoint(context, tile, direction))
+			{
+				return tile;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * @return the first tile on the diagonal from {@code tile} that is a jump
+	 *         point or has one straight ahead along either component of the
+	 *         diagonal, or -1 if a wall comes first.
+	 */
+	private int jumpDiagonal(SearchContext context, int tile, int direction)
+	{
+		final int horizontal = direction(DIRECTIONS[direction].getX(), 0);
+		final int vertical = direction(0, DIRECTIONS[direction].getY());
+		while ((collisionMap.getTraversableDirections(tile) & (1 << direction)) != 0)
+		{
+			tile = collisionMap.getNeighborTileIndex(tile, direction);
+			if (isJumpPoint(context, tile, direction) || jumpStraight(context, tile, horizontal) >= 0
+					|| jumpStraight(context, tile, vertical) >= 0)
+			{
+				return tile;
+			}
+		}
+		return -1;
+	}
+
+	private boolean isJumpPoint(SearchContext context, int tile, int direction)
+	{
+		return (forcedDirections[tile] & (1 << direction)) != 0 || transports.hasOutgoing(tile)
+				|| context.hasFlags(tile, GOAL);
+	}
+
+	/**
+	 * @return the direction {@code tile} was entered in from its parent, or -1
+	 *         for the start and tiles reached by a transport.
+	 */
+	private int getArrivalDirection(SearchContext context, int tile)
+	{
+		final int parent = context.getParent()[tile];
+		if (parent == -1 || context.hasFlags(tile, TRANSPORTED))
+		{
+			return -1;
+		}
+
+		final int from = collisionMap.getPackedPoint(parent);
+		final int to = collisionMap.getPackedPoint(tile);
+		return direction(Integer.signum(WorldPointUtil.unpackWorldX(to) - WorldPointUtil.unpackWorldX(from)),
+				Integer.signum(WorldPointUtil.unpackWorldY(to) - WorldPointUtil.unpackWorldY(from)));
+	}
+
+	private static int direction(int dx, int dy)
+	{
+		return DIRECTION_BY_OFFSET[(dy + 1) * 3 + dx + 1];
+	}
+
+	/**
+	 * @return the number of moves between two tiles on one straight or diagonal
+	 *         line.
+	 */
+	private int getSteps(int from, int to)
+	{
+		final int a = collisionMap.getPackedPoint(from);
+		final int b = collisionMap.getPackedPoint(to);
+		return Math.max(Math.abs(WorldPointUtil.unpackWorldX(a) - WorldPointUtil.unpackWorldX(b)),
+				Math.abs(WorldPointUtil.unpackWorldY(a) - WorldPointUtil.unpackWorldY(b)));
+	}
+
+	/**
+	 * @return {@code true} if {@code neighbor} got a lower cost.
+	 */
+	private boolean relax(SearchContext context, int current, int neighbor, int cost, int h)
+	{
+		if (cost > maxPathLength)
+		{
+			return false;
+		}
+
+		// As in the packed A*, the cross-plane heuristic is not consistent
+		final int[] gCost = context.getGCost();
+		if (context.hasFlags(neighbor, CLOSED))
+		{
+			if (cost >= gCost[neighbor])
+			{
+				return false;
+			}
+			context.removeFlags(neighbor, CLOSED);
+		}
+
+		final IndexedMinHeap openSet = context.getOpenSet();
+		if (openSet.contains(neighbor) && cost >= gCost[neighbor])
+		{
+			return false;
+		}
+
+		gCost[neighbor] = cost;
+		context.getParent()[neighbor] = current;
+		openSet.addOrDecrease(neighbor, IndexedMinHeap.priority(cost + h, h));
+		return true;
+	}
+
+	private boolean isWalkable(int tile)
+	{
+		return transports.hasOutgoing(tile) || collisionMap.getTraversableDirections(tile) != 0;
+	}
+
+	/**
+	 * Admissible estimate of the remaining cost, as in
+	 * {@link BidirectionalSearch}. Jumps skip the tiles where a cheaper route
+	 * would show up late, so on the target plane the Chebyshev distance is
+	 * capped by the cheapest detour over another plane.
+	 */
+	private int heuristic(int tile, int endX, int endY, int endZ, int entryCost)
+	{
+		final int point = collisionMap.getPackedPoint(tile);
+		final int z = WorldPointUtil.unpackWorldPlane(point);
+		if (z != endZ)
+		{
+			int estimate = Math.max(transports.getPlaneLowerBound(z, endZ), 0);
+			final int exitDistance = transports.getExitDistance(tile);
+			if (exitDistance != TransportIndex.NO_ROUTE && entryCost != TransportIndex.NO_ROUTE)
+			{
+				estimate = Math.max(estimate, exitDistance + entryCost);
+			}
+			return estimate;
+		}
+
+		final int dx = Math.abs(WorldPointUtil.unpackWorldX(point) - endX);
+		final int dy = Math.abs(WorldPointUtil.unpackWorldY(point) - endY);
+		final int estimate = Math.max(Math.max(dx, dy) - 1, 0);
+
+		final int exitDistance = transports.getExitDistance(tile);
+		if (exitDistance != TransportIndex.NO_ROUTE && entryCost != TransportIndex.NO_ROUTE)
+		{
+			return Math.min(estimate, exitDistance + 1 + entryCost);
+		}
+		return estimate;
+	}
+
+	/**
+	 * Follows the parents back from {@code goal}, filling in the tiles each
+	 * jump skipped.
+	 */
+	private void reconstructPath(SearchContext context, int goal, PrimitiveIntList path)
+	{
+		final int[] parent = context.getParent();
+		for (int tile = goal; tile != -1; tile = parent[tile])
+		{
+			path.add(collisionMap.getPackedPoint(tile));
+			if (parent[tile] == -1 || context.hasFlags(tile, TRANSPORTED))
+			{
+				continue;
+			}
+
+			// Walk back along the jump towards the parent
+			final Direction arrival = DIRECTIONS[getArrivalDirection(context, tile)];
+			final int back = direction(-arrival.getX(), -arrival.getY());
+			for (int step = collisionMap.getNeighborTileIndex(tile, back); step != parent[tile];
+					step = collisionMap.getNeighborTileIndex(step, back))
+			{
+				path.add(collisionMap.getPackedPoint(step));
+			}
+		}
+
+		for (int i = 0, j = path.size() - 1; i < j; i++, j--)
+		{
+			path.set(j, path.set(i, path.get(j)));
+		}
+	}
+}
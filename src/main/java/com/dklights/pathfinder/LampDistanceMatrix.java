@@ -0,0 +1,229 @@
+package com.dklights.pathfinder;
+
+import com.dklights.DKLightsConstants;
+import com.dklights.enums.Direction;
+import com.dklights.enums.Lamp;
+import com.dklights.enums.TargetType;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import net.runelite.api.coords.WorldPoint;
+
+/**
+ * Walking distances between every pair of lamps, the bank and the wire machine.
+ * <p>
+ * Entry {@code (from, to)} is the walking cost, one per step and
+ * {@link TransportIndex#getCost(int)} per transport, from the nearest walkable
+ * tile cardinally adjacent to {@code from} to the nearest such tile next to
+ * {@code to}. Walls that spawn at runtime are not
+ * taken into account. Transports can be one way, so the matrix is not
+ * necessarily symmetric.
+ * <p>
+ * Lamps are indexed by ordinal, followed by {@link #BANK} and
+ * {@link #WIRE_MACHINE}. The matrix is generated at build time (see the
+ * {@code generateLampDistances} Gradle task) and stored as
+ * {@value #RESOURCE}: a magic number, the node count, a hash of the node
+ * locations, a hash of the collision map and transports, and then
+ * {@code count * count} unsigned shorts in row-major order,
+ * {@code 0xFFFF} meaning unreachable.
+ */
+public class LampDistanceMatrix
+{
+	public static final String RESOURCE = "/lamp_distances.bin";
+
+	public static final int UNREACHABLE = -1;
+
+	public static final int BANK = Lamp.values().length;
+	public static final int WIRE_MACHINE = BANK + 1;
+	public static final int NODE_COUNT = WIRE_MACHINE + 1;
+
+	private static final int MAGIC = 0x444B4C44;
+	private static final int UNREACHABLE_ENTRY = 0xFFFF;
+	private static final Direction[] CARDINAL_DIRECTIONS =
+	{ Direction.NORTH, Direction.EAST, Direction.SOUTH, Direction.WEST };
+
+	private final char[] distances;
+	private final int mapHash;
+
+	private LampDistanceMatrix(char[] distances, int mapHash)
+	{
+		this.distances = distances;
+		this.mapHash = mapHash;
+	}
+
+	/**
+	 * Builds one reverse {@link DistanceField} per node over the collision map.
+	 */
+	static LampDistanceMatrix compute(CollisionMap collisionMap, TransportIndex transports)
+	{
+		final DistanceField field = new DistanceField(collisionMap, transports);
+		final PrimitiveIntList[] approachTiles = new PrimitiveIntList[NODE_COUNT];
+		for (int node = 0; node < NODE_COUNT; node++)
+		{
+			approachTiles[node] = getApproachTiles(collisionMap, transports, getLocation(node));
+		}
+
+		final char[] distances = new char[NODE_COUNT * NODE_COUNT];
+		for (int to = 0; to < NODE_COUNT; to++)
+		{
+			field.build(approachTiles[to]);
+			for (int from = 0; from < NODE_COUNT; from++)
+			{
+				int best = Integer.MAX_VALUE;
+				for (int i = 0; i < approachTiles[from].size(); i++)
+				{
+					final int distance = field.getDistance(approachTiles[from].get(i));
+					if (distance != DistanceField.UNREACHABLE)
+					{
+						best = Math.min(best, distance);
+					}
+				}
+				distances[from * NODE_COUNT + to] = (char) Math.min(best, UNREACHABLE_ENTRY);
+			}
+		}
+		return new LampDistanceMatrix(distances, mapHash(collisionMap, transports));
+	}
+
+	/**
+	 * @throws IOException if the resource is missing, truncated or was generated
+	 *                     for different lamps or a different collision map.
+	 */
+	static LampDistanceMatrix loadFromResources(CollisionMap collisionMap, TransportIndex transports)
+			throws IOException
+	{
+		try (InputStream in = LampDistanceMatrix.class.getResourceAsStream(RESOURCE))
+		{
+			if (in == null)
+			{
+				throw new IOException("Lamp distance matrix not found: " + RESOURCE);
+			}
+
+			final DataInputStream data = new DataInputStream(in);
+			final int mapHash = mapHash(collisionMap, transports);
+			if (data.readInt() != MAGIC || data.readUnsignedShort() != NODE_COUNT || data.readInt() != locationHash()
+					|| data.readInt() != mapHash)
+			{
+				throw new IOException("Lamp distance matrix is out of date, run generateLampDistances");
+			}
+
+			final char[] distances = new char[NODE_COUNT * NODE_COUNT];
+			for (int i = 0; i < distances.length; i++)
+			{
+				distances[i] = data.readChar();
+			}
+			return new LampDistanceMatrix(distances, mapHash);
+		}
+	}
+
+	void write(OutputStream out) throws IOException
+	{
+		final DataOutputStream data = new DataOutputStream(out);
+		data.writeInt(MAGIC);
+		data.writeShort(NODE_COUNT);
+		data.writeInt(locationHash());
+		data.writeInt(mapHash);
+		for (char distance : distances)
+		{
+			data.writeChar(distance);
+		}
+		data.flush();
+	}
+
+	/**
+	 * @param from node index, see {@link #indexOf(Lamp)}.
+	 * @param to   node index.
+	 * @return walking cost between the two nodes, or {@link #UNREACHABLE}.
+	 */
+	public int getDistance(int from, int to)
+	{
+		final int distance = distances[from * NODE_COUNT + to];
+		return distance == UNREACHABLE_ENTRY ? UNREACHABLE : distance;
+	}
+
+	public static int indexOf(Lamp lamp)
+	{
+		return lamp.ordinal();
+	}
+
+	/**
+	 * @return node index of {@link TargetType#BANK} or
+	 *         {@link TargetType#WIRING_MACHINE}.
+	 * @throws IllegalArgumentException for any other target type.
+	 */
+	public static int indexOf(TargetType targetType)
+	{
+		switch (targetType)
+		{
+		case BANK:
+			return BANK;
+		case WIRING_MACHINE:
+			return WIRE_MACHINE;
+		default:
+			throw new IllegalArgumentException("No fixed location for target type " + targetType);
+		}
+	}
+
+	static WorldPoint getLocation(int node)
+	{
+		if (node == BANK)
+		{
+			return DKLightsConstants.BANK_LOCATION;
+		}
+		if (node == WIRE_MACHINE)
+		{
+			return DKLightsConstants.WIRE_MACHINE_LOCATION;
+		}
+		return Lamp.values()[node].getWorldPoint();
+	}
+
+	/**
+	 * @return packed walkable tiles cardinally adjacent to {@code location}.
+	 */
+	static PrimitiveIntList getApproachTiles(CollisionMap collisionMap, TransportIndex transports,
+			WorldPoint location)
+	{
+		final PrimitiveIntList tiles = new PrimitiveIntList(CARDINAL_DIRECTIONS.length);
+		final int packed = WorldPointUtil.packWorldPoint(location);
+		for (Direction direction : CARDINAL_DIRECTIONS)
+		{
+			final int adjacent = WorldPointUtil.dxdy(packed, direction.getX(), direction.getY());
+			final int tile = collisionMap.getTileIndex(adjacent);
+			if (tile >= 0 && (transports.hasOutgoing(tile) || collisionMap.getTraversableDirections(tile) != 0))
+			{
+				tiles.add(adjacent);
+			}
+		}
+		return tiles;
+	}
+
+	static int locationHash()
+	{
+		int hash = 1;
+		for (int node = 0; node < NODE_COUNT; node++)
+		{
+			hash = 31 * hash + WorldPointUtil.packWorldPoint(getLocation(node));
+		}
+		return hash;
+	}
+
+	/**
+	 * Hash of the movement and transport edges, with their costs, that the
+	 * generated resources were derived from.
+	 */
+	static int mapHash(CollisionMap collisionMap, TransportIndex transports)
+	{
+		int hash = collisionMap.getTileCount();
+		for (int tile = 0; tile < collisionMap.getTileCount(); tile++)
+		{
+			hash = 31 * hash + collisionMap.getTraversableDirections(tile);
+			for (int t = transports.getOutgoingStart(tile); t < transports.getOutgoingEnd(tile); t++)
+			{
+				hash = 31 * hash + transports.getDestination(t);
+				hash = 31 * hash + transports.getCost(t);
+			}
+		}
+		return hash;
+	}
+}
@@ -0,0 +1,242 @@
+package com.dklights.pathfinder;
+
+import com.dklights.enums.Direction;
+import java.util.Arrays;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Landmark (ALT) lower bounds on the cost between two tiles.
+ * <p>
+ * A few landmark tiles per plane are chosen by farthest-point selection, and
+ * the exact cost from every landmark to every tile and back is precomputed over
+ * movement and {@link TransportIndex} edges with their real costs. By the
+ * triangle inequality, {@code cost(v, g) >= cost(L, g) - cost(L, v)} and
+ * {@code cost(v, g) >= cost(v, L) - cost(g, L)} for every landmark {@code L},
+ * which stays a true bound across stairs where the Chebyshev distance says
+ * little. The tables are two unsigned shorts per tile and landmark.
+ */
+@Slf4j
+class Landmarks
+{
+	static final int LANDMARKS_PER_PLANE = 4;
+
+	static final int NO_BOUND = 0;
+
+	private static final int DIRECTION_COUNT = Direction.values().length;
+	private static final char UNREACHABLE = Character.MAX_VALUE;
+
+	private final int count;
+
+	// fromLandmark[l][tile] is the cost from landmark l to tile, toLandmark[l][tile]
+	// the cost from tile to landmark l
+	private final char[][] fromLandmark;
+	private final char[][] toLandmark;
+
+	Landmarks(CollisionMap collisionMap, TransportIndex transports)
+	{
+		final int tileCount = collisionMap.getTileCount();
+		final int[] costs = new int[tileCount];
+		final IndexedMinHeap openSet = new IndexedMinHeap(tileCount);
+		final char[][] from = new char[LANDMARKS_PER_PLANE * CollisionMap.PLANE_COUNT][];
+		final char[][] to = new char[from.length][];
+
+		// Cost from the nearest chosen landmark of the plane, for picking the next
+		final int[] nearest = new int[tileCount];
+		int selected = 0;
+		for (int z = 0; z < CollisionMap.PLANE_COUNT; z++)
+		{
+			final int planeStart = z * tileCount / CollisionMap.PLANE_COUNT;
+			final int planeEnd = (z + 1) * tileCount / CollisionMap.PLANE_COUNT;
+
+			int seed = -1;
+			for (int tile = planeStart; tile < planeEnd && seed < 0; tile++)
+			{
+				if (collisionMap.getTraversableDirections(tile) != 0)
+				{
+					seed = tile;
+				}
+			}
+			if (seed < 0)
+			{
+				continue;
+			}
+
+			computeCosts(collisionMap, transports, seed, false, costs, openSet);
+			System.arraycopy(costs, 0, nearest, 0, tileCount);
+
+			for (int i = 0; i < LANDMARKS_PER_PLANE; i++)
+			{
+				int landmark = -1;
+				for (int tile = planeStart; tile < planeEnd; tile++)
+				{
+					if (collisionMap.getTraversableDirections(tile) != 0 && nearest[tile] != Integer.MAX_VALUE
+							&& (landmark < 0 || nearest[tile] > nearest[landmark]))
+					{
+						landmark = tile;
+					}
+				}
+				if (landmark < 0 || nearest[landmark] == 0)
+				{
+					break;
+				}
+
+				computeCosts(collisionMap, transports, landmark, false, costs, openSet);
+				from[selected] = toTable(costs);
+				for (int tile = 0; tile < tileCount; tile++)
+				{
+					nearest[tile] = Math.min(nearest[tile], costs[tile]);
+				}
+
+				computeCosts(collisionMap, transports, landmark, true, costs, openSet);
+				to[selected] = toTable(costs);
+				selected++;
+			}
+		}
+
+		count = selected;
+		fromLandmark = Arrays.copyOf(from, count);
+		toLandmark = Arrays.copyOf(to, count);
+		log.debug("Selected {} landmarks", count);
+	}
+
+	/**
+	 * @return number of landmarks.
+	 */
+	int size()
+	{
+		return count;
+	}
+
+	/**
+	 * Per-landmark costs to a set of goal tiles, taken once per query and passed
+	 * to {@link #lowerBound(int, int[])}.
+	 *
+	 * @param goals goal tile indices.
+	 * @return for landmark {@code l}, the lowest cost from it to a goal at
+	 *         {@code 2l} and the highest cost from a goal to it at
+	 *         {@code 2l + 1}; {@link #UNREACHABLE} where a bound does not hold.
+	 */
+	int[] getGoalCosts(PrimitiveIntList goals)
+	{
+		final int[] goalCosts = new int[count * 2];
+		for (int l = 0; l < count; l++)
+		{
+			int lowestFrom = UNREACHABLE;
+			int highestTo = 0;
+			for (int i = 0; i < goals.size(); i++)
+			{
+				final int goal = goals.get(i);
+				lowestFrom = Math.min(lowestFrom, fromLandmark[l][goal]);
+				highestTo = Math.max(highestTo, toLandmark[l][goal]);
+			}
+			goalCosts[l * 2] = lowestFrom;
+			goalCosts[l * 2 + 1] = highestTo;
+		}
+		return goalCosts;
+	}
+
+	/**
+	 * @param goalCosts from {@link #getGoalCosts(PrimitiveIntList)}.
+	 * @return a lower bound on the cost from {@code tile} to the nearest goal, or
+	 *         {@link #NO_BOUND}.
+	 */
+	int lowerBound(int tile, int[] goalCosts)
+	{
+		int bound = NO_BOUND;
+		for (int l = 0; l < count; l++)
+		{
+			final int fromLandmarkToGoal = goalCosts[l * 2];
+			final int fromLandmarkToTile = fromLandmark[l][tile];
+			if (fromLandmarkToGoal != UNREACHABLE && fromLandmarkToTile != UNREACHABLE)
+			{
+				bound = Math.max(bound, fromLandmarkToGoal - fromLandmarkToTile);
+			}
+
+			final int fromGoalToLandmark = goalCosts[l * 2 + 1];
+			final int fromTileToLandmark = toLandmark[l][tile];
+			if (fromGoalToLandmark != UNREACHABLE && fromTileToLandmark != UNREACHABLE)
+			{
+				bound = Math.max(bound, fromTileToLandmark - fromGoalToLandmark);
+			}
+		}
+		return bound;
+	}
+
+	private static char[] toTable(int[] costs)
+	{
+		final char[] table = new char[costs.length];
+		for (int tile = 0; tile < costs.length; tile++)
+		{
+			table[tile] = (char) Math.min(costs[tile], UNREACHABLE);
+		}
+		return table;
+	}
+
+	/**
+	 * Dijkstra from {@code source} over every tile, or to it if {@code reverse}.
+	 * Unreached tiles are left at {@link Integer#MAX_VALUE}.
+	 */
+	private static void computeCosts(CollisionMap collisionMap, TransportIndex transports, int source,
+			boolean reverse, int[] costs, IndexedMinHeap openSet)
+	{
+		Arrays.fill(costs, Integer.MAX_VALUE);
+		openSet.clear();
+		costs[source] = 0;
+		openSet.addOrDecrease(source, IndexedMinHeap.priority(0, 0));
+
+		final int tileCount = collisionMap.getTileCount();
+		while (!openSet.isEmpty())
+		{
+			final int current = openSet.poll();
+			final int nextCost = costs[current] + 1;
+
+			for (int d = 0; d < DIRECTION_COUNT; d++)
+			{
+				final int neighbor;
+				if (reverse)
+				{
+					neighbor = current - (collisionMap.getNeighborTileIndex(current, d) - current);
+					if (neighbor < 0 || neighbor >= tileCount
+							|| (collisionMap.getTraversableDirections(neighbor) & (1 << d)) == 0)
+					{
+						continue;
+					}
+				}
+				else
+				{
+					if ((collisionMap.getTraversableDirections(current) & (1 << d)) == 0)
+					{
+						continue;
+					}
+					neighbor = collisionMap.getNeighborTileIndex(current, d);
+				}
+				relax(costs, openSet, neighbor, nextCost);
+			}
+
+			if (reverse)
+			{
+				for (int i = transports.getIncomingStart(current); i < transports.getIncomingEnd(current); i++)
+				{
+					final int edge = transports.getIncomingEdge(i);
+					relax(costs, openSet, transports.getOrigin(edge), costs[current] + transports.getCost(edge));
+				}
+			}
+			else
+			{
+				for (int t = transports.getOutgoingStart(current); t < transports.getOutgoingEnd(current); t++)
+				{
+					relax(costs, openSet, transports.getDestination(t), costs[current] + transports.getCost(t));
+				}
+			}
+		}
+	}
+
+	private static void relax(int[] costs, IndexedMinHeap openSet, int tile, int cost)
+	{
+		if (cost < costs[tile])
+		{
+			costs[tile] = cost;
+			openSet.addOrDecrease(tile, IndexedMinHeap.priority(cost, 0));
+		}
+	}
+}
@@ -0,0 +1,474 @@
+package com.dklights.pathfinder;
+
+import com.dklights.enums.Direction;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Search engine that works purely on packed world points (see
+ * {@link WorldPointUtil}) and dense tile indices from {@link CollisionMap}.
+ * <p>
+ * All per-query state (g-cost, parent, closed flags and the
+ * {@link IndexedMinHeap} open set) lives in a per-thread {@link SearchContext}
+ * that is reset in constant time, so a search allocates nothing apart from
+ * growing the caller supplied {@link PrimitiveIntList}, and instances can be
+ * shared between threads.
+ */
+@Slf4j
+class PackedPathfinder
+{
+	private static final int DIRECTION_COUNT = Direction.values().length;
+	private static final Direction[] CARDINAL_DIRECTIONS =
+	{ Direction.NORTH, Direction.EAST, Direction.SOUTH, Direction.WEST };
+
+	static final long NO_BUDGET = -1;
+
+	// The clock is read once per this many expansions
+	private static final int DEADLINE_CHECK_MASK = 64 - 1;
+
+	private static final byte CLOSED = 1;
+	private static final byte GOAL = 1 << 1;
+
+	private final CollisionMap collisionMap;
+	private final int maxIterations;
+	private final int maxPathLength;
+
+	private final TransportIndex transports;
+	private final ConnectedComponents components;
+
+	private final ThreadLocal<SearchContext> contexts;
+
+	// Optional ALT lower bounds that tighten the A* heuristic, null if unused
+	private final Landmarks landmarks;
+
+	PackedPathfinder(CollisionMap collisionMap, TransportIndex transports, ConnectedComponents components,
+			ThreadLocal<SearchContext> contexts, int maxIterations, int maxPathLength)
+	{
+		this(collisionMap, transports, components, contexts, maxIterations, maxPathLength, null);
+	}
+
+	/**
+	 * @param landmarks lower bounds combined with the geometric heuristic of the
+	 *                  A*, or {@code null}. They do not affect the nearest-goal
+	 *                  search.
+	 */
+	PackedPathfinder(CollisionMap collisionMap, TransportIndex transports, ConnectedComponents components,
+			ThreadLocal<SearchContext> contexts, int maxIterations, int maxPathLength, Landmarks landmarks)
+	{
+		this.collisionMap = collisionMap;
+		this.transports = transports;
+		this.components = components;
+		this.contexts = contexts;
+		this.maxIterations = maxIterations;
+		this.maxPathLength = maxPathLength;
+		this.landmarks = landmarks;
+	}
+
+	/**
+	 * A* from {@code start} to any walkable tile cardinally adjacent to
+	 * {@code end}.
+	 *
+	 * @param start packed start point.
+	 * @param end   packed target point.
+	 * @param path  receives the packed path, start first. Cleared on entry.
+	 * @return {@code true} if a path was found.
+	 */
+	boolean findPath(int start, int end, PrimitiveIntList path)
+	{
+		if (findPath(start, end, path, NO_BUDGET) != SearchStatus.FOUND)
+		{
+			path.clear();
+			return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Anytime variant of {@link #findPath(int, int, PrimitiveIntList)}. When the
+	 * time budget or the iteration limit runs out, {@code path} leads to the
+	 * expanded tile with the lowest heuristic, and {@link SearchStatus#PARTIAL}
+	 * or {@link SearchStatus#LIMITED} is returned respectively. A search stopped
+	 * by the budget is kept in the thread's {@link SearchContext}, and the next
+	 * call on this instance for the same start and end continues it instead of
+	 * starting over, as long as no other search ran on the thread in between.
+	 *
+	 * @param budgetNanos time budget in nanoseconds, or {@link #NO_BUDGET}.
+	 */
+	SearchStatus findPath(int start, int end, PrimitiveIntList path, long budgetNanos)
+	{
+		path.clear();
+
+		final long deadline = System.nanoTime() + budgetNanos;
+		final int startTile = collisionMap.getTileIndex(start);
+		if (startTile < 0)
+		{
+			return SearchStatus.NOT_FOUND;
+		}
+
+		if (start == end)
+		{
+			path.add(start);
+			return SearchStatus.FOUND;
+		}
+
+		final int endX = WorldPointUtil.unpackWorldX(end);
+		final int endY = WorldPointUtil.unpackWorldY(end);
+		final int endZ = WorldPointUtil.unpackWorldPlane(end);
+
+		// Cheapest way to arrive on the target plane next to the target
+		final int entryCost = transports.getEntryCost(endZ, endX, endY, 1);
+		final int[] goalCosts = landmarks == null ? null : getGoalCosts(endX, endY, endZ);
+
+		final SearchContext context = contexts.get();
+		final long query = ((long) start << 32) | (end & 0xFFFFFFFFL);
+		final int[] gCost = context.getGCost();
+		final IndexedMinHeap openSet = context.getOpenSet();
+
+		int iterations;
+		int best;
+		if (context.resume(this, query))
+		{
+			iterations = context.getSuspendedIterations();
+			best = context.getSuspendedBest();
+		}
+		else
+		{
+			context.reset();
+
+			int goalCount = 0;
+			for (Direction direction : CARDINAL_DIRECTIONS)
+			{
+				final int tile = tileIndex(endX + direction.getX(), endY + direction.getY(), endZ);
+				if (tile >= 0 && isWalkable(tile) && components.isConnected(startTile, tile))
+				{
+					context.addFlags(tile, GOAL);
+					goalCount++;
+				}
+			}
+
+			if (goalCount == 0)
+			{
+				log.debug("No reachable tiles next to {}", WorldPointUtil.unpackWorldPoint(end));
+				return SearchStatus.NOT_FOUND;
+			}
+
+			gCost[startTile] = 0;
+			context.getParent()[startTile] = -1;
+			final int startHeuristic = heuristic(startTile, endX, endY, endZ, entryCost, goalCosts);
+			openSet.addOrDecrease(startTile, IndexedMinHeap.priority(startHeuristic, startHeuristic));
+
+			iterations = 0;
+			best = startTile;
+		}
+
+		// Lowest heuristic first, then lowest cost
+		long bestPriority = IndexedMinHeap.priority(heuristic(best, endX, endY, endZ, entryCost, goalCosts),
+				gCost[best]);
+		while (!openSet.isEmpty() && iterations < maxIterations)
+		{
+			iterations++;
+			SearchCancelledException.checkInterrupted(iterations);
+
+			if (budgetNanos != NO_BUDGET && (iterations & DEADLINE_CHECK_MASK) == 0 && System.nanoTime() - deadline >= 0)
+			{
+				context.suspend(this, query, iterations, best);
+				reconstructPath(context, best, path);
+				return SearchStatus.PARTIAL;
+			}
+
+			final int current = openSet.peek();
+			final long priority = openSet.getPriority(current);
+			openSet.poll();
+
+			if (context.hasFlags(current, GOAL))
+			{
+				reconstructPath(context, current, path);
+				return SearchStatus.FOUND;
+			}
+
+			final long progress = IndexedMinHeap.priority((int) priority, gCost[current]);
+			if (progress < bestPriority)
+			{
+				bestPriority = progress;
+				best = current;
+			}
+
+			context.addFlags(current, CLOSED);
+			context.countExpansion();
+
+			final int nextCost = gCost[current] + 1;
+			final int directions = collisionMap.getTraversableDirections(current);
+
+			for (int i = 0; i < DIRECTION_COUNT; i++)
+			{
+				if ((directions & (1 << i)) != 0)
+				{
+					relax(context, current, collisionMap.getNeighborTileIndex(current, i), nextCost, endX, endY, endZ,
+							entryCost, goalCosts);
+				}
+			}
+
+			for (int t = transports.getOutgoingStart(current); t < transports.getOutgoingEnd(current); t++)
+			{
+				relax(context, current, transports.getDestination(t), gCost[current] + transports.getCost(t), endX,
+						endY, endZ, entryCost, goalCosts);
+			}
+		}
+
+		if (openSet.isEmpty())
+		{
+			return SearchStatus.NOT_FOUND;
+		}
+
+		log.debug("Packed findPath hit MAX_ITERATIONS ({})", maxIterations);
+		reconstructPath(context, best, path);
+		return SearchStatus.LIMITED;
+	}
+
+	/**
+	 * Dijkstra search from {@code start} to the nearest of the given goal tiles,
+	 * with the same costs as the A*: one per step and
+	 * {@link TransportIndex#getCost(int)} per transport. Ties go to the tile
+	 * queued first, as in a breadth-first search.
+	 *
+	 * @param start packed start point.
+	 * @param goals packed goal points; points outside the collision grid or in
+	 *              another component than {@code start} are ignored.
+	 * @param path  receives the packed path, start first. Cleared on entry.
+	 * @return {@code true} if a path was found.
+	 */
+	boolean findNearestPath(int start, PrimitiveIntList goals, PrimitiveIntList path)
+	{
+		return findNearestPath(start, goals, path, Integer.MAX_VALUE);
+	}
+
+	/**
+	 * Variant of {@link #findNearestPath(int, PrimitiveIntList, PrimitiveIntList)}
+	 * that gives up on goals costing more than {@code maxSteps} to reach.
+	 */
+	boolean findNearestPath(int start, PrimitiveIntList goals, PrimitiveIntList path, int maxSteps)
+	{
+		path.clear();
+
+		final int startTile = collisionMap.getTileIndex(start);
+		if (startTile < 0)
+		{
+			return false;
+		}
+
+		final SearchContext context = contexts.get();
+		context.reset();
+
+		int goalCount = 0;
+		for (int i = 0; i < goals.size(); i++)
+		{
+			final int tile = collisionMap.getTileIndex(goals.get(i));
+			if (tile >= 0 && components.isConnected(startTile, tile))
+			{
+				context.addFlags(tile, GOAL);
+				goalCount++;
+			}
+		}
+
+		if (goalCount == 0)
+		{
+			return false;
+		}
+
+		final IndexedMinHeap openSet = context.getOpenSet();
+		final int[] gCost = context.getGCost();
+		gCost[startTile] = 0;
+		context.getParent()[startTile] = -1;
+		openSet.addOrDecrease(startTile, IndexedMinHeap.priority(0, 0));
+
+		// Queue order, the tie-breaker among equal costs
+		int queued = 1;
+		int iterations = 0;
+		while (!openSet.isEmpty() && iterations < maxIterations)
+		{
+			iterations++;
+			SearchCancelledException.checkInterrupted(iterations);
+			final int current = openSet.poll();
+			context.countExpansion();
+			context.addFlags(current, CLOSED);
+
+			// Costs leave the queue in order, so every goal still queued is further
+			if (gCost[current] > maxSteps)
+			{
+				break;
+			}
+
+			if (context.hasFlags(current, GOAL))
+			{
+				reconstructPath(context, current, path);
+				return true;
+			}
+
+			final int nextCost = gCost[current] + 1;
+			final int directions = collisionMap.getTraversableDirections(current);
+
+			for (int i = 0; i < DIRECTION_COUNT; i++)
+			{
+				if ((directions & (1 << i)) != 0
+						&& relaxNearest(context, current, collisionMap.getNeighborTileIndex(current, i), nextCost, queued))
+				{
+					queued++;
+				}
+			}
+
+			for (int t = transports.getOutgoingStart(current); t < transports.getOutgoingEnd(current); t++)
+			{
+				if (relaxNearest(context, current, transports.getDestination(t), gCost[current] + transports.getCost(t),
+						queued))
+				{
+					queued++;
+				}
+			}
+		}
+
+		if (iterations >= maxIterations)
+		{
+			log.debug("Packed findNearestPath hit MAX_ITERATIONS ({})", maxIterations);
+		}
+
+		return false;
+	}
+
+	/**
+	 * @return {@code true} if {@code neighbor} was queued or moved up the queue.
+	 */
+	private static boolean relaxNearest(SearchContext context, int current, int neighbor, int cost, int order)
+	{
+		if (context.hasFlags(neighbor, CLOSED))
+		{
+			return false;
+		}
+
+		final IndexedMinHeap openSet = context.getOpenSet();
+		final int[] gCost = context.getGCost();
+		if (openSet.contains(neighbor) && cost >= gCost[neighbor])
+		{
+			return false;
+		}
+
+		gCost[neighbor] = cost;
+		context.getParent()[neighbor] = current;
+		openSet.addOrDecrease(neighbor, IndexedMinHeap.priority(cost, order));
+		return true;
+	}
+
+	/**
+	 * Whether a tile can be left in any direction, either on foot or by a
+	 * transport.
+	 */
+	boolean isWalkable(int tile)
+	{
+		return transports.hasOutgoing(tile) || collisionMap.getTraversableDirections(tile) != 0;
+	}
+
+	private void relax(SearchContext context, int current, int neighbor, int cost, int endX, int endY, int endZ,
+			int entryCost, int[] goalCosts)
+	{
+		if (cost > maxPathLength)
+		{
+			return;
+		}
+
+		// Stairs jump between planes, so the heuristic is admissible but not
+		// consistent; a closed tile reached more cheaply is reopened
+		final int[] gCost = context.getGCost();
+		if (context.hasFlags(neighbor, CLOSED))
+		{
+			if (cost >= gCost[neighbor])
+			{
+				return;
+			}
+			context.removeFlags(neighbor, CLOSED);
+		}
+
+		final IndexedMinHeap openSet = context.getOpenSet();
+		if (!openSet.contains(neighbor) || cost < gCost[neighbor])
+		{
+			// Ties on f are broken towards the tile closer to the target
+			final int h = heuristic(neighbor, endX, endY, endZ, entryCost, goalCosts);
+			gCost[neighbor] = cost;
+			context.getParent()[neighbor] = current;
+			openSet.addOrDecrease(neighbor, IndexedMinHeap.priority(cost + h, h));
+		}
+	}
+
+	/**
+	 * Admissible estimate of the remaining cost. Goals are cardinal neighbours of
+	 * the target, so on the target plane the Chebyshev distance overestimates by
+	 * at most one; it is capped by the cheapest detour over another plane, since
+	 * stairs can be shorter than the walk around. Off the target plane the route
+	 * has to walk to a portal leaving this plane, and eventually take a portal
+	 * onto the target plane and walk to the target. Some transports skip a
+	 * plane, so the number of planes apart is no bound; the cheapest chain of
+	 * portals between the two planes is. With landmarks, the larger of this and
+	 * their bound is used.
+	 */
+	private int heuristic(int tile, int endX, int endY, int endZ, int entryCost, int[] goalCosts)
+	{
+		final int estimate = geometricHeuristic(tile, endX, endY, endZ, entryCost);
+		return goalCosts == null ? estimate : Math.max(estimate, landmarks.lowerBound(tile, goalCosts));
+	}
+
+	private int geometricHeuristic(int tile, int endX, int endY, int endZ, int entryCost)
+	{
+		final int point = collisionMap.getPackedPoint(tile);
+		final int z = WorldPointUtil.unpackWorldPlane(point);
+		final int exitDistance = transports.getExitDistance(tile);
+		final boolean canDetour = exitDistance != TransportIndex.NO_ROUTE && entryCost != TransportIndex.NO_ROUTE;
+		if (z != endZ)
+		{
+			int estimate = Math.max(transports.getPlaneLowerBound(z, endZ), 0);
+			if (canDetour)
+			{
+				estimate = Math.max(estimate, exitDistance + entryCost);
+			}
+			return estimate;
+		}
+
+		final int dx = Math.abs(WorldPointUtil.unpackWorldX(point) - endX);
+		final int dy = Math.abs(WorldPointUtil.unpackWorldY(point) - endY);
+		final int estimate = Math.max(Math.max(dx, dy) - 1, 0);
+		return canDetour ? Math.min(estimate, exitDistance + 1 + entryCost) : estimate;
+	}
+
+	/**
+	 * Landmark costs for the walkable tiles cardinally adjacent to the target,
+	 * the goals of {@link #findPath(int, int, PrimitiveIntList, long)}.
+	 */
+	private int[] getGoalCosts(int endX, int endY, int endZ)
+	{
+		final PrimitiveIntList goals = new PrimitiveIntList(CARDINAL_DIRECTIONS.length);
+		for (Direction direction : CARDINAL_DIRECTIONS)
+		{
+			final int tile = tileIndex(endX + direction.getX(), endY + direction.getY(), endZ);
+			if (tile >= 0 && isWalkable(tile))
+			{
+				goals.add(tile);
+			}
+		}
+		return landmarks.getGoalCosts(goals);
+	}
+
+	private void reconstructPath(SearchContext context, int goal, PrimitiveIntList path)
+	{
+		final int[] parent = context.getParent();
+		for (int tile = goal; tile != -1; tile = parent[tile])
+		{
+			path.add(collisionMap.getPackedPoint(tile));
+		}
+
+		for (int i = 0, j = path.size() - 1; i < j; i++, j--)
+		{
+			path.set(j, path.set(i, path.get(j)));
+		}
+	}
+
+	private int tileIndex(int x, int y, int z)
+	{
+		return collisionMap.getTileIndex(x, y, z);
+	}
+}
@@ -6,18 +6,20 @@ import lombok.extern.slf4j.Slf4j;
 
 import com.dklights.enums.Direction;
 import com.dklights.enums.Lamp;
+import com.dklights.enums.PathfinderEngine;
+import com.dklights.enums.TargetType;
 import java.io.IOException;
-import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
-import java.util.PriorityQueue;
-import java.util.Queue;
 import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
 
+import lombok.Getter;
+import lombok.Setter;
 import net.runelite.api.coords.WorldPoint;
 
 @Slf4j
@@ -26,8 +28,65 @@ public class Pathfinder
 	private static final int MAX_ITERATIONS = 10000;
 	private static final int MAX_PATH_LENGTH = 512;
 
+	private static final Lamp[] LAMPS = Lamp.values();
+	private static final Direction[] CARDINAL_DIRECTIONS =
+	{ Direction.NORTH, Direction.EAST, Direction.SOUTH, Direction.WEST };
+
 	private final CollisionMap collisionMap;
 	private final Map<WorldPoint, List<Transport>> transports;
+	private final PackedPathfinder packedPathfinder;
+	private final BitboardSearch bitboardSearch;
+	private final BidirectionalSearch bidirectionalSearch;
+	private final HierarchicalSearch hierarchicalSearch;
+	private final JumpPointSearch jumpPointSearch;
+	private final TransportIndex transportIndex;
+	private final ConnectedComponents components;
+
+	// Reverse distance field to the broken lamps, rebuilt when the lamp state
+	// version changes
+	private final DistanceField lampField;
+	private final LampDistanceMatrix lampDistances;
+
+	// First moves to every lamp, the bank and the wire machine, walked instead
+	// of searching
+	private final FirstMoveDatabase firstMoves;
+	private int lampFieldVersion;
+	private boolean lampFieldValid = false;
+
+	// Incremental planners for the nearest lamp and the current single target,
+	// created on first use of PathfinderEngine.INCREMENTAL
+	private DStarLiteSession lampSession;
+	private int lampSessionVersion;
+	private boolean lampSessionValid = false;
+	private DStarLiteSession targetSession;
+	private int targetSessionEnd = WorldPointUtil.UNDEFINED;
+
+	// Packed A* with landmark lower bounds, created on first use of
+	// PathfinderEngine.LANDMARK since the landmark tables take a while to build
+	private PackedPathfinder landmarkPathfinder;
+
+	// Built on its own thread from the first use of PathfinderEngine.CONTRACTION.
+	// The build takes over a second and cannot be resumed, so it neither blocks
+	// nor is cancelled by the pathfinding thread; the packed A* answers until
+	// it is ready
+	private volatile ContractionHierarchy contractionHierarchy;
+	private final AtomicBoolean contractionHierarchyStarted = new AtomicBoolean();
+
+	// Reusable per-thread search state, shared by the legacy and packed A*
+	private static final int LEGACY_OPEN = 1;
+	private static final int LEGACY_CLOSED = 1 << 1;
+	private final ThreadLocal<SearchContext> searchContexts;
+	// Second context per thread for engines that search two graphs at once
+	private final ThreadLocal<SearchContext> secondaryContexts;
+
+	// Scratch lists for the packed engine, only touched from the pathfinding thread
+	private final PrimitiveIntList packedTargets = new PrimitiveIntList(64);
+	private final PrimitiveIntList packedPath = new PrimitiveIntList(MAX_PATH_LENGTH);
+	private final PrimitiveIntList approachTiles = new PrimitiveIntList(64 * 4);
+
+	@Getter
+	@Setter
+	private volatile PathfinderEngine engine = PathfinderEngine.DISTANCE_FIELD;
 
 	public Pathfinder() throws IOException
 	{
@@ -39,10 +98,422 @@ public class Pathfinder
 		{
 			transports.computeIfAbsent(transport.getOrigin(), k -> new ArrayList<>()).add(transport);
 		}
+
+		this.transportIndex = new TransportIndex(collisionMap);
+		this.components = new ConnectedComponents(collisionMap, transportIndex);
+		this.searchContexts = SearchContext.perThread(collisionMap.getTileCount());
+		this.packedPathfinder = new PackedPathfinder(collisionMap, transportIndex, components, searchContexts,
+				MAX_ITERATIONS, MAX_PATH_LENGTH);
+		this.secondaryContexts = SearchContext.perThread(collisionMap.getTileCount());
+		this.bidirectionalSearch = new BidirectionalSearch(collisionMap, transportIndex, components, searchContexts,
+				secondaryContexts, MAX_ITERATIONS, MAX_PATH_LENGTH);
+		this.hierarchicalSearch = new HierarchicalSearch(collisionMap, transportIndex, components, searchContexts,
+				secondaryContexts);
+		this.jumpPointSearch = new JumpPointSearch(collisionMap, transportIndex, components, searchContexts,
+				MAX_ITERATIONS, MAX_PATH_LENGTH);
+		this.bitboardSearch = collisionMap.getGridWidth() == Long.SIZE
+				? new BitboardSearch(collisionMap, transportIndex, MAX_PATH_LENGTH)
+				: null;
+		this.lampField = new DistanceField(collisionMap, transportIndex);
+		this.lampDistances = loadLampDistances(collisionMap, transportIndex);
+		this.firstMoves = loadFirstMoves(collisionMap, transportIndex);
+	}
+
+	private static LampDistanceMatrix loadLampDistances(CollisionMap collisionMap, TransportIndex transportIndex)
+	{
+		try
+		{
+			return LampDistanceMatrix.loadFromResources(collisionMap, transportIndex);
+		}
+		catch (IOException e)
+		{
+			log.warn("Could not load lamp distances, computing them instead: {}", e.getMessage());
+			return LampDistanceMatrix.compute(collisionMap, transportIndex);
+		}
+	}
+
+	private static FirstMoveDatabase loadFirstMoves(CollisionMap collisionMap, TransportIndex transportIndex)
+	{
+		try
+		{
+			return FirstMoveDatabase.loadFromResources(collisionMap, transportIndex);
+		}
+		catch (IOException e)
+		{
+			log.warn("Could not load first moves, computing them instead: {}", e.getMessage());
+			return FirstMoveDatabase.compute(collisionMap, transportIndex);
+		}
+	}
+
+	/**
+	 * Precomputed walking distance between two lamps, ignoring walls that spawn at
+	 * runtime. See {@link LampDistanceMatrix}.
+	 *
+	 * @return walking cost from a tile next to {@code from} to a tile next to
+	 *         {@code to}, or {@link LampDistanceMatrix#UNREACHABLE}.
+	 */
+	public int getLampDistance(Lamp from, Lamp to)
+	{
+		return lampDistances.getDistance(LampDistanceMatrix.indexOf(from), LampDistanceMatrix.indexOf(to));
+	}
+
+	/**
+	 * Precomputed walking distance from a lamp to the bank or wire machine.
+	 *
+	 * @throws IllegalArgumentException if {@code to} is not
+	 *                                  {@link TargetType#BANK} or
+	 *                                  {@link TargetType#WIRING_MACHINE}.
+	 */
+	public int getLampDistance(Lamp from, TargetType to)
+	{
+		return lampDistances.getDistance(LampDistanceMatrix.indexOf(from), LampDistanceMatrix.indexOf(to));
+	}
+
+	/**
+	 * Precomputed walking distance from the bank or wire machine to a lamp.
+	 *
+	 * @throws IllegalArgumentException if {@code from} is not
+	 *                                  {@link TargetType#BANK} or
+	 *                                  {@link TargetType#WIRING_MACHINE}.
+	 */
+	public int getLampDistance(TargetType from, Lamp to)
+	{
+		return lampDistances.getDistance(LampDistanceMatrix.indexOf(from), LampDistanceMatrix.indexOf(to));
+	}
+
+	/**
+	 * Precomputed path to a lamp, rebuilt from {@link FirstMoveDatabase}
+	 * lookups without searching. Ignores walls that spawn at runtime.
+	 *
+	 * @param start packed start point.
+	 * @param path  receives the packed path, start first, ending next to the
+	 *              lamp. Cleared on entry.
+	 * @return {@code true} if the lamp is reachable from {@code start}.
+	 */
+	public boolean getPrecomputedPath(int start, Lamp lamp, PrimitiveIntList path)
+	{
+		clearExpansions();
+		return firstMoves.getPath(start, LampDistanceMatrix.indexOf(lamp), path);
+	}
+
+	/**
+	 * Precomputed path to the bank or wire machine, see
+	 * {@link #getPrecomputedPath(int, Lamp, PrimitiveIntList)}.
+	 *
+	 * @throws IllegalArgumentException if {@code target} is not
+	 *                                  {@link TargetType#BANK} or
+	 *                                  {@link TargetType#WIRING_MACHINE}.
+	 */
+	public boolean getPrecomputedPath(int start, TargetType target, PrimitiveIntList path)
+	{
+		clearExpansions();
+		return firstMoves.getPath(start, LampDistanceMatrix.indexOf(target), path);
+	}
+
+	/**
+	 * First step of {@link #getPrecomputedPath(int, Lamp, PrimitiveIntList)}.
+	 *
+	 * @return packed next tile, or {@link WorldPointUtil#UNDEFINED} if
+	 *         {@code packedPoint} is next to the lamp or cannot reach it.
+	 */
+	public int getPrecomputedNextStep(int packedPoint, Lamp lamp)
+	{
+		return firstMoves.getNextStep(packedPoint, LampDistanceMatrix.indexOf(lamp));
 	}
 
 	public List<WorldPoint> findNearestPath(WorldPoint start, Set<WorldPoint> targets,
 			Map<Lamp, Set<Direction>> lampWallCache)
+	{
+		clearExpansions();
+		if (engine == PathfinderEngine.LEGACY)
+		{
+			return findNearestPathLegacy(start, targets, lampWallCache);
+		}
+
+		if (start == null || targets == null || targets.isEmpty())
+		{
+			return new ArrayList<>();
+		}
+
+		packedTargets.clear();
+		for (WorldPoint target : targets)
+		{
+			packedTargets.add(WorldPointUtil.packWorldPoint(target));
+		}
+
+		findNearestPath(WorldPointUtil.packWorldPoint(start), packedTargets, lampWallCache, packedPath);
+		return toWorldPoints(packedPath);
+	}
+
+	/**
+	 * Packed variant of {@link #findNearestPath(WorldPoint, Set, Map)} that
+	 * allocates nothing beyond growing {@code path}. Must only be called from the
+	 * pathfinding thread.
+	 *
+	 * @param start         packed start point.
+	 * @param targets       packed lamp locations.
+	 * @param lampWallCache walled directions per lamp.
+	 * @param path          receives the packed path, start first. Cleared on
+	 *                      entry.
+	 * @return {@code true} if a path was found.
+	 * @throws SearchCancelledException if the thread is interrupted mid-search.
+	 */
+	public boolean findNearestPath(int start, PrimitiveIntList targets, Map<Lamp, Set<Direction>> lampWallCache,
+			PrimitiveIntList path)
+	{
+		clearExpansions();
+		path.clear();
+
+		if (targets.contains(start))
+		{
+			path.add(start);
+			return true;
+		}
+
+		final int startTile = collisionMap.getTileIndex(start);
+		if (startTile < 0 || !collectApproachTiles(targets, lampWallCache) || !retainConnected(startTile))
+		{
+			log.debug("Could not find any reachable tiles adjacent to targets.");
+			return false;
+		}
+
+		if (engine == PathfinderEngine.BITBOARD && bitboardSearch != null)
+		{
+			return bitboardSearch.findNearestPath(start, approachTiles, path);
+		}
+
+		return packedPathfinder.findNearestPath(start, approachTiles, path);
+	}
+
+	/**
+	 * Variant of {@link #findNearestPath(WorldPoint, Set, Map)} for callers that
+	 * track lamp state changes. With {@link PathfinderEngine#DISTANCE_FIELD} a
+	 * reverse distance field to the approach tiles of {@code targets} is built
+	 * once per {@code lampStateVersion}, and the path is read from it by walking
+	 * its next steps. With {@link PathfinderEngine#INCREMENTAL} a
+	 * {@link DStarLiteSession} keeps its search tree while the player walks and
+	 * only replans around the lamps that changed. Any other engine runs a normal
+	 * search.
+	 *
+	 * @param lampStateVersion must change whenever {@code targets} or
+	 *                         {@code lampWallCache} change.
+	 */
+	public List<WorldPoint> findNearestPath(WorldPoint start, Set<WorldPoint> targets,
+			Map<Lamp, Set<Direction>> lampWallCache, int lampStateVersion)
+	{
+		clearExpansions();
+		if (engine != PathfinderEngine.DISTANCE_FIELD && engine != PathfinderEngine.INCREMENTAL)
+		{
+			return findNearestPath(start, targets, lampWallCache);
+		}
+
+		if (start == null || targets == null || targets.isEmpty())
+		{
+			return new ArrayList<>();
+		}
+
+		final int packedStart = WorldPointUtil.packWorldPoint(start);
+		packedTargets.clear();
+		for (WorldPoint target : targets)
+		{
+			packedTargets.add(WorldPointUtil.packWorldPoint(target));
+		}
+
+		packedPath.clear();
+		if (packedTargets.contains(packedStart))
+		{
+			packedPath.add(packedStart);
+			return toWorldPoints(packedPath);
+		}
+
+		if (engine == PathfinderEngine.INCREMENTAL)
+		{
+			findNearestPathIncremental(packedStart, lampWallCache, lampStateVersion);
+			return toWorldPoints(packedPath);
+		}
+
+		if (!lampFieldValid || lampFieldVersion != lampStateVersion)
+		{
+			// A cancelled build leaves the field half written
+			lampFieldValid = false;
+			if (!collectApproachTiles(packedTargets, lampWallCache))
+			{
+				log.debug("Could not find any reachable tiles adjacent to targets.");
+			}
+			lampField.build(approachTiles);
+			lampFieldVersion = lampStateVersion;
+			lampFieldValid = true;
+		}
+
+		lampField.getPath(packedStart, packedPath);
+		return toWorldPoints(packedPath);
+	}
+
+	/**
+	 * Fills {@link #packedPath} from the lamp session, moving its goals to the
+	 * approach tiles of {@link #packedTargets} when the lamp state changed.
+	 */
+	private void findNearestPathIncremental(int packedStart, Map<Lamp, Set<Direction>> lampWallCache,
+			int lampStateVersion)
+	{
+		if (lampSession == null)
+		{
+			lampSession = newSession();
+		}
+
+		if (!lampSessionValid || lampSessionVersion != lampStateVersion)
+		{
+			if (!collectApproachTiles(packedTargets, lampWallCache))
+			{
+				log.debug("Could not find any reachable tiles adjacent to targets.");
+			}
+			lampSession.setGoals(approachTiles);
+			lampSessionVersion = lampStateVersion;
+			lampSessionValid = true;
+		}
+
+		lampSession.findPath(packedStart, packedPath);
+	}
+
+	private DStarLiteSession newSession()
+	{
+		// A first search may settle every tile twice; a query cut short by the
+		// limit leaves the rest queued for the next one
+		return new DStarLiteSession(collisionMap, transportIndex, components, collisionMap.getTileCount() * 2);
+	}
+
+	/**
+	 * Reconnects a player who stepped off {@code path} with a nearest-goal
+	 * search of at most {@code maxSteps} steps back onto it, so a small detour
+	 * does not need a full search. The result is the way back followed by the
+	 * rest of {@code path} from where it rejoins, which may be a little longer
+	 * than a fresh shortest path. Must only be called from the pathfinding
+	 * thread.
+	 *
+	 * @param path current path, start first.
+	 * @return the repaired path, or an empty list if {@code path} is more than
+	 *         {@code maxSteps} steps away.
+	 * @throws SearchCancelledException if the thread is interrupted mid-search.
+	 */
+	public List<WorldPoint> repairPath(WorldPoint start, List<WorldPoint> path, int maxSteps)
+	{
+		clearExpansions();
+		final List<WorldPoint> repaired = new ArrayList<>();
+		if (start == null || path.isEmpty())
+		{
+			return repaired;
+		}
+
+		packedTargets.clear();
+		for (WorldPoint point : path)
+		{
+			packedTargets.add(WorldPointUtil.packWorldPoint(point));
+		}
+
+		if (!packedPathfinder.findNearestPath(WorldPointUtil.packWorldPoint(start), packedTargets, packedPath, maxSteps))
+		{
+			return repaired;
+		}
+
+		// The search stops on the first path tile it reaches, which is also where
+		// the way back ends
+		final int rejoin = packedTargets.indexOf(packedPath.get(packedPath.size() - 1));
+		repaired.addAll(toWorldPoints(packedPath));
+		repaired.addAll(path.subList(rejoin + 1, path.size()));
+		return repaired;
+	}
+
+	/**
+	 * Walking cost from a tile to the nearest broken lamp's approach tile, read
+	 * from the field built by the last
+	 * {@link #findNearestPath(WorldPoint, Set, Map, int)} call. Must only be
+	 * called from the pathfinding thread.
+	 *
+	 * @param packedPoint packed world point.
+	 * @return walking cost, or {@code -1} if no lamp is reachable or no field
+	 *         has been built.
+	 */
+	public int getNearestLampDistance(int packedPoint)
+	{
+		return lampFieldValid ? lampField.getDistance(packedPoint) : DistanceField.UNREACHABLE;
+	}
+
+	/**
+	 * Next tile towards the nearest broken lamp, read from the same field as
+	 * {@link #getNearestLampDistance(int)}.
+	 *
+	 * @param packedPoint packed world point.
+	 * @return packed next tile, or {@link WorldPointUtil#UNDEFINED}.
+	 */
+	public int getNearestLampNextStep(int packedPoint)
+	{
+		return lampFieldValid ? lampField.getNextStep(packedPoint) : WorldPointUtil.UNDEFINED;
+	}
+
+	/**
+	 * Fills {@link #approachTiles} with the walkable, unwalled tiles cardinally
+	 * adjacent to the given lamp locations.
+	 *
+	 * @return {@code true} if there is at least one approach tile.
+	 */
+	private boolean collectApproachTiles(PrimitiveIntList targets, Map<Lamp, Set<Direction>> lampWallCache)
+	{
+		approachTiles.clear();
+		for (int i = 0; i < targets.size(); i++)
+		{
+			final int target = targets.get(i);
+			final Lamp lamp = getLampFromPackedPoint(target);
+			if (lamp == null)
+			{
+				continue;
+			}
+
+			final Set<Direction> walledDirections = lampWallCache.getOrDefault(lamp, Collections.emptySet());
+			for (Direction direction : CARDINAL_DIRECTIONS)
+			{
+				if (walledDirections.contains(direction))
+				{
+					continue;
+				}
+
+				final int adjacent = WorldPointUtil.dxdy(target, direction.getX(), direction.getY());
+				final int tile = collisionMap.getTileIndex(adjacent);
+				if (tile >= 0 && packedPathfinder.isWalkable(tile))
+				{
+					approachTiles.add(adjacent);
+				}
+			}
+		}
+
+		return !approachTiles.isEmpty();
+	}
+
+	/**
+	 * Drops the approach tiles that cannot be reached from {@code startTile}.
+	 *
+	 * @return {@code true} if any approach tile is left.
+	 */
+	private boolean retainConnected(int startTile)
+	{
+		int kept = 0;
+		for (int i = 0; i < approachTiles.size(); i++)
+		{
+			final int adjacent = approachTiles.get(i);
+			if (components.isConnected(startTile, collisionMap.getTileIndex(adjacent)))
+			{
+				approachTiles.set(kept++, adjacent);
+			}
+		}
+
+		while (approachTiles.size() > kept)
+		{
+			approachTiles.removeAt(approachTiles.size() - 1);
+		}
+		return kept > 0;
+	}
+
+	private List<WorldPoint> findNearestPathLegacy(WorldPoint start, Set<WorldPoint> targets,
+			Map<Lamp, Set<Direction>> lampWallCache)
 	{
 		if (start == null || targets == null || targets.isEmpty())
 		{
@@ -85,29 +556,43 @@ public class Pathfinder
 			}
 		}
 
+		final int startTile = collisionMap.getTileIndex(start.getX(), start.getY(), start.getPlane());
+		if (startTile < 0)
+		{
+			return new ArrayList<>();
+		}
+		reachableTargets.removeIf(adjacent -> !isConnected(startTile, adjacent, 0));
+
 		if (reachableTargets.isEmpty())
 		{
 			log.debug("Could not find any reachable tiles adjacent to targets.");
 			return new ArrayList<>();
 		}
 
-		Queue<WorldPoint> queue = new ArrayDeque<>();
-		Set<WorldPoint> visited = new HashSet<>();
-		Map<WorldPoint, WorldPoint> parentMap = new HashMap<>();
+		final SearchContext context = searchContexts.get();
+		context.reset();
+		final int[] queue = context.getQueue();
+		final int[] parents = context.getParent();
+		int head = 0;
+		int tail = 0;
 
-		queue.add(start);
-		visited.add(start);
+		queue[tail++] = startTile;
+		parents[startTile] = -1;
+		context.addFlags(startTile, LEGACY_CLOSED);
 
 		int iterations = 0;
 
-		while (!queue.isEmpty() && iterations < MAX_ITERATIONS)
+		while (head < tail && iterations < MAX_ITERATIONS)
 		{
 			iterations++;
-			WorldPoint current = queue.poll();
+			SearchCancelledException.checkInterrupted(iterations);
+			final int currentTile = queue[head++];
+			context.countExpansion();
+			WorldPoint current = WorldPointUtil.unpackWorldPoint(collisionMap.getPackedPoint(currentTile));
 
 			if (reachableTargets.contains(current))
 			{
-				return reconstructPath(parentMap, start, current);
+				return reconstructPath(parents, currentTile);
 			}
 
 			List<Node> neighborNodes = collisionMap.getValidNeighbors(new Node(current), transports);
@@ -115,11 +600,14 @@ public class Pathfinder
 			for (Node neighborNode : neighborNodes)
 			{
 				WorldPoint neighborPoint = neighborNode.getWorldPoint();
+				final int neighborTile = collisionMap.getTileIndex(neighborPoint.getX(), neighborPoint.getY(),
+						neighborPoint.getPlane());
 
-				if (visited.add(neighborPoint))
+				if (neighborTile >= 0 && !context.hasFlags(neighborTile, LEGACY_CLOSED))
 				{
-					parentMap.put(neighborPoint, current);
-					queue.add(neighborPoint);
+					context.addFlags(neighborTile, LEGACY_CLOSED);
+					parents[neighborTile] = currentTile;
+					queue[tail++] = neighborTile;
 				}
 			}
 		}
@@ -132,32 +620,44 @@ public class Pathfinder
 		return new ArrayList<>();
 	}
 
-	private List<WorldPoint> reconstructPath(Map<WorldPoint, WorldPoint> parentMap, WorldPoint start, WorldPoint end)
+	private List<WorldPoint> reconstructPath(int[] parents, int goalTile)
 	{
 		List<WorldPoint> path = new ArrayList<>();
-		WorldPoint current = end;
-
-		while (current != null && !current.equals(start))
+		for (int tile = goalTile; tile != -1; tile = parents[tile])
 		{
-			path.add(current);
-			current = parentMap.get(current);
-		}
-
-		if (current != null && current.equals(start))
-		{
-			path.add(start);
+			path.add(WorldPointUtil.unpackWorldPoint(collisionMap.getPackedPoint(tile)));
 		}
 
 		Collections.reverse(path);
+		return path;
+	}
 
-		if (path.isEmpty() || !path.get(0).equals(start))
+	private static List<WorldPoint> toWorldPoints(PrimitiveIntList packed)
+	{
+		List<WorldPoint> path = new ArrayList<>(packed.size());
+		for (int i = 0; i < packed.size(); i++)
 		{
-			return new ArrayList<>();
+			path.add(WorldPointUtil.unpackWorldPoint(packed.get(i)));
 		}
-
 		return path;
 	}
 
+	private static Lamp getLampFromPackedPoint(int packedPoint)
+	{
+		final int x = WorldPointUtil.unpackWorldX(packedPoint);
+		final int y = WorldPointUtil.unpackWorldY(packedPoint);
+		final int plane = WorldPointUtil.unpackWorldPlane(packedPoint);
+		for (Lamp lamp : LAMPS)
+		{
+			WorldPoint point = lamp.getWorldPoint();
+			if (point.getX() == x && point.getY() == y && point.getPlane() == plane)
+			{
+				return lamp;
+			}
+		}
+		return null;
+	}
+
 	private Lamp getLampFromWorldPoint(WorldPoint worldPoint)
 	{
 		for (Lamp lamp : Lamp.values())
@@ -172,7 +672,225 @@ public class Pathfinder
 
 	public List<WorldPoint> findPath(WorldPoint start, WorldPoint end)
 	{
-		return findPathInternal(start, end, MAX_ITERATIONS);
+		final List<WorldPoint> path = new ArrayList<>();
+		findPath(start, end, PackedPathfinder.NO_BUDGET, path);
+		return path;
+	}
+
+	/**
+	 * Time-bounded variant of {@link #findPath(WorldPoint, WorldPoint)}. If the
+	 * budget runs out the path leads towards the target without reaching it, see
+	 * {@link #findPath(int, int, PrimitiveIntList, long)}. The legacy engine
+	 * ignores the budget.
+	 *
+	 * @param budgetNanos time budget in nanoseconds; zero or less means none.
+	 * @param path        receives the path, start first. Cleared on entry.
+	 */
+	public SearchStatus findPath(WorldPoint start, WorldPoint end, long budgetNanos, List<WorldPoint> path)
+	{
+		clearExpansions();
+		path.clear();
+
+		if (engine == PathfinderEngine.LEGACY)
+		{
+			path.addAll(findPathInternal(start, end, MAX_ITERATIONS));
+			return path.isEmpty() ? SearchStatus.NOT_FOUND : SearchStatus.FOUND;
+		}
+
+		if (start == null || end == null)
+		{
+			return SearchStatus.NOT_FOUND;
+		}
+
+		final SearchStatus status = findPath(WorldPointUtil.packWorldPoint(start), WorldPointUtil.packWorldPoint(end),
+				packedPath, budgetNanos);
+		for (int i = 0; i < packedPath.size(); i++)
+		{
+			path.add(WorldPointUtil.unpackWorldPoint(packedPath.get(i)));
+		}
+		return status;
+	}
+
+	/**
+	 * Packed variant of {@link #findPath(WorldPoint, WorldPoint)} that allocates
+	 * nothing beyond growing {@code path}. Must only be called from the
+	 * pathfinding thread. With {@link PathfinderEngine#DISTANCE_FIELD}, paths to
+	 * lamps, the bank and the wire machine are rebuilt from the
+	 * {@link FirstMoveDatabase}, and with
+	 * {@link PathfinderEngine#INCREMENTAL} a {@link DStarLiteSession} replans
+	 * from the previous query to the same target.
+	 * {@link PathfinderEngine#BIDIRECTIONAL} searches from both ends with
+	 * {@link BidirectionalSearch}, {@link PathfinderEngine#HIERARCHICAL}
+	 * routes over the cluster graph of {@link HierarchicalSearch}, falling back
+	 * to the packed A* if that finds nothing,
+	 * {@link PathfinderEngine#LANDMARK} guides the packed A* with
+	 * {@link Landmarks}, {@link PathfinderEngine#JUMP_POINT} prunes
+	 * symmetric paths with {@link JumpPointSearch}, and
+	 * {@link PathfinderEngine#CONTRACTION} routes between portals over a
+	 * {@link ContractionHierarchy}, with the packed A* standing in while the
+	 * hierarchy is built in the background.
+	 *
+	 * @param start packed start point.
+	 * @param end   packed target point.
+	 * @param path  receives the packed path, start first. Cleared on entry.
+	 * @return {@code true} if a path was found.
+	 * @throws SearchCancelledException if the thread is interrupted mid-search.
+	 */
+	public boolean findPath(int start, int end, PrimitiveIntList path)
+	{
+		if (findPath(start, end, path, PackedPathfinder.NO_BUDGET) != SearchStatus.FOUND)
+		{
+			path.clear();
+			return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Anytime variant of {@link #findPath(int, int, PrimitiveIntList)}. When the
+	 * budget runs out, {@code path} leads to the explored tile closest to the
+	 * target and {@link SearchStatus#PARTIAL} is returned. Calling again with the
+	 * same start and end continues the interrupted search, so a few short calls
+	 * refine the partial path into the full one. A search that hits the
+	 * iteration limit returns {@link SearchStatus#LIMITED} with the same kind
+	 * of path; calling again does not improve it.
+	 *
+	 * @param budgetNanos time budget in nanoseconds; zero or less means none.
+	 * @throws SearchCancelledException if the thread is interrupted mid-search.
+	 */
+	public SearchStatus findPath(int start, int end, PrimitiveIntList path, long budgetNanos)
+	{
+		clearExpansions();
+		path.clear();
+
+		if (engine == PathfinderEngine.DISTANCE_FIELD && start != end)
+		{
+			final int node = FirstMoveDatabase.getNode(end);
+			if (node >= 0)
+			{
+				return firstMoves.getPath(start, node, path) ? SearchStatus.FOUND : SearchStatus.NOT_FOUND;
+			}
+		}
+
+		final int roughDistance = WorldPointUtil.distanceBetween2D(start, end, 2);
+		if (roughDistance > MAX_PATH_LENGTH)
+		{
+			log.debug("Pathfinding rejected - too far apart: {} > {}", roughDistance, MAX_PATH_LENGTH);
+			return SearchStatus.NOT_FOUND;
+		}
+
+		if (engine == PathfinderEngine.BIDIRECTIONAL)
+		{
+			return bidirectionalSearch.findPath(start, end, path);
+		}
+
+		if (engine == PathfinderEngine.JUMP_POINT)
+		{
+			return jumpPointSearch.findPath(start, end, path);
+		}
+
+		if (engine == PathfinderEngine.CONTRACTION)
+		{
+			final ContractionHierarchy hierarchy = getContractionHierarchy();
+			if (hierarchy != null)
+			{
+				return hierarchy.findPath(start, end, path);
+			}
+		}
+
+		if (engine == PathfinderEngine.HIERARCHICAL
+				&& hierarchicalSearch.findPath(start, end, path) == SearchStatus.FOUND)
+		{
+			return SearchStatus.FOUND;
+		}
+
+		if (engine == PathfinderEngine.INCREMENTAL && start != end)
+		{
+			return findPathIncremental(start, end, path) ? SearchStatus.FOUND : SearchStatus.NOT_FOUND;
+		}
+
+		final PackedPathfinder pathfinder = engine == PathfinderEngine.LANDMARK
+				? getLandmarkPathfinder()
+				: packedPathfinder;
+		return pathfinder.findPath(start, end, path, budgetNanos > 0 ? budgetNanos : PackedPathfinder.NO_BUDGET);
+	}
+
+	private PackedPathfinder getLandmarkPathfinder()
+	{
+		if (landmarkPathfinder == null)
+		{
+			landmarkPathfinder = new PackedPathfinder(collisionMap, transportIndex, components, searchContexts,
+					MAX_ITERATIONS, MAX_PATH_LENGTH, new Landmarks(collisionMap, transportIndex));
+		}
+		return landmarkPathfinder;
+	}
+
+	/**
+	 * @return the contraction hierarchy, or {@code null} while it is being
+	 *         built. The first call starts the build.
+	 */
+	ContractionHierarchy getContractionHierarchy()
+	{
+		final ContractionHierarchy hierarchy = contractionHierarchy;
+		if (hierarchy == null && contractionHierarchyStarted.compareAndSet(false, true))
+		{
+			final Thread builder = new Thread(() ->
+			{
+				try
+				{
+					contractionHierarchy = new ContractionHierarchy(collisionMap, transportIndex, components,
+							searchContexts, secondaryContexts, MAX_ITERATIONS, MAX_PATH_LENGTH);
+				}
+				catch (RuntimeException e)
+				{
+					log.warn("Could not build the contraction hierarchy", e);
+				}
+			}, "DKLights-ContractionHierarchy");
+			builder.setDaemon(true);
+			builder.start();
+		}
+		return hierarchy;
+	}
+
+	/**
+	 * Tiles expanded by the last query on the calling thread, for comparing
+	 * engines independently of the machine. Queries answered from a
+	 * precomputed field or a D* Lite session count nothing, and a resumed
+	 * search only counts the part that ran in the last call.
+	 */
+	public int getLastExpansions()
+	{
+		return searchContexts.get().getExpansions();
+	}
+
+	/**
+	 * Starts the expansion count of a new query.
+	 */
+	private void clearExpansions()
+	{
+		searchContexts.get().clearExpansions();
+	}
+
+	/**
+	 * Runs the target session, moving its goals next to {@code end} first if
+	 * the target changed. The budget does not apply; an update is usually far
+	 * smaller than a fresh search.
+	 */
+	private boolean findPathIncremental(int start, int end, PrimitiveIntList path)
+	{
+		if (targetSession == null)
+		{
+			targetSession = newSession();
+		}
+
+		if (targetSessionEnd != end)
+		{
+			targetSession.setGoals(LampDistanceMatrix.getApproachTiles(collisionMap, transportIndex,
+					WorldPointUtil.unpackWorldPoint(end)));
+			targetSessionEnd = end;
+		}
+
+		return targetSession.findPath(start, path);
 	}
 
 	public boolean isTransportLocation(WorldPoint point)
@@ -264,21 +982,45 @@ public class Pathfinder
 			}
 		}
 
-		PriorityQueue<Node> openSet = new PriorityQueue<>();
-		Set<WorldPoint> closedSet = new HashSet<>();
+		final int startTile = collisionMap.getTileIndex(start.getX(), start.getY(), start.getPlane());
+		if (startTile < 0)
+		{
+			log.debug("DEBUG: Pathfinding start outside collision data: " + start);
+			return new ArrayList<>();
+		}
+
+		// Cross-plane searches accept any tile next to the target
+		if (!isConnected(startTile, end, crossPlane ? 1 : 0))
+		{
+			log.debug("DEBUG: Pathfinding target not connected to start: " + end);
+			return new ArrayList<>();
+		}
+
+		// Open nodes are flagged LEGACY_OPEN, a slot without the flag is stale
+		final SearchContext context = searchContexts.get();
+		context.reset();
+		final IndexedMinHeap openSet = context.getOpenSet();
+		final Node[] openNodes = context.getNodes();
 		int iterations = 0;
 
 		Node startNode = new Node(start);
 		startNode.setGCost(0);
 		startNode.setHCost(calculateHeuristic(start, end));
 		startNode.setFCost(startNode.getHCost());
-		openSet.add(startNode);
+		openNodes[startTile] = startNode;
+		context.addFlags(startTile, LEGACY_OPEN);
+		openSet.addOrDecrease(startTile, IndexedMinHeap.priority(startNode.getFCost(), startNode.getHCost()));
 
 		while (!openSet.isEmpty() && iterations < maxIterations)
 		{
 			iterations++;
+			SearchCancelledException.checkInterrupted(iterations);
 
-			Node currentNode = openSet.poll();
+			final int currentTile = openSet.poll();
+			context.countExpansion();
+			Node currentNode = openNodes[currentTile];
+			openNodes[currentTile] = null;
+			context.removeFlags(currentTile, LEGACY_OPEN);
 
 			if (currentNode.getWorldPoint().equals(end))
 			{
@@ -331,11 +1073,15 @@ public class Pathfinder
 				}
 			}
 
-			closedSet.add(currentNode.getWorldPoint());
+			context.addFlags(currentTile, LEGACY_CLOSED);
 
 			for (Node neighbor : getNeighbors(currentNode))
 			{
-				if (closedSet.contains(neighbor.getWorldPoint()))
+				// Tiles outside the collision data (the Lumbridge cellar) are dead ends
+				WorldPoint neighborPoint = neighbor.getWorldPoint();
+				final int neighborTile = collisionMap.getTileIndex(neighborPoint.getX(), neighborPoint.getY(),
+						neighborPoint.getPlane());
+				if (neighborTile < 0 || context.hasFlags(neighborTile, LEGACY_CLOSED))
 				{
 					continue;
 				}
@@ -370,46 +1116,16 @@ public class Pathfinder
 
 					if (current.getPlane() != end.getPlane())
 					{
-						int closestTransportDistance = Integer.MAX_VALUE;
-						for (Map.Entry<WorldPoint, List<Transport>> entry : transports.entrySet())
-						{
-							WorldPoint transportLoc = entry.getKey();
-							if (transportLoc.getPlane() == current.getPlane())
-							{
-								for (Transport transport : entry.getValue())
-								{
-									if (transport.getDestination().getPlane() == end.getPlane())
-									{
-										int tDist = Math.max(Math.abs(current.getX() - transportLoc.getX()),
-												Math.abs(current.getY() - transportLoc.getY()));
-										closestTransportDistance = Math.min(closestTransportDistance, tDist);
-									}
-								}
-							}
-						}
+						final int closestTransportDistance = transportIndex.getPortalDistance(current.getPlane(),
+								end.getPlane(), current.getX(), current.getY());
 
-						if (closestTransportDistance != Integer.MAX_VALUE)
+						if (closestTransportDistance != TransportIndex.NO_ROUTE)
 						{
-							int nextClosestTransportDistance = Integer.MAX_VALUE;
-							for (Map.Entry<WorldPoint, List<Transport>> entry : transports.entrySet())
-							{
-								WorldPoint transportLoc = entry.getKey();
-								if (transportLoc.getPlane() == next.getPlane())
-								{
-									for (Transport transport : entry.getValue())
-									{
-										if (transport.getDestination().getPlane() == end.getPlane())
-										{
-											int tDist = Math.max(Math.abs(next.getX() - transportLoc.getX()),
-													Math.abs(next.getY() - transportLoc.getY()));
-											nextClosestTransportDistance = Math.min(nextClosestTransportDistance,
-													tDist);
-										}
-									}
-								}
-							}
+							final int nextClosestTransportDistance = transportIndex.getPortalDistance(next.getPlane(),
+									end.getPlane(), next.getX(), next.getY());
 
-							if (nextClosestTransportDistance > closestTransportDistance)
+							if (nextClosestTransportDistance == TransportIndex.NO_ROUTE
+									|| nextClosestTransportDistance > closestTransportDistance)
 							{
 								transportCost += 0.1;
 							}
@@ -423,18 +1139,24 @@ public class Pathfinder
 					continue;
 				}
 
-				if (tentativeGCost < neighbor.getGCost() || !openSet.contains(neighbor))
+				Node openNode = context.hasFlags(neighborTile, LEGACY_OPEN) ? openNodes[neighborTile] : null;
+				if (openNode != null && tentativeGCost >= openNode.getGCost())
 				{
-					neighbor.setGCost(tentativeGCost);
-					neighbor.setHCost(calculateHeuristic(neighbor.getWorldPoint(), end));
-					neighbor.setFCost(neighbor.getGCost() + neighbor.getHCost());
-					neighbor.setParent(currentNode);
+					continue;
+				}
 
-					if (!openSet.contains(neighbor))
-					{
-						openSet.add(neighbor);
-					}
+				if (openNode == null)
+				{
+					openNode = neighbor;
+					openNode.setHCost(calculateHeuristic(neighborPoint, end));
+					openNodes[neighborTile] = openNode;
+					context.addFlags(neighborTile, LEGACY_OPEN);
 				}
+
+				openNode.setGCost(tentativeGCost);
+				openNode.setFCost(openNode.getGCost() + openNode.getHCost());
+				openNode.setParent(currentNode);
+				openSet.addOrDecrease(neighborTile, IndexedMinHeap.priority(openNode.getFCost(), openNode.getHCost()));
 			}
 		}
 
@@ -449,6 +1171,26 @@ public class Pathfinder
 		return new ArrayList<>();
 	}
 
+	/**
+	 * @return whether any tile within {@code radius} of {@code target} on its
+	 *         plane is in the same component as {@code startTile}.
+	 */
+	private boolean isConnected(int startTile, WorldPoint target, int radius)
+	{
+		for (int dx = -radius; dx <= radius; dx++)
+		{
+			for (int dy = -radius; dy <= radius; dy++)
+			{
+				final int tile = collisionMap.getTileIndex(target.getX() + dx, target.getY() + dy, target.getPlane());
+				if (tile >= 0 && components.isConnected(startTile, tile))
+				{
+					return true;
+				}
+			}
+		}
+		return false;
+	}
+
 	private List<Node> getNeighbors(Node node)
 	{
 		List<Node> neighbors = collisionMap.getValidNeighbors(node, transports);
@@ -464,39 +1206,20 @@ public class Pathfinder
 
 		if (from.getPlane() != to.getPlane())
 		{
+			// Portals leaving the start plane or arriving on the target plane
 			int minTransportDistance = Integer.MAX_VALUE;
-			boolean foundRelevantTransport = false;
-
-			for (Map.Entry<WorldPoint, List<Transport>> entry : transports.entrySet())
+			for (int plane = 0; plane < CollisionMap.PLANE_COUNT; plane++)
 			{
-				WorldPoint transportLocation = entry.getKey();
-
-				for (Transport transport : entry.getValue())
+				minTransportDistance = Math.min(minTransportDistance,
+						estimateViaPortals(transportIndex.getPortals(from.getPlane(), plane), from, to));
+				if (plane != from.getPlane())
 				{
-					if (transport.getDestination().getPlane() == to.getPlane()
-							|| transport.getOrigin().getPlane() == from.getPlane())
-					{
-
-						int transportDx = Math.abs(from.getX() - transportLocation.getX());
-						int transportDy = Math.abs(from.getY() - transportLocation.getY());
-						int distanceToTransport = Math.max(transportDx, transportDy);
-
-						int destDx = Math.abs(transport.getDestination().getX() - to.getX());
-						int destDy = Math.abs(transport.getDestination().getY() - to.getY());
-						int distanceFromTransport = Math.max(destDx, destDy);
-
-						int totalEstimatedDistance = distanceToTransport + distanceFromTransport;
-
-						if (totalEstimatedDistance < minTransportDistance)
-						{
-							minTransportDistance = totalEstimatedDistance;
-							foundRelevantTransport = true;
-						}
-					}
+					minTransportDistance = Math.min(minTransportDistance,
+							estimateViaPortals(transportIndex.getPortals(plane, to.getPlane()), from, to));
 				}
 			}
 
-			if (foundRelevantTransport)
+			if (minTransportDistance != Integer.MAX_VALUE)
 			{
 				return minTransportDistance;
 			}
@@ -504,4 +1227,17 @@ public class Pathfinder
 
 		return chebyshevDistance;
 	}
-}
\ No newline at end of file
+
+	private static int estimateViaPortals(TransportIndex.Portal[] portals, WorldPoint from, WorldPoint to)
+	{
+		int best = Integer.MAX_VALUE;
+		for (TransportIndex.Portal portal : portals)
+		{
+			final int destination = portal.getDestination();
+			final int destDx = Math.abs(WorldPointUtil.unpackWorldX(destination) - to.getX());
+			final int destDy = Math.abs(WorldPointUtil.unpackWorldY(destination) - to.getY());
+			best = Math.min(best, portal.distanceToOrigin(from.getX(), from.getY()) + Math.max(destDx, destDy));
+		}
+		return best;
+	}
+}
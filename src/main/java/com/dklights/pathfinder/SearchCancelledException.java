@@ -0,0 +1,46 @@
+package com.dklights.pathfinder;
+
+/**
+ * Thrown out of a search when the pathfinding thread is interrupted, so a
+ * superseded query stops instead of running to its iteration limit. Callers
+ * should drop the query and keep whatever path they already have.
+ */
+public class SearchCancelledException extends RuntimeException
+{
+	private static final long serialVersionUID = 1L;
+
+	// Interrupts are polled once per this many expansions
+	private static final int CHECK_INTERVAL_MASK = 256 - 1;
+
+	public SearchCancelledException()
+	{
+		super("Search cancelled", null, false, false);
+	}
+
+	/**
+	 * Cheap cancellation point for search loops. The interrupt flag is left set
+	 * so the executor still sees it.
+	 *
+	 * @param iteration current iteration count of the loop.
+	 * @throws SearchCancelledException if the current thread is interrupted.
+	 */
+	static void checkInterrupted(int iteration)
+	{
+		if ((iteration & CHECK_INTERVAL_MASK) == 0 && Thread.currentThread().isInterrupted())
+		{
+			throw new SearchCancelledException();
+		}
+	}
+
+	/**
+	 * Unthrottled variant of {@link #checkInterrupted(int)} for loops whose
+	 * iterations are already expensive.
+	 */
+	static void checkInterrupted()
+	{
+		if (Thread.currentThread().isInterrupted())
+		{
+			throw new SearchCancelledException();
+		}
+	}
+}
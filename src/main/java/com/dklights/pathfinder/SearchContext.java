@@ -0,0 +1,172 @@
+package com.dklights.pathfinder;
+
+import java.util.Arrays;
+import lombok.Getter;
+
+/**
+ * Scratch state for one search at a time over {@link CollisionMap} tile
+ * indices: per-tile flags, g-cost and parent, a BFS queue and an
+ * {@link IndexedMinHeap} open set.
+ * <p>
+ * Nothing is cleared between searches. Every tile carries the generation it
+ * was last touched in, and {@link #reset()} just starts a new generation, so
+ * flags from earlier searches read as zero. The g-cost and parent of a tile are
+ * only meaningful once it has been given a flag in the current generation.
+ * <p>
+ * Contexts are large, so {@link #perThread(int)} hands out one per thread and
+ * reuses it for every query made on that thread.
+ */
+final class SearchContext
+{
+	private final int[] generations;
+	private final byte[] flags;
+	private int generation;
+
+	@Getter
+	private final int[] gCost;
+	@Getter
+	private final int[] parent;
+	@Getter
+	private final int[] queue;
+	@Getter
+	private final IndexedMinHeap openSet;
+
+	private Node[] nodes;
+
+	/**
+	 * Tiles expanded on this context since the last {@link #clearExpansions()},
+	 * a measure of search effort that does not depend on the machine. Resets
+	 * leave it alone, so a query that runs several searches counts them all.
+	 */
+	@Getter
+	private int expansions;
+
+	// Search left in this context by a query that ran out of time, valid while
+	// no other search has reset the context. Searches that share the context
+	// may key their queries alike, so the owner is kept too
+	private Object suspendedOwner;
+	private long suspendedQuery;
+	private int suspendedGeneration;
+	@Getter
+	private int suspendedIterations;
+	@Getter
+	private int suspendedBest;
+
+	SearchContext(int tileCount)
+	{
+		generations = new int[tileCount];
+		flags = new byte[tileCount];
+		gCost = new int[tileCount];
+		parent = new int[tileCount];
+		queue = new int[tileCount];
+		openSet = new IndexedMinHeap(tileCount);
+	}
+
+	static ThreadLocal<SearchContext> perThread(int tileCount)
+	{
+		return ThreadLocal.withInitial(() -> new SearchContext(tileCount));
+	}
+
+	/**
+	 * Starts a new search. Runs in constant time apart from emptying the open
+	 * set, and a full clear once every 2^32 searches when the generation wraps.
+	 */
+	void reset()
+	{
+		if (++generation == 0)
+		{
+			Arrays.fill(generations, 0);
+			generation = 1;
+		}
+		openSet.clear();
+	}
+
+	void clearExpansions()
+	{
+		expansions = 0;
+	}
+
+	void countExpansion()
+	{
+		expansions++;
+	}
+
+	int getFlags(int tile)
+	{
+		return generations[tile] == generation ? flags[tile] : 0;
+	}
+
+	boolean hasFlags(int tile, int mask)
+	{
+		return (getFlags(tile) & mask) != 0;
+	}
+
+	void addFlags(int tile, int mask)
+	{
+		if (generations[tile] != generation)
+		{
+			generations[tile] = generation;
+			flags[tile] = (byte) mask;
+		}
+		else
+		{
+			flags[tile] |= mask;
+		}
+	}
+
+	void removeFlags(int tile, int mask)
+	{
+		if (generations[tile] == generation)
+		{
+			flags[tile] &= ~mask;
+		}
+	}
+
+	/**
+	 * Marks the current search as resumable by the same query.
+	 *
+	 * @param owner      the searcher, compared by identity. Only it can resume.
+	 * @param query      caller defined key identifying the query.
+	 * @param iterations iterations spent so far.
+	 * @param best       caller defined progress marker, such as the best tile.
+	 */
+	void suspend(Object owner, long query, int iterations, int best)
+	{
+		suspendedOwner = owner;
+		suspendedQuery = query;
+		suspendedGeneration = generation;
+		suspendedIterations = iterations;
+		suspendedBest = best;
+	}
+
+	/**
+	 * Takes over the search suspended for {@code query}, if the context still
+	 * holds it. The caller then continues instead of calling {@link #reset()}.
+	 *
+	 * @return {@code false} if a search has started since, or another owner or
+	 *         query was suspended.
+	 */
+	boolean resume(Object owner, long query)
+	{
+		if (suspendedGeneration != generation || suspendedOwner != owner || suspendedQuery != query)
+		{
+			return false;
+		}
+		suspendedGeneration = 0;
+		suspendedOwner = null;
+		return true;
+	}
+
+	/**
+	 * Per-tile {@link Node} slots for the legacy A*, allocated on first use.
+	 * Entries are stale unless the caller flagged the tile in this generation.
+	 */
+	Node[] getNodes()
+	{
+		if (nodes == null)
+		{
+			nodes = new Node[flags.length];
+		}
+		return nodes;
+	}
+}
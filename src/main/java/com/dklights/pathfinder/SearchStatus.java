@@ -0,0 +1,18 @@
+package com.dklights.pathfinder;
+
+/**
+ * Outcome of a time-bounded search, see
+ * {@link Pathfinder#findPath(int, int, PrimitiveIntList, long)}.
+ */
+public enum SearchStatus
+{
+	// The path reaches the target
+	FOUND,
+	// The budget ran out, the path leads to the explored tile closest to the target
+	PARTIAL,
+	// The iteration limit was hit, the path leads to the explored tile closest to
+	// the target; searching again from the same start gives the same path
+	LIMITED,
+	// The target cannot be reached, the path is empty
+	NOT_FOUND
+}
@@ -0,0 +1,433 @@
+package com.dklights.pathfinder;
+
+import com.dklights.enums.Transport;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import lombok.Getter;
+
+/**
+ * {@link Transport} edges expressed over {@link CollisionMap} tile indices,
+ * with forward (by origin) and reverse (by destination) adjacency in
+ * compressed sparse row form.
+ * <p>
+ * Edge ids are sorted by origin tile, so the edges leaving a tile are the
+ * contiguous range {@code [getOutgoingStart(tile), getOutgoingEnd(tile))}.
+ * Edges arriving at a tile are listed through
+ * {@link #getIncomingEdge(int)}.
+ * <p>
+ * Transports with an endpoint outside the collision grid (the Lumbridge cellar
+ * side of the bone door) are left out, as nothing there can be walked.
+ * <p>
+ * Plane-changing transports are also grouped into {@link Portal}s by origin
+ * and destination plane, with the two origin tiles of a staircase merged into
+ * one portal. From these the index precomputes the cheapest transport cost
+ * between every pair of planes and, for every tile, the Chebyshev distance to
+ * the nearest portal leaving its plane, which give cross-plane searches an
+ * admissible heuristic without scanning every transport.
+ */
+class TransportIndex
+{
+	static final int NO_ROUTE = -1;
+
+	private static final int PLANE_COUNT = CollisionMap.PLANE_COUNT;
+	private static final Portal[] NO_PORTALS = new Portal[0];
+
+	private final int[] origins;
+	private final int[] destinations;
+	private final int[] costs;
+
+	private final int[] outgoingOffsets;
+	private final int[] incomingOffsets;
+	private final int[] incomingEdges;
+
+	private final Portal[][] portals;
+	private final int[] planeLowerBounds;
+	private final int[] exitDistances;
+
+	TransportIndex(CollisionMap collisionMap)
+	{
+		final int tileCount = collisionMap.getTileCount();
+
+		int count = 0;
+		final int[] allOrigins = new int[Transport.values().length];
+		final int[] allDestinations = new int[allOrigins.length];
+		final int[] allCosts = new int[allOrigins.length];
+		for (Transport transport : Transport.values())
+		{
+			final int origin = collisionMap.getTileIndex(WorldPointUtil.packWorldPoint(transport.getOrigin()));
+			final int destination = collisionMap.getTileIndex(
+					WorldPointUtil.packWorldPoint(transport.getDestination()));
+			if (origin >= 0 && destination >= 0)
+			{
+				allOrigins[count] = origin;
+				allDestinations[count] = destination;
+				allCosts[count] = Math.max(transport.getDuration(), 1);
+				count++;
+			}
+		}
+
+		// Sort edge ids by origin so outgoing edges are contiguous
+		final Integer[] order = new Integer[count];
+		for (int i = 0; i < count; i++)
+		{
+			order[i] = i;
+		}
+		Arrays.sort(order, (a, b) -> Integer.compare(allOrigins[a], allOrigins[b]));
+
+		origins = new int[count];
+		destinations = new int[count];
+		costs = new int[count];
+		for (int i = 0; i < count; i++)
+		{
+			origins[i] = allOrigins[order[i]];
+			destinations[i] = allDestinations[order[i]];
+			costs[i] = allCosts[order[i]];
+		}
+
+		outgoingOffsets = new int[tileCount + 1];
+		incomingOffsets = new int[tileCount + 1];
+		for (int i = 0; i < count; i++)
+		{
+			outgoingOffsets[origins[i] + 1]++;
+			incomingOffsets[destinations[i] + 1]++;
+		}
+		for (int tile = 0; tile < tileCount; tile++)
+		{
+			outgoingOffsets[tile + 1] += outgoingOffsets[tile];
+			incomingOffsets[tile + 1] += incomingOffsets[tile];
+		}
+
+		incomingEdges = new int[count];
+		final int[] fill = Arrays.copyOf(incomingOffsets, tileCount);
+		for (int i = 0; i < count; i++)
+		{
+			incomingEdges[fill[destinations[i]]++] = i;
+		}
+
+		portals = buildPortals(collisionMap);
+		planeLowerBounds = buildPlaneLowerBounds();
+		exitDistances = buildExitDistances(collisionMap);
+	}
+
+	private Portal[][] buildPortals(CollisionMap collisionMap)
+	{
+		final List<List<Portal>> groups = new ArrayList<>();
+		for (int i = 0; i < PLANE_COUNT * PLANE_COUNT; i++)
+		{
+			groups.add(new ArrayList<>());
+		}
+
+		for (int edge = 0; edge < size(); edge++)
+		{
+			final int origin = collisionMap.getPackedPoint(origins[edge]);
+			final int destination = collisionMap.getPackedPoint(destinations[edge]);
+			final int originPlane = WorldPointUtil.unpackWorldPlane(origin);
+			final int destinationPlane = WorldPointUtil.unpackWorldPlane(destination);
+			if (originPlane == destinationPlane)
+			{
+				continue;
+			}
+
+			final List<Portal> group = groups.get(originPlane * PLANE_COUNT + destinationPlane);
+			final int x = WorldPointUtil.unpackWorldX(origin);
+			final int y = WorldPointUtil.unpackWorldY(origin);
+
+			boolean merged = false;
+			for (Portal portal : group)
+			{
+				if (portal.tryMerge(x, y, destination, costs[edge]))
+				{
+					merged = true;
+					break;
+				}
+			}
+
+			if (!merged)
+			{
+				group.add(new Portal(x, y, destination, costs[edge]));
+			}
+		}
+
+		final Portal[][] result = new Portal[groups.size()][];
+		for (int i = 0; i < groups.size(); i++)
+		{
+			result[i] = groups.get(i).isEmpty() ? NO_PORTALS : groups.get(i).toArray(NO_PORTALS);
+		}
+		return result;
+	}
+
+	// Floyd-Warshall over the planes, with the cheapest portal between each pair
+	private int[] buildPlaneLowerBounds()
+	{
+		final int[] bounds = new int[PLANE_COUNT * PLANE_COUNT];
+		Arrays.fill(bounds, NO_ROUTE);
+		for (int plane = 0; plane < PLANE_COUNT; plane++)
+		{
+			bounds[plane * PLANE_COUNT + plane] = 0;
+		}
+
+		for (int from = 0; from < PLANE_COUNT; from++)
+		{
+			for (int to = 0; to < PLANE_COUNT; to++)
+			{
+				for (Portal portal : getPortals(from, to))
+				{
+					final int index = from * PLANE_COUNT + to;
+					if (bounds[index] == NO_ROUTE || portal.getCost() < bounds[index])
+					{
+						bounds[index] = portal.getCost();
+					}
+				}
+			}
+		}
+
+		for (int via = 0; via < PLANE_COUNT; via++)
+		{
+			for (int from = 0; from < PLANE_COUNT; from++)
+			{
+				for (int to = 0; to < PLANE_COUNT; to++)
+				{
+					final int first = bounds[from * PLANE_COUNT + via];
+					final int second = bounds[via * PLANE_COUNT + to];
+					final int current = bounds[from * PLANE_COUNT + to];
+					if (first != NO_ROUTE && second != NO_ROUTE && (current == NO_ROUTE || first + second < current))
+					{
+						bounds[from * PLANE_COUNT + to] = first + second;
+					}
+				}
+			}
+		}
+		return bounds;
+	}
+
+	private int[] buildExitDistances(CollisionMap collisionMap)
+	{
+		final int[] distances = new int[collisionMap.getTileCount()];
+		for (int tile = 0; tile < distances.length; tile++)
+		{
+			final int point = collisionMap.getPackedPoint(tile);
+			final int x = WorldPointUtil.unpackWorldX(point);
+			final int y = WorldPointUtil.unpackWorldY(point);
+			final int plane = WorldPointUtil.unpackWorldPlane(point);
+
+			int best = NO_ROUTE;
+			for (int destinationPlane = 0; destinationPlane < PLANE_COUNT; destinationPlane++)
+			{
+				for (Portal portal : getPortals(plane, destinationPlane))
+				{
+					final int distance = portal.distanceToOrigin(x, y);
+					if (best == NO_ROUTE || distance < best)
+					{
+						best = distance;
+					}
+				}
+			}
+			distances[tile] = best;
+		}
+		return distances;
+	}
+
+	/**
+	 * @return number of transport edges.
+	 */
+	int size()
+	{
+		return origins.length;
+	}
+
+	int getOrigin(int edge)
+	{
+		return origins[edge];
+	}
+
+	int getDestination(int edge)
+	{
+		return destinations[edge];
+	}
+
+	/**
+	 * @return cost of taking the transport, at least one.
+	 */
+	int getCost(int edge)
+	{
+		return costs[edge];
+	}
+
+	boolean hasOutgoing(int tile)
+	{
+		return outgoingOffsets[tile] != outgoingOffsets[tile + 1];
+	}
+
+	/**
+	 * @return first edge id leaving {@code tile}.
+	 */
+	int getOutgoingStart(int tile)
+	{
+		return outgoingOffsets[tile];
+	}
+
+	/**
+	 * @return one past the last edge id leaving {@code tile}.
+	 */
+	int getOutgoingEnd(int tile)
+	{
+		return outgoingOffsets[tile + 1];
+	}
+
+	/**
+	 * @return first position in the incoming list for {@code tile}, see
+	 *         {@link #getIncomingEdge(int)}.
+	 */
+	int getIncomingStart(int tile)
+	{
+		return incomingOffsets[tile];
+	}
+
+	/**
+	 * @return one past the last position in the incoming list for {@code tile}.
+	 */
+	int getIncomingEnd(int tile)
+	{
+		return incomingOffsets[tile + 1];
+	}
+
+	/**
+	 * @param position position in {@code [getIncomingStart(tile),
+	 *                 getIncomingEnd(tile))}.
+	 * @return edge id arriving at the tile.
+	 */
+	int getIncomingEdge(int position)
+	{
+		return incomingEdges[position];
+	}
+
+	/**
+	 * @return plane-changing portals from {@code originPlane} to
+	 *         {@code destinationPlane}; empty if there are none.
+	 */
+	Portal[] getPortals(int originPlane, int destinationPlane)
+	{
+		return portals[originPlane * PLANE_COUNT + destinationPlane];
+	}
+
+	/**
+	 * @return the cheapest total transport cost of getting from
+	 *         {@code fromPlane} to {@code toPlane}, or {@link #NO_ROUTE}.
+	 */
+	int getPlaneLowerBound(int fromPlane, int toPlane)
+	{
+		return planeLowerBounds[fromPlane * PLANE_COUNT + toPlane];
+	}
+
+	/**
+	 * @return Chebyshev distance from {@code tile} to the nearest portal leaving
+	 *         its plane, or {@link #NO_ROUTE} if the plane has none.
+	 */
+	int getExitDistance(int tile)
+	{
+		return exitDistances[tile];
+	}
+
+	/**
+	 * @return Chebyshev distance from {@code (x, y)} to the nearest portal from
+	 *         {@code originPlane} to {@code destinationPlane}, or
+	 *         {@link #NO_ROUTE}.
+	 */
+	int getPortalDistance(int originPlane, int destinationPlane, int x, int y)
+	{
+		int best = NO_ROUTE;
+		for (Portal portal : getPortals(originPlane, destinationPlane))
+		{
+			final int distance = portal.distanceToOrigin(x, y);
+			if (best == NO_ROUTE || distance < best)
+			{
+				best = distance;
+			}
+		}
+		return best;
+	}
+
+	/**
+	 * Lower bound on the cost of arriving on {@code destinationPlane} by portal
+	 * and walking to within {@code slack} tiles of {@code (x, y)}.
+	 *
+	 * @return the cheapest portal cost plus remaining Chebyshev distance, or
+	 *         {@link #NO_ROUTE} if no portal leads to the plane.
+	 */
+	int getEntryCost(int destinationPlane, int x, int y, int slack)
+	{
+		int best = NO_ROUTE;
+		for (int originPlane = 0; originPlane < PLANE_COUNT; originPlane++)
+		{
+			for (Portal portal : getPortals(originPlane, destinationPlane))
+			{
+				final int destination = portal.getDestination();
+				final int dx = Math.abs(WorldPointUtil.unpackWorldX(destination) - x);
+				final int dy = Math.abs(WorldPointUtil.unpackWorldY(destination) - y);
+				final int cost = portal.getCost() + Math.max(Math.max(dx, dy) - slack, 0);
+				if (best == NO_ROUTE || cost < best)
+				{
+					best = cost;
+				}
+			}
+		}
+		return best;
+	}
+
+	/**
+	 * One or two adjacent origin tiles sharing a destination and cost, such as
+	 * the two tiles in front of a staircase. The origin is kept as a bounding
+	 * box, so {@link #distanceToOrigin(int, int)} is the distance to the closer
+	 * tile.
+	 */
+	static final class Portal
+	{
+		private int minX;
+		private int maxX;
+		private int minY;
+		private int maxY;
+		@Getter
+		private final int destination;
+		@Getter
+		private final int cost;
+
+		Portal(int x, int y, int destination, int cost)
+		{
+			this.minX = this.maxX = x;
+			this.minY = this.maxY = y;
+			this.destination = destination;
+			this.cost = cost;
+		}
+
+		int distanceToOrigin(int x, int y)
+		{
+			final int dx = Math.max(Math.max(minX - x, x - maxX), 0);
+			final int dy = Math.max(Math.max(minY - y, y - maxY), 0);
+			return Math.max(dx, dy);
+		}
+
+		private boolean tryMerge(int x, int y, int otherDestination, int otherCost)
+		{
+			if (otherDestination != destination || otherCost != cost)
+			{
+				return false;
+			}
+
+			// Only merge into a two tile pair, so the box holds no tile that is not
+			// an origin
+			final int width = Math.max(maxX, x) - Math.min(minX, x);
+			final int height = Math.max(maxY, y) - Math.min(minY, y);
+			if (width + height > 1)
+			{
+				return false;
+			}
+
+			minX = Math.min(minX, x);
+			maxX = Math.max(maxX, x);
+			minY = Math.min(minY, y);
+			maxY = Math.max(maxY, y);
+			return true;
+		}
+	}
+}
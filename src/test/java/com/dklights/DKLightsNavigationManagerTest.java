@@ -0,0 +1,314 @@
+package com.dklights;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import com.dklights.enums.InventoryState;
+import com.dklights.enums.PathfinderEngine;
+import com.dklights.pathfinder.Pathfinder;
+import com.dklights.pathfinder.SearchStatus;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import net.runelite.api.coords.WorldPoint;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class DKLightsNavigationManagerTest
+{
+	private static final long BUDGET = TimeUnit.MILLISECONDS.toNanos(2);
+
+	private static final WorldPoint START = new WorldPoint(2740, 5300, 0);
+
+	private ExecutorService executor;
+	private RecordingPathfinder pathfinder;
+	private DKLightsNavigationManager manager;
+
+	@Before
+	public void setUp() throws IOException
+	{
+		executor = Executors.newSingleThreadExecutor();
+		pathfinder = new RecordingPathfinder();
+		final DKLightsConfig config = new DKLightsConfig()
+		{
+			@Override
+			public PathfinderEngine pathfinderEngine()
+			{
+				return PathfinderEngine.PACKED;
+			}
+		};
+		manager = new DKLightsNavigationManager(null, config, pathfinder, executor);
+	}
+
+	@After
+	public void tearDown()
+	{
+		executor.shutdownNow();
+	}
+
+	@Test
+	public void partialPathsFallBackToAnUnbudgetedSearch() throws Exception
+	{
+		pathfinder.status = SearchStatus.PARTIAL;
+		for (int i = 0; i < 6; i++)
+		{
+			// The player keeps walking, so no slice can resume the last one
+			update(InventoryState.NO_LIGHT_BULBS, START.dx(i));
+		}
+		assertEquals(Arrays.asList(BUDGET, BUDGET, BUDGET, BUDGET, 0L, 0L), pathfinder.budgets);
+	}
+
+	@Test
+	public void completePathOrNewTargetRestoresTheBudget() throws Exception
+	{
+		pathfinder.status = SearchStatus.PARTIAL;
+		for (int i = 0; i < 4; i++)
+		{
+			update(InventoryState.NO_LIGHT_BULBS, START.dx(i));
+		}
+
+		pathfinder.status = SearchStatus.FOUND;
+		update(InventoryState.NO_LIGHT_BULBS, START.dx(4));
+		update(InventoryState.NO_LIGHT_BULBS, START.dx(5));
+
+		pathfinder.status = SearchStatus.PARTIAL;
+		for (int i = 6; i < 10; i++)
+		{
+			update(InventoryState.NO_LIGHT_BULBS, START.dx(i));
+		}
+		update(InventoryState.ONLY_EMPTY_BULBS, START.dx(10));
+
+		assertEquals(Arrays.asList(BUDGET, BUDGET, BUDGET, BUDGET, 0L, BUDGET, BUDGET, BUDGET, BUDGET, BUDGET,
+				BUDGET), pathfinder.budgets);
+	}
+
+	@Test
+	public void supersededRequestsAreDroppedUnrun() throws Exception
+	{
+		pathfinder.gate = new CountDownLatch(1);
+		manager.update(snapshot(InventoryState.NO_LIGHT_BULBS), START, null);
+		pathfinder.started.await();
+
+		// Each of these replaces the one before it while the first is still running
+		for (int i = 1; i <= 3; i++)
+		{
+			manager.update(snapshot(InventoryState.NO_LIGHT_BULBS), START.dx(i), null);
+		}
+		pathfinder.gate.countDown();
+		awaitRequests();
+
+		assertTrue("Running request was not interrupted", pathfinder.interrupted);
+		assertEquals(Arrays.asList(START, START.dx(3)), pathfinder.starts);
+		assertEquals(START.dx(3), manager.getPathResult().getPath().get(0));
+	}
+
+	@Test
+	public void cancelledRequestsNeverRun() throws Exception
+	{
+		pathfinder.gate = new CountDownLatch(1);
+		manager.update(snapshot(InventoryState.NO_LIGHT_BULBS), START, null);
+		pathfinder.started.await();
+		manager.update(snapshot(InventoryState.NO_LIGHT_BULBS), START.dx(1), null);
+
+		manager.clearPathAndTarget();
+		pathfinder.gate.countDown();
+		awaitRequests();
+
+		assertEquals(Collections.singletonList(START), pathfinder.starts);
+	}
+
+	@Test
+	public void unchangedRequestIsNotResubmittedWhileRunning() throws Exception
+	{
+		pathfinder.gate = new CountDownLatch(1);
+		manager.update(snapshot(InventoryState.NO_LIGHT_BULBS), START, null);
+		pathfinder.started.await();
+		for (int i = 0; i < 3; i++)
+		{
+			manager.update(snapshot(InventoryState.NO_LIGHT_BULBS), START, null);
+		}
+		pathfinder.gate.countDown();
+		awaitRequests();
+
+		assertFalse("Running request was interrupted", pathfinder.interrupted);
+		assertEquals(Collections.singletonList(START), pathfinder.starts);
+	}
+
+	@Test
+	public void onlyPartialPathsAreSearchedAgain() throws Exception
+	{
+		pathfinder.status = SearchStatus.PARTIAL;
+		update(InventoryState.NO_LIGHT_BULBS, START);
+		update(InventoryState.NO_LIGHT_BULBS, START);
+		assertEquals(2, pathfinder.starts.size());
+
+		pathfinder.status = SearchStatus.LIMITED;
+		update(InventoryState.NO_LIGHT_BULBS, START);
+		update(InventoryState.NO_LIGHT_BULBS, START);
+		assertEquals(3, pathfinder.starts.size());
+
+		// A new input still searches again
+		update(InventoryState.ONLY_EMPTY_BULBS, START);
+		assertEquals(4, pathfinder.starts.size());
+	}
+
+	@Test
+	public void walkingAlongASettledPathTrimsIt() throws Exception
+	{
+		pathfinder.steps = 3;
+		update(InventoryState.NO_LIGHT_BULBS, START);
+		update(InventoryState.NO_LIGHT_BULBS, START.dx(2));
+		assertEquals(Collections.singletonList(START), pathfinder.starts);
+		assertEquals(START.dx(2), manager.getPathResult().getPath().get(0));
+		assertEquals(3, manager.getPathResult().getDistance());
+
+		// Stepping off the path tries to reconnect first, then searches again
+		update(InventoryState.NO_LIGHT_BULBS, START.dy(1));
+		assertEquals(Collections.singletonList(START.dy(1)), pathfinder.repairs);
+		assertEquals(Arrays.asList(START, START.dy(1)), pathfinder.starts);
+	}
+
+	@Test
+	public void smallDetoursAreRepairedWithoutSearching() throws Exception
+	{
+		pathfinder.steps = 3;
+		update(InventoryState.NO_LIGHT_BULBS, START);
+
+		final WorldPoint detour = START.dx(1).dy(1);
+		pathfinder.repair = Arrays.asList(detour, START.dx(2), START.dx(3));
+		update(InventoryState.NO_LIGHT_BULBS, detour);
+		assertEquals(Collections.singletonList(START), pathfinder.starts);
+		assertEquals(pathfinder.repair, manager.getPathResult().getPath());
+
+		// The repaired path is settled, so standing still does nothing
+		update(InventoryState.NO_LIGHT_BULBS, detour);
+		assertEquals(Collections.singletonList(detour), pathfinder.repairs);
+	}
+
+	@Test
+	public void estimatesAreNeverRepaired() throws Exception
+	{
+		pathfinder.status = SearchStatus.NOT_FOUND;
+		pathfinder.empty = true;
+		update(InventoryState.NO_LIGHT_BULBS, START);
+		assertTrue(manager.getPathResult().isEstimate());
+
+		update(InventoryState.NO_LIGHT_BULBS, START.dx(1));
+		assertTrue(pathfinder.repairs.isEmpty());
+		assertEquals(Arrays.asList(START, START.dx(1)), pathfinder.starts);
+	}
+
+	/**
+	 * Runs one tick and waits for the search it submitted.
+	 */
+	private void update(InventoryState inventoryState, WorldPoint playerLocation)
+			throws InterruptedException, ExecutionException
+	{
+		manager.update(snapshot(inventoryState), playerLocation, null);
+		awaitRequests();
+	}
+
+	private static WorldStateSnapshot snapshot(InventoryState inventoryState)
+	{
+		return WorldStateSnapshot.EMPTY.update(0, Collections.emptyMap(), Collections.emptyMap(), inventoryState);
+	}
+
+	/**
+	 * Waits until the drain task has emptied the mailbox.
+	 */
+	private void awaitRequests() throws InterruptedException, ExecutionException
+	{
+		executor.submit(() ->
+		{
+		}).get();
+	}
+
+	/**
+	 * Answers every budgeted search with a fixed status and a straight path of
+	 * {@code steps} tiles east before the target, or no path if {@code empty},
+	 * and records the starts and budgets it was given. Detours are answered
+	 * with {@code repair}. With a gate set, the first search waits for it to
+	 * open.
+	 */
+	private static class RecordingPathfinder extends Pathfinder
+	{
+		private final List<Long> budgets = Collections.synchronizedList(new ArrayList<>());
+		private final List<WorldPoint> starts = Collections.synchronizedList(new ArrayList<>());
+		private final CountDownLatch started = new CountDownLatch(1);
+		private volatile SearchStatus status = SearchStatus.FOUND;
+		private volatile CountDownLatch gate;
+		private volatile boolean interrupted;
+		private volatile int steps;
+		private volatile boolean empty;
+		private final List<WorldPoint> repairs = Collections.synchronizedList(new ArrayList<>());
+		private volatile List<WorldPoint> repair = Collections.emptyList();
+
+		RecordingPathfinder() throws IOException
+		{
+		}
+
+		@Override
+		public SearchStatus findPath(WorldPoint start, WorldPoint end, long budgetNanos, List<WorldPoint> path)
+		{
+			budgets.add(budgetNanos);
+			starts.add(start);
+			if (started.getCount() > 0)
+			{
+				started.countDown();
+				awaitGate();
+			}
+			path.clear();
+			if (empty)
+			{
+				return status;
+			}
+			for (int i = 0; i <= steps; i++)
+			{
+				path.add(start.dx(i));
+			}
+			path.add(end);
+			return status;
+		}
+
+		@Override
+		public List<WorldPoint> repairPath(WorldPoint start, List<WorldPoint> path, int maxSteps)
+		{
+			repairs.add(start);
+			return new ArrayList<>(repair);
+		}
+
+		private void awaitGate()
+		{
+			if (gate == null)
+			{
+				return;
+			}
+			while (true)
+			{
+				try
+				{
+					gate.await();
+					break;
+				}
+				catch (InterruptedException e)
+				{
+					interrupted = true;
+				}
+			}
+			if (interrupted)
+			{
+				// Hand the interrupt back so the manager sees it as it would a search's
+				Thread.currentThread().interrupt();
+			}
+		}
+	}
+}
@@ -0,0 +1,95 @@
+package com.dklights;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import com.dklights.enums.Lamp;
+import com.dklights.enums.TargetType;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import net.runelite.api.coords.WorldPoint;
+import org.junit.Test;
+
+public class PathResultTest
+{
+	private static final WorldPoint START = new WorldPoint(2740, 5300, 0);
+
+	private static final List<WorldPoint> PATH = Arrays.asList(START, START.dx(1), START.dx(1).dy(1),
+			START.dx(2).dy(1), new WorldPoint(2742, 5301, 1));
+
+	@Test
+	public void indexOfAndContainsFindEveryPoint()
+	{
+		final PathResult result = PathResult.of(PATH, TargetType.BANK, null, 0);
+		for (int i = 0; i < PATH.size(); i++)
+		{
+			assertEquals(i, result.indexOf(PATH.get(i)));
+			assertTrue(result.contains(PATH.get(i)));
+		}
+
+		// Same tile on another plane
+		final WorldPoint otherPlane = new WorldPoint(2740, 5300, 1);
+		assertEquals(-1, result.indexOf(otherPlane));
+		assertFalse(result.contains(otherPlane));
+		assertEquals(-1, PathResult.EMPTY.indexOf(START));
+		assertFalse(PathResult.EMPTY.contains(START));
+	}
+
+	@Test
+	public void withoutPrefixDropsWalkedPoints()
+	{
+		final PathResult result = PathResult.of(PATH, TargetType.LAMP, Lamp.values()[0], 7);
+		assertSame(result, result.withoutPrefix(0));
+
+		final PathResult trimmed = result.withoutPrefix(2);
+		assertEquals(PATH.subList(2, PATH.size()), trimmed.getPath());
+		assertEquals(PATH.size() - 2, trimmed.getDistance());
+		assertEquals(TargetType.LAMP, trimmed.getTargetType());
+		assertSame(result.getTargetLamp(), trimmed.getTargetLamp());
+		assertEquals(7, trimmed.getVersion());
+		assertEquals(0, trimmed.indexOf(PATH.get(2)));
+		assertFalse(trimmed.contains(START));
+
+		final PathResult finished = result.withoutPrefix(PATH.size());
+		assertTrue(finished.isEmpty());
+		assertEquals(0, finished.getDistance());
+	}
+
+	@Test
+	public void estimatesAreStraightLines()
+	{
+		final WorldPoint target = START.dx(5).dy(2);
+		final PathResult estimate = PathResult.estimate(START, target, TargetType.BANK);
+		assertTrue(estimate.isEstimate());
+		assertEquals(Arrays.asList(START, target), estimate.getPath());
+		assertEquals(5, estimate.getDistance());
+		assertTrue(estimate.withoutPrefix(1).isEstimate());
+		assertFalse(PathResult.of(PATH, TargetType.BANK, null, 0).isEstimate());
+
+		// A one tile estimate is shorter than its two points
+		assertEquals(0, PathResult.estimate(START, START.dx(1), TargetType.BANK).withoutPrefix(2).getDistance());
+	}
+
+	@Test
+	public void resultsDoNotShareTheCallersList()
+	{
+		final List<WorldPoint> path = new ArrayList<>(PATH);
+		final PathResult result = PathResult.of(path, TargetType.BANK, null, 0);
+		path.clear();
+		assertEquals(PATH, result.getPath());
+
+		try
+		{
+			result.getPath().clear();
+			fail("Published path is modifiable");
+		}
+		catch (UnsupportedOperationException e)
+		{
+			assertEquals(PATH, result.getPath());
+		}
+	}
+}
@@ -0,0 +1,102 @@
+package com.dklights;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import com.dklights.enums.Direction;
+import com.dklights.enums.InventoryState;
+import com.dklights.enums.Lamp;
+import com.dklights.enums.LampStatus;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.Map;
+import java.util.Set;
+import org.junit.Test;
+
+public class WorldStateSnapshotTest
+{
+	private static final Lamp[] LAMPS = Lamp.values();
+
+	@Test
+	public void unchangedTickReturnsTheSameSnapshot()
+	{
+		final WorldStateSnapshot first = WorldStateSnapshot.EMPTY.update(1, statuses(LAMPS[0]),
+				walls(LAMPS[0], Direction.NORTH), InventoryState.NO_LIGHT_BULBS);
+		assertSame(first, first.update(1, statuses(LAMPS[0]), walls(LAMPS[0], Direction.NORTH),
+				InventoryState.NO_LIGHT_BULBS));
+	}
+
+	@Test
+	public void unchangedWallsAreShared()
+	{
+		final WorldStateSnapshot first = WorldStateSnapshot.EMPTY.update(1, statuses(LAMPS[0]),
+				walls(LAMPS[0], Direction.NORTH), InventoryState.NO_LIGHT_BULBS);
+
+		final WorldStateSnapshot inventoryChanged = first.update(1, statuses(LAMPS[0]),
+				walls(LAMPS[0], Direction.NORTH), InventoryState.ONLY_EMPTY_BULBS);
+		assertNotSame(first, inventoryChanged);
+		assertEquals(InventoryState.ONLY_EMPTY_BULBS, inventoryChanged.getInventoryState());
+		assertSame(first.getLampWalls(), inventoryChanged.getLampWalls());
+
+		// A lamp breaking bumps the lamp state version but leaves the walls alone
+		final WorldStateSnapshot lampBroke = inventoryChanged.update(2, statuses(LAMPS[0], LAMPS[1]),
+				walls(LAMPS[0], Direction.NORTH), InventoryState.ONLY_EMPTY_BULBS);
+		assertEquals(2, lampBroke.getLampStateVersion());
+		assertTrue(lampBroke.isBroken(LAMPS[1]));
+		assertSame(first.getLampWalls(), lampBroke.getLampWalls());
+
+		final WorldStateSnapshot wallsChanged = lampBroke.update(3, statuses(LAMPS[0], LAMPS[1]),
+				walls(LAMPS[0], Direction.SOUTH), InventoryState.ONLY_EMPTY_BULBS);
+		assertNotSame(first.getLampWalls(), wallsChanged.getLampWalls());
+		assertEquals(EnumSet.of(Direction.SOUTH), wallsChanged.getLampWalls().get(LAMPS[0]));
+	}
+
+	@Test
+	public void lampsAndWallsArePackedPerOrdinal()
+	{
+		final Lamp last = LAMPS[LAMPS.length - 1];
+		final Map<Lamp, Set<Direction>> walls = new EnumMap<>(Lamp.class);
+		walls.put(LAMPS[0], EnumSet.of(Direction.WEST, Direction.NORTH_EAST));
+		walls.put(last, EnumSet.allOf(Direction.class));
+		walls.put(LAMPS[1], Collections.emptySet());
+
+		final WorldStateSnapshot snapshot = WorldStateSnapshot.EMPTY.update(1, statuses(LAMPS[1], last), walls,
+				InventoryState.HAS_WORKING_BULBS);
+		assertEquals(EnumSet.of(LAMPS[1], last), snapshot.getBrokenLamps());
+		assertFalse(snapshot.isBroken(LAMPS[0]));
+
+		assertEquals(1 << Direction.WEST.ordinal() | 1 << Direction.NORTH_EAST.ordinal(),
+				snapshot.getWalledDirections(LAMPS[0]));
+		assertEquals(0xFF, snapshot.getWalledDirections(last));
+		assertEquals(0, snapshot.getWalledDirections(LAMPS[1]));
+
+		// Lamps without walls are left out of the map the pathfinder takes
+		assertEquals(EnumSet.of(LAMPS[0], last), snapshot.getLampWalls().keySet());
+		assertEquals(walls.get(last), snapshot.getLampWalls().get(last));
+	}
+
+	private static Map<Lamp, LampStatus> statuses(Lamp... broken)
+	{
+		final Map<Lamp, LampStatus> statuses = new EnumMap<>(Lamp.class);
+		for (Lamp lamp : LAMPS)
+		{
+			statuses.put(lamp, LampStatus.WORKING);
+		}
+		for (Lamp lamp : broken)
+		{
+			statuses.put(lamp, LampStatus.BROKEN);
+		}
+		return statuses;
+	}
+
+	private static Map<Lamp, Set<Direction>> walls(Lamp lamp, Direction direction)
+	{
+		final Map<Lamp, Set<Direction>> walls = new EnumMap<>(Lamp.class);
+		walls.put(lamp, EnumSet.of(direction));
+		return walls;
+	}
+}
@@ -0,0 +1,64 @@
+package com.dklights.pathfinder;
+
+import static org.junit.Assert.assertTrue;
+
+import com.dklights.enums.Lamp;
+import com.dklights.enums.PathfinderEngine;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.Random;
+import org.junit.Before;
+import org.junit.Test;
+
+public class BidirectionalSearchTest
+{
+	private ReferenceGraph graph;
+	private Pathfinder pathfinder;
+
+	@Before
+	public void setUp() throws IOException
+	{
+		graph = ReferenceGraph.load();
+		pathfinder = new Pathfinder();
+		pathfinder.setEngine(PathfinderEngine.BIDIRECTIONAL);
+	}
+
+	@Test
+	public void pathsAreShortest()
+	{
+		graph.assertShortestPaths("BIDIRECTIONAL", pathfinder::findPath, 400, 1, 0);
+	}
+
+	@Test
+	public void crossPlanePathsAreShortest()
+	{
+		// Off the target plane both estimates come from the portal chains
+		final Random random = new Random(6);
+		final Lamp[] lamps = Lamp.values();
+		final PrimitiveIntList path = new PrimitiveIntList();
+		int checked = 0;
+		for (int q = 0; q < 1000 && checked < 200; q++)
+		{
+			final int start = graph.randomWalkablePoint(random);
+			final int end = WorldPointUtil.packWorldPoint(lamps[random.nextInt(lamps.length)].getWorldPoint());
+			if (WorldPointUtil.unpackWorldPlane(start) == WorldPointUtil.unpackWorldPlane(end))
+			{
+				continue;
+			}
+
+			final PrimitiveIntList goals = graph.getApproachTiles(end, Collections.emptySet());
+			final int cost = graph.cheapest(graph.getCosts(start), goals);
+			if (cost == ReferenceGraph.UNREACHABLE)
+			{
+				continue;
+			}
+
+			final String query = "BIDIRECTIONAL from " + WorldPointUtil.unpackWorldPoint(start) + " to "
+					+ WorldPointUtil.unpackWorldPoint(end);
+			assertTrue(query + " found nothing", pathfinder.findPath(start, end, path));
+			graph.assertPath(query, path, start, goals, cost, 0);
+			checked++;
+		}
+		assertTrue("Only " + checked + " cross-plane queries", checked >= 100);
+	}
+}
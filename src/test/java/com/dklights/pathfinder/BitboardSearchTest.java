@@ -0,0 +1,36 @@
+package com.dklights.pathfinder;
+
+import static org.junit.Assert.assertEquals;
+
+import com.dklights.enums.PathfinderEngine;
+import java.io.IOException;
+import org.junit.Before;
+import org.junit.Test;
+
+public class BitboardSearchTest
+{
+	private ReferenceGraph graph;
+	private Pathfinder pathfinder;
+
+	@Before
+	public void setUp() throws IOException
+	{
+		graph = ReferenceGraph.load();
+		pathfinder = new Pathfinder();
+		pathfinder.setEngine(PathfinderEngine.BITBOARD);
+	}
+
+	@Test
+	public void gridFitsOneLongPerRow()
+	{
+		// Otherwise the engine quietly falls back to the packed search
+		assertEquals(Long.SIZE, graph.getCollisionMap().getGridWidth());
+	}
+
+	@Test
+	public void nearestPathsAreShortest()
+	{
+		graph.assertShortestNearestPaths("BITBOARD",
+				(start, targets, walls, version) -> pathfinder.findNearestPath(start, targets, walls, version), 600, 2, 0);
+	}
+}
@@ -0,0 +1,103 @@
+package com.dklights.pathfinder;
+
+import static org.junit.Assert.assertEquals;
+
+import com.dklights.enums.Direction;
+import java.io.IOException;
+import org.junit.Before;
+import org.junit.Test;
+
+public class CollisionMapTest
+{
+	private static final Direction[] DIRECTIONS = Direction.values();
+
+	private CollisionMap collisionMap;
+
+	@Before
+	public void setUp() throws IOException
+	{
+		collisionMap = ReferenceGraph.load().getCollisionMap();
+	}
+
+	@Test
+	public void tileIndicesRoundTrip()
+	{
+		for (int tile = 0; tile < collisionMap.getTileCount(); tile++)
+		{
+			assertEquals(tile, collisionMap.getTileIndex(collisionMap.getPackedPoint(tile)));
+		}
+	}
+
+	@Test
+	public void pointsOutsideTheGridHaveNoTile()
+	{
+		final int first = collisionMap.getPackedPoint(0);
+		final int x = WorldPointUtil.unpackWorldX(first);
+		final int y = WorldPointUtil.unpackWorldY(first);
+		assertEquals(-1, collisionMap.getTileIndex(x - 1, y, 0));
+		assertEquals(-1, collisionMap.getTileIndex(x, y - 1, 0));
+		assertEquals(-1, collisionMap.getTileIndex(x, y, CollisionMap.PLANE_COUNT));
+		assertEquals(0, collisionMap.getTraversableDirections(x - 1, y, 0));
+	}
+
+	@Test
+	public void masksMatchCollisionFlags()
+	{
+		for (int tile = 0; tile < collisionMap.getTileCount(); tile++)
+		{
+			final int point = collisionMap.getPackedPoint(tile);
+			final int x = WorldPointUtil.unpackWorldX(point);
+			final int y = WorldPointUtil.unpackWorldY(point);
+			final int z = WorldPointUtil.unpackWorldPlane(point);
+
+			final int mask = collisionMap.getTraversableDirections(tile);
+			assertEquals(mask, collisionMap.getTraversableDirections(x, y, z));
+			for (int d = 0; d < DIRECTIONS.length; d++)
+			{
+				final Direction direction = DIRECTIONS[d];
+				final boolean inGrid = collisionMap.getTileIndex(x + direction.getX(), y + direction.getY(), z) >= 0;
+				final boolean expected = inGrid && canStep(x, y, z, direction);
+				assertEquals(direction + " from " + WorldPointUtil.unpackWorldPoint(point), expected,
+						(mask & (1 << d)) != 0);
+			}
+		}
+	}
+
+	@Test
+	public void neighborIndicesMatchCoordinates()
+	{
+		for (int tile = 0; tile < collisionMap.getTileCount(); tile++)
+		{
+			final int point = collisionMap.getPackedPoint(tile);
+			final int mask = collisionMap.getTraversableDirections(tile);
+			for (int d = 0; d < DIRECTIONS.length; d++)
+			{
+				if ((mask & (1 << d)) != 0)
+				{
+					assertEquals(collisionMap.getTileIndex(WorldPointUtil.dxdy(point, DIRECTIONS[d].getX(),
+							DIRECTIONS[d].getY())), collisionMap.getNeighborTileIndex(tile, d));
+				}
+			}
+		}
+	}
+
+	/**
+	 * The movement rules checked flag by flag: a diagonal step needs both
+	 * cardinal steps around the corner to be open.
+	 */
+	private boolean canStep(int x, int y, int z, Direction direction)
+	{
+		final int dx = direction.getX();
+		final int dy = direction.getY();
+		final boolean vertical = dy > 0 ? collisionMap.n(x, y, z) : dy < 0 ? collisionMap.s(x, y, z) : true;
+		final boolean horizontal = dx > 0 ? collisionMap.e(x, y, z) : dx < 0 ? collisionMap.w(x, y, z) : true;
+		if (dx == 0 || dy == 0)
+		{
+			return vertical && horizontal;
+		}
+
+		final boolean acrossTop = dx > 0 ? collisionMap.e(x, y + dy, z) : collisionMap.w(x, y + dy, z);
+		final boolean acrossSide = dy > 0 ? collisionMap.n(x + dx, y, z) : collisionMap.s(x + dx, y, z);
+		return vertical && horizontal && acrossTop && acrossSide;
+	}
+}
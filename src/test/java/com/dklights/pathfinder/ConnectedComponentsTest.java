@@ -0,0 +1,70 @@
+package com.dklights.pathfinder;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import com.dklights.enums.PathfinderEngine;
+import java.io.IOException;
+import java.util.Random;
+import org.junit.Before;
+import org.junit.Test;
+
+public class ConnectedComponentsTest
+{
+	private ReferenceGraph graph;
+	private CollisionMap collisionMap;
+	private ConnectedComponents components;
+
+	@Before
+	public void setUp() throws IOException
+	{
+		graph = ReferenceGraph.load();
+		collisionMap = graph.getCollisionMap();
+		components = new ConnectedComponents(collisionMap, new TransportIndex(collisionMap));
+	}
+
+	@Test
+	public void reachableTilesShareTheStartComponent()
+	{
+		final Random random = new Random(6);
+		for (int q = 0; q < 20; q++)
+		{
+			final int start = graph.randomWalkablePoint(random);
+			final int startTile = collisionMap.getTileIndex(start);
+			final int[] costs = graph.getCosts(start);
+			for (int tile : graph.getWalkableTiles())
+			{
+				if (costs[tile] != ReferenceGraph.UNREACHABLE)
+				{
+					assertTrue(WorldPointUtil.unpackWorldPoint(collisionMap.getPackedPoint(tile))
+							+ " is reachable from " + WorldPointUtil.unpackWorldPoint(start),
+							components.isConnected(startTile, tile));
+				}
+			}
+		}
+	}
+
+	@Test
+	public void targetsInAnotherComponentAreRejected() throws IOException
+	{
+		final int[] walkableTiles = graph.getWalkableTiles();
+		final int startTile = walkableTiles[0];
+		int otherTile = -1;
+		for (int tile : walkableTiles)
+		{
+			if (!components.isConnected(startTile, tile))
+			{
+				otherTile = tile;
+				break;
+			}
+		}
+		assertTrue("Every walkable tile is in one component", otherTile >= 0);
+
+		final Pathfinder pathfinder = new Pathfinder();
+		pathfinder.setEngine(PathfinderEngine.PACKED);
+		final PrimitiveIntList path = new PrimitiveIntList();
+		assertFalse(pathfinder.findPath(collisionMap.getPackedPoint(startTile), collisionMap.getPackedPoint(otherTile),
+				path));
+		assertTrue(path.isEmpty());
+	}
+}
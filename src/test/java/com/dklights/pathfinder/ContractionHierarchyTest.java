@@ -0,0 +1,107 @@
+package com.dklights.pathfinder;
+
+import static org.junit.Assert.assertNull;
+
+import com.dklights.enums.PathfinderEngine;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicReference;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+public class ContractionHierarchyTest
+{
+	private static ReferenceGraph graph;
+	private static ContractionHierarchy hierarchy;
+
+	@BeforeClass
+	public static void setUp() throws IOException
+	{
+		graph = ReferenceGraph.load();
+		final CollisionMap collisionMap = graph.getCollisionMap();
+		final TransportIndex transports = new TransportIndex(collisionMap);
+		hierarchy = new ContractionHierarchy(collisionMap, transports, new ConnectedComponents(collisionMap, transports),
+				SearchContext.perThread(collisionMap.getTileCount()), SearchContext.perThread(collisionMap.getTileCount()),
+				10000, 512);
+	}
+
+	@Test
+	public void pathsAreShortest()
+	{
+		graph.assertShortestPaths("CONTRACTION",
+				(start, end, path) -> hierarchy.findPath(start, end, path) == SearchStatus.FOUND, 400, 1, 0);
+	}
+
+	@Test
+	public void reusedScratchGivesTheSameResultsOnEveryThread() throws InterruptedException
+	{
+		final Random random = new Random(7);
+		final int[] starts = new int[100];
+		final int[] ends = new int[starts.length];
+		final List<PrimitiveIntList> expected = new ArrayList<>();
+		for (int q = 0; q < starts.length; q++)
+		{
+			starts[q] = graph.randomWalkablePoint(random);
+			ends[q] = graph.randomWalkablePoint(random);
+			final PrimitiveIntList path = new PrimitiveIntList();
+			hierarchy.findPath(starts[q], ends[q], path);
+			expected.add(path);
+		}
+
+		final List<Thread> threads = new ArrayList<>();
+		final AtomicReference<String> failure = new AtomicReference<>();
+		for (int t = 0; t < 4; t++)
+		{
+			final int offset = t;
+			final Thread thread = new Thread(() ->
+			{
+				final PrimitiveIntList path = new PrimitiveIntList();
+				for (int i = 0; i < starts.length; i++)
+				{
+					final int q = (i + offset * 25) % starts.length;
+					hierarchy.findPath(starts[q], ends[q], path);
+					if (!samePath(path, expected.get(q)))
+					{
+						failure.compareAndSet(null, "Query " + q + " differs on thread " + offset);
+					}
+				}
+			});
+			threads.add(thread);
+			thread.start();
+		}
+		for (Thread thread : threads)
+		{
+			thread.join();
+		}
+		assertNull(failure.get());
+	}
+
+	@Test
+	public void packedSearchAnswersWhileTheHierarchyBuilds() throws IOException
+	{
+		final Pathfinder pathfinder = new Pathfinder();
+		pathfinder.setEngine(PathfinderEngine.CONTRACTION);
+		assertNull(pathfinder.getContractionHierarchy());
+
+		// Answered at once, without waiting for the build the first query started
+		graph.assertShortestPaths("CONTRACTION fallback", pathfinder::findPath, 20, 2, 0);
+	}
+
+	private static boolean samePath(PrimitiveIntList first, PrimitiveIntList second)
+	{
+		if (first.size() != second.size())
+		{
+			return false;
+		}
+		for (int i = 0; i < first.size(); i++)
+		{
+			if (first.get(i) != second.get(i))
+			{
+				return false;
+			}
+		}
+		return true;
+	}
+}
@@ -0,0 +1,104 @@
+package com.dklights.pathfinder;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+
+import com.dklights.enums.Lamp;
+import com.dklights.enums.PathfinderEngine;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import net.runelite.api.coords.WorldPoint;
+import org.junit.Before;
+import org.junit.Test;
+
+public class DStarLiteSessionTest
+{
+	private ReferenceGraph graph;
+	private Pathfinder pathfinder;
+	private ReferenceGraph.NearestQuery nearestQuery;
+
+	@Before
+	public void setUp() throws IOException
+	{
+		graph = ReferenceGraph.load();
+		pathfinder = new Pathfinder();
+		pathfinder.setEngine(PathfinderEngine.INCREMENTAL);
+		nearestQuery = (start, targets, walls, version) -> pathfinder.findNearestPath(start, targets, walls, version);
+	}
+
+	@Test
+	public void pathsAreShortest()
+	{
+		graph.assertShortestPaths("INCREMENTAL", pathfinder::findPath, 400, 1, 0);
+	}
+
+	@Test
+	public void nearestPathsAreShortest()
+	{
+		graph.assertShortestNearestPaths("INCREMENTAL", nearestQuery, 600, 2, 0);
+	}
+
+	@Test
+	public void walkingAlongThePathReusesTheSession()
+	{
+		final Random random = new Random(5);
+		final Lamp[] lamps = Lamp.values();
+		for (int q = 0; q < 20; q++)
+		{
+			final Set<WorldPoint> targets = ReferenceGraph.lampsAt(lamps[random.nextInt(lamps.length)].getWorldPoint(),
+					lamps[random.nextInt(lamps.length)].getWorldPoint());
+			final PrimitiveIntList path = graph.assertShortestNearestPath("INCREMENTAL", nearestQuery,
+					graph.randomWalkablePoint(random), targets);
+			if (path == null)
+			{
+				continue;
+			}
+
+			// Same lamp state version, so every step moves the session's start
+			final PrimitiveIntList goals = approachTiles(targets);
+			for (int i = 1; i < path.size(); i += 3)
+			{
+				final int start = path.get(i);
+				final List<WorldPoint> walked = pathfinder.findNearestPath(WorldPointUtil.unpackWorldPoint(start),
+						targets, Collections.emptyMap(), ReferenceGraph.getLampStateVersion());
+				final int cost = graph.cheapest(graph.getCosts(start), goals);
+				assertEquals(cost, graph.assertPath("INCREMENTAL step " + i + " of query " + q,
+						ReferenceGraph.pack(walked), start, goals, cost, 0));
+			}
+		}
+	}
+
+	@Test
+	public void stairsBetweenPlanesKeepPathsShortest()
+	{
+		// The stairs between planes 1 and 3 climb two planes for a cost of one;
+		// counting planes apart overestimated them and the second query found
+		// no path
+		final int first = WorldPointUtil.packWorldPoint(new WorldPoint(2697, 5326, 1));
+		assertNotNull(graph.assertShortestNearestPath("INCREMENTAL", nearestQuery, first,
+				ReferenceGraph.lampsAt(new WorldPoint(2746, 5355, 2), new WorldPoint(2731, 5272, 1))));
+
+		final int second = WorldPointUtil.packWorldPoint(new WorldPoint(2723, 5255, 1));
+		assertNotNull(graph.assertShortestNearestPath("INCREMENTAL", nearestQuery, second,
+				ReferenceGraph.lampsAt(new WorldPoint(2706, 5354, 0), new WorldPoint(2707, 5278, 1),
+						new WorldPoint(2738, 5324, 1))));
+	}
+
+	private PrimitiveIntList approachTiles(Set<WorldPoint> targets)
+	{
+		final PrimitiveIntList goals = new PrimitiveIntList();
+		for (WorldPoint target : targets)
+		{
+			final PrimitiveIntList approach = graph.getApproachTiles(WorldPointUtil.packWorldPoint(target),
+					Collections.emptySet());
+			for (int i = 0; i < approach.size(); i++)
+			{
+				goals.add(approach.get(i));
+			}
+		}
+		return goals;
+	}
+}
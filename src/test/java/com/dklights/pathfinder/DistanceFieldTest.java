@@ -0,0 +1,72 @@
+package com.dklights.pathfinder;
+
+import static org.junit.Assert.assertEquals;
+
+import com.dklights.enums.Lamp;
+import com.dklights.enums.PathfinderEngine;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.Random;
+import java.util.Set;
+import net.runelite.api.coords.WorldPoint;
+import org.junit.Before;
+import org.junit.Test;
+
+public class DistanceFieldTest
+{
+	private ReferenceGraph graph;
+	private Pathfinder pathfinder;
+
+	@Before
+	public void setUp() throws IOException
+	{
+		graph = ReferenceGraph.load();
+		pathfinder = new Pathfinder();
+		pathfinder.setEngine(PathfinderEngine.DISTANCE_FIELD);
+	}
+
+	@Test
+	public void pathsAreShortest()
+	{
+		// A quarter of the queries go to the bank or wire machine fields
+		graph.assertShortestPaths("DISTANCE_FIELD", pathfinder::findPath, 400, 1, 0);
+	}
+
+	@Test
+	public void nearestPathsAreShortest()
+	{
+		graph.assertShortestNearestPaths("DISTANCE_FIELD",
+				(start, targets, walls, version) -> pathfinder.findNearestPath(start, targets, walls, version), 600, 2, 0);
+	}
+
+	@Test
+	public void distancesMatchReferenceCosts()
+	{
+		final Random random = new Random(3);
+		final Lamp[] lamps = Lamp.values();
+		final Set<WorldPoint> targets = ReferenceGraph.lampsAt(lamps[random.nextInt(lamps.length)].getWorldPoint(),
+				lamps[random.nextInt(lamps.length)].getWorldPoint());
+		pathfinder.findNearestPath(WorldPointUtil.unpackWorldPoint(graph.randomWalkablePoint(random)), targets,
+				Collections.emptyMap(), 1);
+
+		final PrimitiveIntList goals = new PrimitiveIntList();
+		for (WorldPoint target : targets)
+		{
+			final PrimitiveIntList approach = graph.getApproachTiles(WorldPointUtil.packWorldPoint(target),
+					Collections.emptySet());
+			for (int i = 0; i < approach.size(); i++)
+			{
+				goals.add(approach.get(i));
+			}
+		}
+
+		for (int q = 0; q < 50; q++)
+		{
+			final int point = graph.randomWalkablePoint(random);
+			final int expected = graph.cheapest(graph.getCosts(point), goals);
+			assertEquals("cost from " + WorldPointUtil.unpackWorldPoint(point),
+					expected == ReferenceGraph.UNREACHABLE ? DistanceField.UNREACHABLE : expected,
+					pathfinder.getNearestLampDistance(point));
+		}
+	}
+}
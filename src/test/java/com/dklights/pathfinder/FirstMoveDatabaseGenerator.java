@@ -0,0 +1,28 @@
+package com.dklights.pathfinder;
+
+import java.io.FileOutputStream;
+import java.io.OutputStream;
+
+/**
+ * Writes {@link FirstMoveDatabase#RESOURCE}. Run through the
+ * {@code generateFirstMoves} Gradle task after changing the collision maps,
+ * transports or lamps.
+ */
+public class FirstMoveDatabaseGenerator
+{
+	public static void main(String[] args) throws Exception
+	{
+		if (args.length != 1)
+		{
+			throw new IllegalArgumentException("Usage: FirstMoveDatabaseGenerator <output file>");
+		}
+
+		CollisionMap collisionMap = new CollisionMap(SplitFlagMap.loadFromResources());
+		FirstMoveDatabase database = FirstMoveDatabase.compute(collisionMap, new TransportIndex(collisionMap));
+
+		try (OutputStream out = new FileOutputStream(args[0]))
+		{
+			database.write(out);
+		}
+	}
+}
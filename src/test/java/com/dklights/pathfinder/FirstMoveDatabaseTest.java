@@ -0,0 +1,76 @@
+package com.dklights.pathfinder;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import com.dklights.enums.Lamp;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.Random;
+import org.junit.Before;
+import org.junit.Test;
+
+public class FirstMoveDatabaseTest
+{
+	private ReferenceGraph graph;
+	private CollisionMap collisionMap;
+	private TransportIndex transports;
+
+	@Before
+	public void setUp() throws IOException
+	{
+		graph = ReferenceGraph.load();
+		collisionMap = graph.getCollisionMap();
+		transports = new TransportIndex(collisionMap);
+	}
+
+	@Test
+	public void bundledMovesAreCurrent() throws IOException
+	{
+		final FirstMoveDatabase bundled = FirstMoveDatabase.loadFromResources(collisionMap, transports);
+		final FirstMoveDatabase computed = FirstMoveDatabase.compute(collisionMap, transports);
+		for (int tile = 0; tile < collisionMap.getTileCount(); tile++)
+		{
+			if (collisionMap.getTraversableDirections(tile) == 0)
+			{
+				continue;
+			}
+			final int point = collisionMap.getPackedPoint(tile);
+			for (int node = 0; node < LampDistanceMatrix.NODE_COUNT; node++)
+			{
+				assertEquals("First move from " + WorldPointUtil.unpackWorldPoint(point) + " to node " + node,
+						computed.getNextStep(point, node), bundled.getNextStep(point, node));
+			}
+		}
+	}
+
+	@Test
+	public void pathsAreShortest()
+	{
+		final FirstMoveDatabase database = FirstMoveDatabase.compute(collisionMap, transports);
+		final Lamp[] lamps = Lamp.values();
+		final Random random = new Random(5);
+		final PrimitiveIntList path = new PrimitiveIntList();
+		for (int q = 0; q < 200; q++)
+		{
+			final int start = graph.randomWalkablePoint(random);
+			final Lamp lamp = lamps[random.nextInt(lamps.length)];
+			final PrimitiveIntList goals = graph.getApproachTiles(WorldPointUtil.packWorldPoint(lamp.getWorldPoint()),
+					Collections.emptySet());
+			final int cost = graph.cheapest(graph.getCosts(start), goals);
+			final String query = "First moves from " + WorldPointUtil.unpackWorldPoint(start) + " to " + lamp;
+
+			final boolean found = database.getPath(start, LampDistanceMatrix.indexOf(lamp), path);
+			if (cost == ReferenceGraph.UNREACHABLE)
+			{
+				assertFalse(query + " found " + path.size() + " tiles", found);
+				assertTrue(path.isEmpty());
+				continue;
+			}
+
+			assertTrue(query + " found nothing", found);
+			graph.assertPath(query, path, start, goals, cost, 0);
+		}
+	}
+}
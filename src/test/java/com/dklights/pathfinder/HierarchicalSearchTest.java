@@ -0,0 +1,30 @@
+package com.dklights.pathfinder;
+
+import com.dklights.enums.PathfinderEngine;
+import java.io.IOException;
+import org.junit.Before;
+import org.junit.Test;
+
+public class HierarchicalSearchTest
+{
+	// Paths stay inside a corridor of clusters and may run a few steps longer
+	// than the shortest
+	private static final int SLACK = 8;
+
+	private ReferenceGraph graph;
+	private Pathfinder pathfinder;
+
+	@Before
+	public void setUp() throws IOException
+	{
+		graph = ReferenceGraph.load();
+		pathfinder = new Pathfinder();
+		pathfinder.setEngine(PathfinderEngine.HIERARCHICAL);
+	}
+
+	@Test
+	public void pathsAreNearlyShortest()
+	{
+		graph.assertShortestPaths("HIERARCHICAL", pathfinder::findPath, 400, 1, SLACK);
+	}
+}
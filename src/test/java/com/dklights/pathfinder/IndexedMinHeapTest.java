@@ -0,0 +1,193 @@
+package com.dklights.pathfinder;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Random;
+import org.junit.Test;
+
+public class IndexedMinHeapTest
+{
+	private static final int CAPACITY = 1000;
+
+	@Test
+	public void pollsInPriorityOrder()
+	{
+		final IndexedMinHeap heap = new IndexedMinHeap(CAPACITY);
+		final Random random = new Random(1);
+		final long[] priorities = new long[CAPACITY];
+		for (int key = 0; key < CAPACITY; key++)
+		{
+			priorities[key] = random.nextInt(100);
+			heap.addOrDecrease(key, priorities[key]);
+		}
+
+		final long[] sorted = priorities.clone();
+		Arrays.sort(sorted);
+		for (long expected : sorted)
+		{
+			final int key = heap.peek();
+			assertEquals(expected, heap.getPriority(key));
+			assertEquals(key, heap.poll());
+			assertFalse(heap.contains(key));
+		}
+		assertTrue(heap.isEmpty());
+	}
+
+	@Test
+	public void decreaseKeyMovesKeyUp()
+	{
+		final IndexedMinHeap heap = new IndexedMinHeap(CAPACITY);
+		heap.addOrDecrease(1, 10);
+		heap.addOrDecrease(2, 20);
+		heap.addOrDecrease(3, 30);
+
+		assertTrue(heap.decreaseKey(3, 5));
+		assertEquals(3, heap.size());
+		assertEquals(3, heap.peek());
+		assertEquals(5, heap.getPriority(3));
+	}
+
+	@Test
+	public void higherPriorityIsIgnored()
+	{
+		final IndexedMinHeap heap = new IndexedMinHeap(CAPACITY);
+		heap.addOrDecrease(1, 10);
+		heap.addOrDecrease(2, 20);
+
+		assertFalse(heap.addOrDecrease(1, 30));
+		assertFalse(heap.decreaseKey(2, 20));
+		assertEquals(2, heap.size());
+		assertEquals(10, heap.getPriority(1));
+		assertEquals(1, heap.poll());
+		assertEquals(2, heap.poll());
+	}
+
+	@Test
+	public void randomOperationsMatchSortedOrder()
+	{
+		final IndexedMinHeap heap = new IndexedMinHeap(CAPACITY);
+		final long[] priorities = new long[CAPACITY];
+		Arrays.fill(priorities, Long.MAX_VALUE);
+		final Random random = new Random(2);
+		for (int i = 0; i < 20000; i++)
+		{
+			final int key = random.nextInt(CAPACITY);
+			if (random.nextInt(3) > 0)
+			{
+				final long priority = random.nextInt(10000);
+				heap.addOrDecrease(key, priority);
+				priorities[key] = Math.min(priorities[key], priority);
+			}
+			else if (!heap.isEmpty())
+			{
+				long lowest = Long.MAX_VALUE;
+				for (long priority : priorities)
+				{
+					lowest = Math.min(lowest, priority);
+				}
+
+				final int polled = heap.poll();
+				assertEquals(lowest, priorities[polled]);
+				priorities[polled] = Long.MAX_VALUE;
+			}
+
+			for (int k = 0; k < CAPACITY; k += 97)
+			{
+				assertEquals(priorities[k] != Long.MAX_VALUE, heap.contains(k));
+			}
+		}
+	}
+
+	@Test
+	public void updateMovesKeyEitherWay()
+	{
+		final IndexedMinHeap heap = new IndexedMinHeap(CAPACITY);
+		for (int key = 1; key <= 5; key++)
+		{
+			heap.update(key, key * 10);
+		}
+
+		heap.update(1, 45);
+		assertEquals(2, heap.peek());
+		assertEquals(45, heap.getPriority(1));
+
+		heap.update(5, 5);
+		assertEquals(5, heap.peek());
+		assertEquals(5, heap.size());
+
+		final int[] expected = { 5, 2, 3, 4, 1 };
+		for (int key : expected)
+		{
+			assertEquals(key, heap.poll());
+		}
+	}
+
+	@Test
+	public void removeKeepsTheRestInOrder()
+	{
+		final IndexedMinHeap heap = new IndexedMinHeap(CAPACITY);
+		final Random random = new Random(4);
+		final long[] priorities = new long[100];
+		for (int key = 0; key < priorities.length; key++)
+		{
+			priorities[key] = random.nextInt(1000);
+			heap.addOrDecrease(key, priorities[key]);
+		}
+
+		for (int key = 0; key < priorities.length; key += 3)
+		{
+			assertTrue(heap.remove(key));
+			assertFalse(heap.contains(key));
+		}
+		assertFalse(heap.remove(0));
+		assertFalse(heap.remove(CAPACITY - 1));
+
+		long previous = Long.MIN_VALUE;
+		while (!heap.isEmpty())
+		{
+			final int key = heap.poll();
+			assertTrue(key % 3 != 0);
+			assertTrue(priorities[key] >= previous);
+			previous = priorities[key];
+		}
+	}
+
+	@Test
+	public void clearForgetsEveryKey()
+	{
+		final IndexedMinHeap heap = new IndexedMinHeap(CAPACITY);
+		for (int key = 0; key < 10; key++)
+		{
+			heap.addOrDecrease(key, key);
+		}
+		heap.clear();
+
+		assertTrue(heap.isEmpty());
+		for (int key = 0; key < 10; key++)
+		{
+			assertFalse(heap.contains(key));
+		}
+
+		// Keys can be added again at any priority
+		assertTrue(heap.addOrDecrease(5, 50));
+		assertEquals(50, heap.getPriority(5));
+	}
+
+	@Test
+	public void prioritiesOrderByPrimaryThenSecondary()
+	{
+		assertTrue(IndexedMinHeap.priority(1, 9) < IndexedMinHeap.priority(2, 0));
+		assertTrue(IndexedMinHeap.priority(2, 0) < IndexedMinHeap.priority(2, 1));
+		assertTrue(IndexedMinHeap.priority(1.5f, 9f) < IndexedMinHeap.priority(2f, 0f));
+		assertTrue(IndexedMinHeap.priority(2f, 0.25f) < IndexedMinHeap.priority(2f, 0.5f));
+	}
+
+	@Test(expected = IllegalStateException.class)
+	public void pollOnEmptyHeapThrows()
+	{
+		new IndexedMinHeap(CAPACITY).poll();
+	}
+}
@@ -0,0 +1,63 @@
+package com.dklights.pathfinder;
+
+import static org.junit.Assert.assertTrue;
+
+import com.dklights.enums.PathfinderEngine;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.Random;
+import org.junit.Before;
+import org.junit.Test;
+
+public class JumpPointSearchTest
+{
+	private ReferenceGraph graph;
+	private Pathfinder pathfinder;
+
+	@Before
+	public void setUp() throws IOException
+	{
+		graph = ReferenceGraph.load();
+		pathfinder = new Pathfinder();
+		pathfinder.setEngine(PathfinderEngine.JUMP_POINT);
+	}
+
+	@Test
+	public void pathsAreShortest()
+	{
+		graph.assertShortestPaths("JUMP_POINT", pathfinder::findPath, 400, 1, 0);
+	}
+
+	@Test
+	public void pathsSkippingAPlaneAreShortest()
+	{
+		// The stairs between planes 1 and 3 and the ladder from plane 0 to 3
+		// climb two planes for the cost of one
+		final Random random = new Random(6);
+		final PrimitiveIntList path = new PrimitiveIntList();
+		int checked = 0;
+		for (int q = 0; q < 5000 && checked < 100; q++)
+		{
+			final int start = graph.randomWalkablePoint(random);
+			final int end = graph.randomWalkablePoint(random);
+			if (Math.abs(WorldPointUtil.unpackWorldPlane(start) - WorldPointUtil.unpackWorldPlane(end)) < 2)
+			{
+				continue;
+			}
+
+			final PrimitiveIntList goals = graph.getApproachTiles(end, Collections.emptySet());
+			final int cost = graph.cheapest(graph.getCosts(start), goals);
+			if (cost == ReferenceGraph.UNREACHABLE)
+			{
+				continue;
+			}
+
+			final String query = "JUMP_POINT from " + WorldPointUtil.unpackWorldPoint(start) + " to "
+					+ WorldPointUtil.unpackWorldPoint(end);
+			assertTrue(query + " found nothing", pathfinder.findPath(start, end, path));
+			graph.assertPath(query, path, start, goals, cost, 0);
+			checked++;
+		}
+		assertTrue("Only " + checked + " queries skip a plane", checked >= 50);
+	}
+}
@@ -0,0 +1,28 @@
+package com.dklights.pathfinder;
+
+import java.io.FileOutputStream;
+import java.io.OutputStream;
+
+/**
+ * Writes {@link LampDistanceMatrix#RESOURCE}. Run through the
+ * {@code generateLampDistances} Gradle task after changing the collision maps,
+ * transports or lamps.
+ */
+public class LampDistanceMatrixGenerator
+{
+	public static void main(String[] args) throws Exception
+	{
+		if (args.length != 1)
+		{
+			throw new IllegalArgumentException("Usage: LampDistanceMatrixGenerator <output file>");
+		}
+
+		CollisionMap collisionMap = new CollisionMap(SplitFlagMap.loadFromResources());
+		LampDistanceMatrix matrix = LampDistanceMatrix.compute(collisionMap, new TransportIndex(collisionMap));
+
+		try (OutputStream out = new FileOutputStream(args[0]))
+		{
+			matrix.write(out);
+		}
+	}
+}
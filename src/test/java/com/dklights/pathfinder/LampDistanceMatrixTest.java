@@ -0,0 +1,67 @@
+package com.dklights.pathfinder;
+
+import static org.junit.Assert.assertEquals;
+
+import com.dklights.enums.Lamp;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.Random;
+import org.junit.Before;
+import org.junit.Test;
+
+public class LampDistanceMatrixTest
+{
+	private ReferenceGraph graph;
+	private CollisionMap collisionMap;
+	private TransportIndex transports;
+
+	@Before
+	public void setUp() throws IOException
+	{
+		graph = ReferenceGraph.load();
+		collisionMap = graph.getCollisionMap();
+		transports = new TransportIndex(collisionMap);
+	}
+
+	@Test
+	public void bundledDistancesAreCurrent() throws IOException
+	{
+		final LampDistanceMatrix bundled = LampDistanceMatrix.loadFromResources(collisionMap, transports);
+		final LampDistanceMatrix computed = LampDistanceMatrix.compute(collisionMap, transports);
+		for (int from = 0; from < LampDistanceMatrix.NODE_COUNT; from++)
+		{
+			for (int to = 0; to < LampDistanceMatrix.NODE_COUNT; to++)
+			{
+				assertEquals("Distance from " + from + " to " + to, computed.getDistance(from, to),
+						bundled.getDistance(from, to));
+			}
+		}
+	}
+
+	@Test
+	public void distancesMatchReferenceCosts()
+	{
+		final LampDistanceMatrix matrix = LampDistanceMatrix.compute(collisionMap, transports);
+		final Lamp[] lamps = Lamp.values();
+		final Random random = new Random(4);
+		for (int q = 0; q < 20; q++)
+		{
+			final Lamp from = lamps[random.nextInt(lamps.length)];
+			final Lamp to = lamps[random.nextInt(lamps.length)];
+			final PrimitiveIntList sources = graph.getApproachTiles(
+					WorldPointUtil.packWorldPoint(from.getWorldPoint()), Collections.emptySet());
+			final PrimitiveIntList goals = graph.getApproachTiles(WorldPointUtil.packWorldPoint(to.getWorldPoint()),
+					Collections.emptySet());
+
+			int expected = ReferenceGraph.UNREACHABLE;
+			for (int i = 0; i < sources.size(); i++)
+			{
+				expected = Math.min(expected, graph.cheapest(graph.getCosts(sources.get(i)), goals));
+			}
+
+			assertEquals("Distance from " + from + " to " + to,
+					expected == ReferenceGraph.UNREACHABLE ? LampDistanceMatrix.UNREACHABLE : expected,
+					matrix.getDistance(LampDistanceMatrix.indexOf(from), LampDistanceMatrix.indexOf(to)));
+		}
+	}
+}
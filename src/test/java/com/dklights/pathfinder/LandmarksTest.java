@@ -0,0 +1,63 @@
+package com.dklights.pathfinder;
+
+import static org.junit.Assert.assertTrue;
+
+import com.dklights.enums.Lamp;
+import com.dklights.enums.PathfinderEngine;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.Random;
+import org.junit.Before;
+import org.junit.Test;
+
+public class LandmarksTest
+{
+	private ReferenceGraph graph;
+	private Pathfinder pathfinder;
+
+	@Before
+	public void setUp() throws IOException
+	{
+		graph = ReferenceGraph.load();
+		pathfinder = new Pathfinder();
+		pathfinder.setEngine(PathfinderEngine.LANDMARK);
+	}
+
+	@Test
+	public void pathsAreShortest()
+	{
+		graph.assertShortestPaths("LANDMARK", pathfinder::findPath, 400, 1, 0);
+	}
+
+	@Test
+	public void lowerBoundsAreAdmissible()
+	{
+		final CollisionMap collisionMap = graph.getCollisionMap();
+		final Landmarks landmarks = new Landmarks(collisionMap, new TransportIndex(collisionMap));
+		assertTrue(landmarks.size() > 0);
+
+		final Random random = new Random(4);
+		final Lamp[] lamps = Lamp.values();
+		for (int q = 0; q < 20; q++)
+		{
+			final Lamp lamp = lamps[random.nextInt(lamps.length)];
+			final PrimitiveIntList approach = graph.getApproachTiles(
+					WorldPointUtil.packWorldPoint(lamp.getWorldPoint()), Collections.emptySet());
+			final PrimitiveIntList goals = new PrimitiveIntList(approach.size());
+			for (int i = 0; i < approach.size(); i++)
+			{
+				goals.add(collisionMap.getTileIndex(approach.get(i)));
+			}
+			final int[] goalCosts = landmarks.getGoalCosts(goals);
+
+			for (int t = 0; t < 50; t++)
+			{
+				final int point = graph.randomWalkablePoint(random);
+				final int cost = graph.cheapest(graph.getCosts(point), approach);
+				final int bound = landmarks.lowerBound(collisionMap.getTileIndex(point), goalCosts);
+				assertTrue("bound " + bound + " from " + WorldPointUtil.unpackWorldPoint(point) + " to " + lamp
+						+ " costs " + cost, bound <= cost);
+			}
+		}
+	}
+}
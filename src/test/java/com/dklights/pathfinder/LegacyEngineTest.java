@@ -0,0 +1,123 @@
+package com.dklights.pathfinder;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import com.dklights.enums.Direction;
+import com.dklights.enums.Lamp;
+import com.dklights.enums.PathfinderEngine;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import net.runelite.api.coords.WorldPoint;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * The original WorldPoint search, kept selectable as
+ * {@link PathfinderEngine#LEGACY}. Its single-target A* weighs diagonal steps
+ * and transports differently from the other engines and stops on any tile
+ * around the target, so those paths are only checked for valid moves. The
+ * nearest-lamp search is a breadth-first search and must take the fewest
+ * steps, counting a transport as one.
+ */
+public class LegacyEngineTest
+{
+	private static final int QUERIES = 100;
+
+	private ReferenceGraph graph;
+	private Pathfinder pathfinder;
+
+	@Before
+	public void setUp() throws IOException
+	{
+		graph = ReferenceGraph.load();
+		pathfinder = new Pathfinder();
+		pathfinder.setEngine(PathfinderEngine.LEGACY);
+	}
+
+	@Test
+	public void pathsAreValid()
+	{
+		final Random random = new Random(1);
+		int found = 0;
+		for (int q = 0; q < QUERIES; q++)
+		{
+			final int start = graph.randomWalkablePoint(random);
+			final int end = graph.randomWalkablePoint(random);
+			final String query = "LEGACY from " + WorldPointUtil.unpackWorldPoint(start) + " to "
+					+ WorldPointUtil.unpackWorldPoint(end);
+			final List<WorldPoint> path = pathfinder.findPath(WorldPointUtil.unpackWorldPoint(start),
+					WorldPointUtil.unpackWorldPoint(end));
+
+			final PrimitiveIntList goals = new PrimitiveIntList();
+			goals.add(end);
+			for (Direction direction : Direction.values())
+			{
+				goals.add(WorldPointUtil.dxdy(end, direction.getX(), direction.getY()));
+			}
+
+			final int shortest = graph.cheapest(graph.getCosts(start), goals);
+			if (shortest == ReferenceGraph.UNREACHABLE)
+			{
+				assertTrue(query + " found " + path, path.isEmpty());
+				continue;
+			}
+			// Some long routes are given up on
+			if (path.isEmpty())
+			{
+				continue;
+			}
+
+			// Every move must be a step the collision map allows or a transport
+			graph.assertPath(query, ReferenceGraph.pack(path), start, goals, shortest, Integer.MAX_VALUE);
+			assertEquals(query + " visits a tile twice", path.size(), new HashSet<>(path).size());
+			found++;
+		}
+		assertTrue("Only " + found + " paths found", found >= QUERIES / 2);
+	}
+
+	@Test
+	public void nearestPathsTakeFewestSteps()
+	{
+		final Random random = new Random(2);
+		final Lamp[] lamps = Lamp.values();
+		for (int q = 0; q < QUERIES; q++)
+		{
+			final int start = graph.randomWalkablePoint(random);
+			final Set<WorldPoint> targets = new HashSet<>();
+			for (int i = 1 + random.nextInt(6); i > 0; i--)
+			{
+				targets.add(lamps[random.nextInt(lamps.length)].getWorldPoint());
+			}
+
+			final PrimitiveIntList goals = new PrimitiveIntList();
+			for (WorldPoint target : targets)
+			{
+				final PrimitiveIntList approach = graph.getApproachTiles(WorldPointUtil.packWorldPoint(target),
+						Collections.emptySet());
+				for (int i = 0; i < approach.size(); i++)
+				{
+					goals.add(approach.get(i));
+				}
+			}
+
+			final String query = "LEGACY from " + WorldPointUtil.unpackWorldPoint(start) + " to " + targets;
+			final List<WorldPoint> path = pathfinder.findNearestPath(WorldPointUtil.unpackWorldPoint(start), targets,
+					Collections.emptyMap(), q);
+			final int steps = graph.cheapest(graph.getStepCounts(start), goals);
+			if (steps == ReferenceGraph.UNREACHABLE)
+			{
+				assertTrue(query + " found " + path, path.isEmpty());
+				continue;
+			}
+
+			final PrimitiveIntList packedPath = ReferenceGraph.pack(path);
+			graph.assertPath(query, packedPath, start, goals, 0, Integer.MAX_VALUE);
+			assertTrue(query + " takes " + (path.size() - 1) + " steps, fewest " + steps, path.size() - 1 == steps);
+		}
+	}
+}
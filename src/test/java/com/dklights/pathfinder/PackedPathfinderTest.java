@@ -0,0 +1,212 @@
+package com.dklights.pathfinder;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import com.dklights.enums.Direction;
+import com.dklights.enums.PathfinderEngine;
+import java.io.IOException;
+import java.util.List;
+import java.util.Random;
+import net.runelite.api.coords.WorldPoint;
+import org.junit.Before;
+import org.junit.Test;
+
+public class PackedPathfinderTest
+{
+	private static final int MAX_REPAIR_STEPS = 3;
+
+	private ReferenceGraph graph;
+	private Pathfinder pathfinder;
+
+	@Before
+	public void setUp() throws IOException
+	{
+		graph = ReferenceGraph.load();
+		pathfinder = new Pathfinder();
+		pathfinder.setEngine(PathfinderEngine.PACKED);
+	}
+
+	@Test
+	public void pathsAreShortest()
+	{
+		graph.assertShortestPaths("PACKED", pathfinder::findPath, 400, 1, 0);
+	}
+
+	@Test
+	public void nearestPathsAreShortest()
+	{
+		graph.assertShortestNearestPaths("PACKED",
+				(start, targets, walls, version) -> pathfinder.findNearestPath(start, targets, walls, version), 600, 2, 0);
+	}
+
+	@Test
+	public void slicedSearchesMatchUnbudgetedSearches()
+	{
+		final Random random = new Random(9);
+		final PrimitiveIntList expected = new PrimitiveIntList();
+		final PrimitiveIntList path = new PrimitiveIntList();
+		int sliced = 0;
+		for (int q = 0; q < 100; q++)
+		{
+			final int start = graph.randomWalkablePoint(random);
+			final int end = graph.randomWalkablePoint(random);
+			if (pathfinder.findPath(start, end, expected, 0) != SearchStatus.FOUND)
+			{
+				continue;
+			}
+
+			// Every slice runs out of time at its first clock check
+			int slices = 1;
+			SearchStatus status = pathfinder.findPath(start, end, path, 1);
+			while (status == SearchStatus.PARTIAL && slices < 1000)
+			{
+				assertEquals(start, path.get(0));
+				status = pathfinder.findPath(start, end, path, 1);
+				slices++;
+			}
+
+			final String query = "from " + WorldPointUtil.unpackWorldPoint(start) + " to "
+					+ WorldPointUtil.unpackWorldPoint(end);
+			assertEquals(query, SearchStatus.FOUND, status);
+			assertEquals(query + " length", expected.size(), path.size());
+			for (int i = 0; i < path.size(); i++)
+			{
+				assertEquals(query + " tile " + i, expected.get(i), path.get(i));
+			}
+			if (slices > 1)
+			{
+				sliced++;
+			}
+		}
+		assertTrue("Only " + sliced + " queries needed more than one slice", sliced >= 20);
+	}
+
+	@Test
+	public void switchingEnginesStartsASlicedSearchOver()
+	{
+		final Random random = new Random(10);
+		final PrimitiveIntList expected = new PrimitiveIntList();
+		final PrimitiveIntList path = new PrimitiveIntList();
+		int switched = 0;
+		for (int q = 0; q < 100; q++)
+		{
+			final int start = graph.randomWalkablePoint(random);
+			final int end = graph.randomWalkablePoint(random);
+			pathfinder.setEngine(PathfinderEngine.LANDMARK);
+			if (pathfinder.findPath(start, end, expected, 0) != SearchStatus.FOUND)
+			{
+				continue;
+			}
+
+			// The landmark engine shares the packed engine's context and query keys
+			pathfinder.setEngine(PathfinderEngine.PACKED);
+			if (pathfinder.findPath(start, end, path, 1) != SearchStatus.PARTIAL)
+			{
+				continue;
+			}
+			pathfinder.setEngine(PathfinderEngine.LANDMARK);
+			assertEquals(SearchStatus.FOUND, pathfinder.findPath(start, end, path, 0));
+
+			final String query = "from " + WorldPointUtil.unpackWorldPoint(start) + " to "
+					+ WorldPointUtil.unpackWorldPoint(end);
+			assertEquals(query + " length", expected.size(), path.size());
+			for (int i = 0; i < path.size(); i++)
+			{
+				assertEquals(query + " tile " + i, expected.get(i), path.get(i));
+			}
+			switched++;
+		}
+		assertTrue("Only " + switched + " queries were switched mid-search", switched >= 20);
+	}
+
+	@Test
+	public void iterationLimitIsNotReportedAsPartial()
+	{
+		final CollisionMap collisionMap = graph.getCollisionMap();
+		final TransportIndex transports = new TransportIndex(collisionMap);
+		final PackedPathfinder limited = new PackedPathfinder(collisionMap, transports,
+				new ConnectedComponents(collisionMap, transports), SearchContext.perThread(collisionMap.getTileCount()),
+				10, 512);
+
+		final Random random = new Random(10);
+		final PrimitiveIntList path = new PrimitiveIntList();
+		int checked = 0;
+		for (int q = 0; q < 100 && checked < 20; q++)
+		{
+			final int start = graph.randomWalkablePoint(random);
+			final int end = graph.randomWalkablePoint(random);
+			final int cost = graph.getCosts(start)[collisionMap.getTileIndex(end)];
+			if (cost == ReferenceGraph.UNREACHABLE || cost < 50)
+			{
+				continue;
+			}
+
+			// A limited search is not suspended, so calling again does not get further
+			assertEquals(SearchStatus.LIMITED, limited.findPath(start, end, path, PackedPathfinder.NO_BUDGET));
+			assertEquals(SearchStatus.LIMITED, limited.findPath(start, end, path, PackedPathfinder.NO_BUDGET));
+			assertEquals(start, path.get(0));
+			checked++;
+		}
+		assertEquals(20, checked);
+	}
+
+	@Test
+	public void smallDetoursAreRepaired()
+	{
+		final Random random = new Random(11);
+		int repaired = 0;
+		for (int q = 0; q < 200 && repaired < 50; q++)
+		{
+			final int start = graph.randomWalkablePoint(random);
+			final int end = graph.randomWalkablePoint(random);
+			final List<WorldPoint> path = pathfinder.findPath(WorldPointUtil.unpackWorldPoint(start),
+					WorldPointUtil.unpackWorldPoint(end));
+			if (path.size() < 4)
+			{
+				continue;
+			}
+
+			final int detour = stepOffPath(random, ReferenceGraph.pack(path));
+			if (detour == WorldPointUtil.UNDEFINED)
+			{
+				continue;
+			}
+
+			final List<WorldPoint> repairedPath = pathfinder.repairPath(WorldPointUtil.unpackWorldPoint(detour), path,
+					MAX_REPAIR_STEPS);
+			// Paths stop next to the target, and the repaired one keeps that end
+			final int pathEnd = WorldPointUtil.packWorldPoint(path.get(path.size() - 1));
+			final PrimitiveIntList goals = new PrimitiveIntList();
+			goals.add(pathEnd);
+			// The way back can lead away from the target, so a repaired path may be
+			// up to twice its length longer than a fresh one
+			graph.assertPath("Detour to " + WorldPointUtil.unpackWorldPoint(detour), ReferenceGraph.pack(repairedPath),
+					detour, goals, graph.getCosts(detour)[graph.getCollisionMap().getTileIndex(pathEnd)],
+					2 * MAX_REPAIR_STEPS);
+
+			// Too far off to reconnect without any steps
+			assertTrue(pathfinder.repairPath(WorldPointUtil.unpackWorldPoint(detour), path, 0).isEmpty());
+			repaired++;
+		}
+		assertEquals(50, repaired);
+	}
+
+	/**
+	 * @return a walkable tile one step off {@code path}, or
+	 *         {@link WorldPointUtil#UNDEFINED}.
+	 */
+	private int stepOffPath(Random random, PrimitiveIntList path)
+	{
+		final int from = path.get(1 + random.nextInt(path.size() - 2));
+		for (Direction direction : Direction.values())
+		{
+			final int neighbor = WorldPointUtil.dxdy(from, direction.getX(), direction.getY());
+			if (!path.contains(neighbor) && graph.getMoveCost(neighbor, from) == 1)
+			{
+				return neighbor;
+			}
+		}
+		return WorldPointUtil.UNDEFINED;
+	}
+}
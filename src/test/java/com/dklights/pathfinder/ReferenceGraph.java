@@ -0,0 +1,590 @@
+package com.dklights.pathfinder;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import com.dklights.DKLightsConstants;
+import com.dklights.enums.Direction;
+import com.dklights.enums.Lamp;
+import com.dklights.enums.Transport;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Random;
+import java.util.Set;
+import net.runelite.api.coords.WorldPoint;
+
+/**
+ * The walkable graph the search engines are checked against, with a plain
+ * Dijkstra over it: one per step and the transport duration, at least one,
+ * per transport. It reads the collision map and {@link Transport} directly,
+ * so it shares no search code with the engines.
+ * <p>
+ * Queries are seeded, so a failure reproduces.
+ */
+final class ReferenceGraph
+{
+	static final int UNREACHABLE = Integer.MAX_VALUE;
+
+	static final Direction[] CARDINAL_DIRECTIONS =
+	{ Direction.NORTH, Direction.EAST, Direction.SOUTH, Direction.WEST };
+
+	private static final Direction[] DIRECTIONS = Direction.values();
+	private static final Lamp[] LAMPS = Lamp.values();
+
+	private static ReferenceGraph instance;
+
+	// Lamp state versions handed out so far; every lamp state gets a new one
+	private static int lampStateVersion;
+
+	private final CollisionMap collisionMap;
+
+	// Transports by origin tile, in compressed sparse row form
+	private final int[] transportOffsets;
+	private final int[] transportTargets;
+	private final int[] transportCosts;
+
+	private final int[] walkableTiles;
+
+	/**
+	 * Single-target search of the engine under test.
+	 */
+	interface PathQuery
+	{
+		/**
+		 * @param path receives the packed path, start first.
+		 * @return {@code true} if a path was found.
+		 */
+		boolean findPath(int start, int end, PrimitiveIntList path);
+	}
+
+	/**
+	 * Nearest-lamp search of the engine under test.
+	 */
+	interface NearestQuery
+	{
+		/**
+		 * @param version lamp state version, new whenever the lamps or walls
+		 *                change.
+		 * @return the path, start first, or an empty list.
+		 */
+		List<WorldPoint> findNearestPath(WorldPoint start, Set<WorldPoint> targets,
+				Map<Lamp, Set<Direction>> walls, int version);
+	}
+
+	private ReferenceGraph(CollisionMap collisionMap)
+	{
+		this.collisionMap = collisionMap;
+
+		final int tileCount = collisionMap.getTileCount();
+		transportOffsets = new int[tileCount + 1];
+		for (Transport transport : Transport.values())
+		{
+			final int origin = collisionMap.getTileIndex(WorldPointUtil.packWorldPoint(transport.getOrigin()));
+			final int destination = collisionMap.getTileIndex(
+					WorldPointUtil.packWorldPoint(transport.getDestination()));
+			if (origin >= 0 && destination >= 0)
+			{
+				transportOffsets[origin + 1]++;
+			}
+		}
+		for (int tile = 0; tile < tileCount; tile++)
+		{
+			transportOffsets[tile + 1] += transportOffsets[tile];
+		}
+
+		transportTargets = new int[transportOffsets[tileCount]];
+		transportCosts = new int[transportTargets.length];
+		final int[] fill = Arrays.copyOf(transportOffsets, tileCount);
+		for (Transport transport : Transport.values())
+		{
+			final int origin = collisionMap.getTileIndex(WorldPointUtil.packWorldPoint(transport.getOrigin()));
+			final int destination = collisionMap.getTileIndex(
+					WorldPointUtil.packWorldPoint(transport.getDestination()));
+			if (origin >= 0 && destination >= 0)
+			{
+				transportTargets[fill[origin]] = destination;
+				transportCosts[fill[origin]] = Math.max(transport.getDuration(), 1);
+				fill[origin]++;
+			}
+		}
+
+		final PrimitiveIntList walkable = new PrimitiveIntList();
+		for (int tile = 0; tile < tileCount; tile++)
+		{
+			if (isWalkable(tile))
+			{
+				walkable.add(tile);
+			}
+		}
+		walkableTiles = new int[walkable.size()];
+		for (int i = 0; i < walkableTiles.length; i++)
+		{
+			walkableTiles[i] = walkable.get(i);
+		}
+	}
+
+	/**
+	 * @return the graph over the bundled collision map, loaded once.
+	 */
+	static synchronized ReferenceGraph load() throws IOException
+	{
+		if (instance == null)
+		{
+			instance = new ReferenceGraph(new CollisionMap(SplitFlagMap.loadFromResources()));
+		}
+		return instance;
+	}
+
+	CollisionMap getCollisionMap()
+	{
+		return collisionMap;
+	}
+
+	/**
+	 * @return walkable tile indices in ascending order.
+	 */
+	int[] getWalkableTiles()
+	{
+		return walkableTiles;
+	}
+
+	boolean isWalkable(int tile)
+	{
+		if (transportOffsets[tile] != transportOffsets[tile + 1])
+		{
+			return true;
+		}
+
+		final int point = collisionMap.getPackedPoint(tile);
+		return collisionMap.getTraversableDirections(WorldPointUtil.unpackWorldX(point),
+				WorldPointUtil.unpackWorldY(point), WorldPointUtil.unpackWorldPlane(point)) != 0;
+	}
+
+	/**
+	 * @return packed point of a random walkable tile.
+	 */
+	int randomWalkablePoint(Random random)
+	{
+		return collisionMap.getPackedPoint(walkableTiles[random.nextInt(walkableTiles.length)]);
+	}
+
+	/**
+	 * Breadth-first search from {@code start} to every tile, counting every
+	 * transport as one step like the legacy nearest-lamp search.
+	 *
+	 * @param start packed start point.
+	 * @return step count per tile index, {@link #UNREACHABLE} where there is no
+	 *         route.
+	 */
+	int[] getStepCounts(int start)
+	{
+		final int[] steps = new int[collisionMap.getTileCount()];
+		Arrays.fill(steps, UNREACHABLE);
+
+		final int[] queue = new int[steps.length];
+		int head = 0;
+		int tail = 0;
+		queue[tail++] = collisionMap.getTileIndex(start);
+		steps[queue[0]] = 0;
+		while (head < tail)
+		{
+			final int tile = queue[head++];
+			final int point = collisionMap.getPackedPoint(tile);
+			final int directions = getDirections(point);
+			for (int d = 0; d < DIRECTIONS.length; d++)
+			{
+				if ((directions & (1 << d)) != 0)
+				{
+					final int neighbor = collisionMap.getTileIndex(
+							WorldPointUtil.dxdy(point, DIRECTIONS[d].getX(), DIRECTIONS[d].getY()));
+					if (neighbor >= 0 && steps[neighbor] == UNREACHABLE)
+					{
+						steps[neighbor] = steps[tile] + 1;
+						queue[tail++] = neighbor;
+					}
+				}
+			}
+			for (int t = transportOffsets[tile]; t < transportOffsets[tile + 1]; t++)
+			{
+				if (steps[transportTargets[t]] == UNREACHABLE)
+				{
+					steps[transportTargets[t]] = steps[tile] + 1;
+					queue[tail++] = transportTargets[t];
+				}
+			}
+		}
+		return steps;
+	}
+
+	/**
+	 * Dijkstra from {@code start} to every tile.
+	 *
+	 * @param start packed start point.
+	 * @return cost per tile index, {@link #UNREACHABLE} where there is no route.
+	 */
+	int[] getCosts(int start)
+	{
+		final int[] costs = new int[collisionMap.getTileCount()];
+		Arrays.fill(costs, UNREACHABLE);
+
+		// Cost in the high half, tile in the low half
+		final PriorityQueue<Long> queue = new PriorityQueue<>();
+		final int startTile = collisionMap.getTileIndex(start);
+		costs[startTile] = 0;
+		queue.add((long) startTile);
+		while (!queue.isEmpty())
+		{
+			final long entry = queue.poll();
+			final int tile = (int) entry;
+			final int cost = (int) (entry >>> 32);
+			if (cost > costs[tile])
+			{
+				continue;
+			}
+
+			final int point = collisionMap.getPackedPoint(tile);
+			final int directions = getDirections(point);
+			for (int d = 0; d < DIRECTIONS.length; d++)
+			{
+				if ((directions & (1 << d)) != 0)
+				{
+					relax(costs, queue, collisionMap.getTileIndex(
+							WorldPointUtil.dxdy(point, DIRECTIONS[d].getX(), DIRECTIONS[d].getY())), cost + 1);
+				}
+			}
+			for (int t = transportOffsets[tile]; t < transportOffsets[tile + 1]; t++)
+			{
+				relax(costs, queue, transportTargets[t], cost + transportCosts[t]);
+			}
+		}
+		return costs;
+	}
+
+	private static void relax(int[] costs, PriorityQueue<Long> queue, int tile, int cost)
+	{
+		if (tile >= 0 && cost < costs[tile])
+		{
+			costs[tile] = cost;
+			queue.add((long) cost << 32 | tile);
+		}
+	}
+
+	/**
+	 * @return the cheapest single move between two packed points, or
+	 *         {@link #UNREACHABLE}.
+	 */
+	int getMoveCost(int from, int to)
+	{
+		final int fromTile = collisionMap.getTileIndex(from);
+		final int toTile = collisionMap.getTileIndex(to);
+		if (fromTile < 0 || toTile < 0)
+		{
+			return UNREACHABLE;
+		}
+
+		int best = UNREACHABLE;
+		final int directions = getDirections(from);
+		for (int d = 0; d < DIRECTIONS.length; d++)
+		{
+			if ((directions & (1 << d)) != 0 && WorldPointUtil.dxdy(from, DIRECTIONS[d].getX(),
+					DIRECTIONS[d].getY()) == to)
+			{
+				best = 1;
+			}
+		}
+		for (int t = transportOffsets[fromTile]; t < transportOffsets[fromTile + 1]; t++)
+		{
+			if (transportTargets[t] == toTile)
+			{
+				best = Math.min(best, transportCosts[t]);
+			}
+		}
+		return best;
+	}
+
+	private int getDirections(int point)
+	{
+		return collisionMap.getTraversableDirections(WorldPointUtil.unpackWorldX(point),
+				WorldPointUtil.unpackWorldY(point), WorldPointUtil.unpackWorldPlane(point));
+	}
+
+	/**
+	 * @return the lowest cost over the packed {@code goals}, or
+	 *         {@link #UNREACHABLE}.
+	 */
+	int cheapest(int[] costs, PrimitiveIntList goals)
+	{
+		int best = UNREACHABLE;
+		for (int i = 0; i < goals.size(); i++)
+		{
+			best = Math.min(best, costs[collisionMap.getTileIndex(goals.get(i))]);
+		}
+		return best;
+	}
+
+	/**
+	 * @return packed walkable tiles cardinally adjacent to {@code target},
+	 *         leaving out the {@code walled} sides.
+	 */
+	PrimitiveIntList getApproachTiles(int target, Set<Direction> walled)
+	{
+		final PrimitiveIntList tiles = new PrimitiveIntList(CARDINAL_DIRECTIONS.length);
+		for (Direction direction : CARDINAL_DIRECTIONS)
+		{
+			final int adjacent = WorldPointUtil.dxdy(target, direction.getX(), direction.getY());
+			final int tile = collisionMap.getTileIndex(adjacent);
+			if (!walled.contains(direction) && tile >= 0 && isWalkable(tile))
+			{
+				tiles.add(adjacent);
+			}
+		}
+		return tiles;
+	}
+
+	/**
+	 * Checks that {@code path} starts at {@code start}, only takes steps and
+	 * transports, and ends on one of {@code goals} at no more than
+	 * {@code cost + slack}.
+	 *
+	 * @return the cost of the path.
+	 */
+	int assertPath(String query, PrimitiveIntList path, int start, PrimitiveIntList goals, int cost, int slack)
+	{
+		assertTrue(query + " returned no path", path.size() > 0);
+		assertEquals(query + " starts elsewhere", start, path.get(0));
+		assertTrue(query + " ends at " + WorldPointUtil.unpackWorldPoint(path.get(path.size() - 1)),
+				goals.contains(path.get(path.size() - 1)));
+
+		int pathCost = 0;
+		for (int i = 1; i < path.size(); i++)
+		{
+			final int moveCost = getMoveCost(path.get(i - 1), path.get(i));
+			if (moveCost == UNREACHABLE)
+			{
+				fail(query + " jumps from " + WorldPointUtil.unpackWorldPoint(path.get(i - 1)) + " to "
+						+ WorldPointUtil.unpackWorldPoint(path.get(i)));
+			}
+			pathCost += moveCost;
+		}
+
+		if (slack == 0)
+		{
+			assertEquals(query + " is not the shortest", cost, pathCost);
+		}
+		else
+		{
+			assertTrue(query + " costs " + pathCost + ", shortest " + cost,
+					pathCost >= cost && pathCost <= (long) cost + slack);
+		}
+		return pathCost;
+	}
+
+	/**
+	 * Runs {@code count} seeded single-target queries towards lamps, the bank,
+	 * the wire machine and random tiles, and checks that every reachable one
+	 * comes back no more than {@code slack} longer than the shortest.
+	 */
+	void assertShortestPaths(String engine, PathQuery pathQuery, int count, long seed, int slack)
+	{
+		final Random random = new Random(seed);
+		final PrimitiveIntList path = new PrimitiveIntList();
+		for (int q = 0; q < count; q++)
+		{
+			final int start = randomWalkablePoint(random);
+			final int end = randomTarget(random, q);
+			final String query = engine + " from " + WorldPointUtil.unpackWorldPoint(start) + " to "
+					+ WorldPointUtil.unpackWorldPoint(end);
+
+			final PrimitiveIntList goals = getApproachTiles(end, Collections.emptySet());
+			final int cost = cheapest(getCosts(start), goals);
+			final boolean found = pathQuery.findPath(start, end, path);
+			if (cost == UNREACHABLE)
+			{
+				assertTrue(query + " found " + path.size() + " tiles", !found);
+				continue;
+			}
+
+			assertTrue(query + " found nothing", found);
+			assertPath(query, path, start, goals, cost, slack);
+		}
+	}
+
+	private int randomTarget(Random random, int query)
+	{
+		switch (query % 4)
+		{
+		case 0:
+			return WorldPointUtil.packWorldPoint(LAMPS[random.nextInt(LAMPS.length)].getWorldPoint());
+		case 1:
+			return WorldPointUtil.packWorldPoint(random.nextBoolean()
+					? DKLightsConstants.BANK_LOCATION
+					: DKLightsConstants.WIRE_MACHINE_LOCATION);
+		default:
+			return randomWalkablePoint(random);
+		}
+	}
+
+	/**
+	 * Walks towards a changing set of broken lamps, some of them walled in on
+	 * a side, the way the plugin asks: a new lamp state version whenever the
+	 * lamps or walls change, and the same version while the player moves.
+	 *
+	 * @param slack how much longer than the shortest a path may be.
+	 */
+	void assertShortestNearestPaths(String engine, NearestQuery nearestQuery, int count, long seed, int slack)
+	{
+		final Random random = new Random(seed);
+		final Set<WorldPoint> targets = new HashSet<>();
+		final Map<Lamp, Set<Direction>> walls = new HashMap<>();
+		int start = randomWalkablePoint(random);
+		for (int q = 0; q < count; q++)
+		{
+			switch (random.nextInt(5))
+			{
+			case 0:
+				// Fresh lamp state somewhere else
+				targets.clear();
+				walls.clear();
+				for (int i = 1 + random.nextInt(6); i > 0; i--)
+				{
+					targets.add(LAMPS[random.nextInt(LAMPS.length)].getWorldPoint());
+				}
+				start = randomWalkablePoint(random);
+				lampStateVersion++;
+				break;
+			case 1:
+				// A wall spawns next to a lamp
+				final Lamp walled = LAMPS[random.nextInt(LAMPS.length)];
+				walls.computeIfAbsent(walled, k -> EnumSet.noneOf(Direction.class))
+						.add(CARDINAL_DIRECTIONS[random.nextInt(CARDINAL_DIRECTIONS.length)]);
+				targets.add(walled.getWorldPoint());
+				lampStateVersion++;
+				break;
+			case 2:
+				// Same lamps, the player teleported
+				start = randomWalkablePoint(random);
+				break;
+			default:
+				// Same lamps, the player moved
+				break;
+			}
+
+			final PrimitiveIntList path = assertShortestNearestPath(engine, nearestQuery, start, targets, walls,
+					slack);
+			if (path == null)
+			{
+				start = randomWalkablePoint(random);
+				continue;
+			}
+
+			// Walk part of the way before the next query
+			final int walked = Math.min(random.nextInt(8), path.size() - 1);
+			start = path.get(walked);
+			if (walked == path.size() - 1)
+			{
+				// Arrived, the lamp gets fixed
+				targets.remove(nearestTarget(targets, start));
+				lampStateVersion++;
+				if (targets.isEmpty())
+				{
+					targets.add(LAMPS[random.nextInt(LAMPS.length)].getWorldPoint());
+				}
+			}
+		}
+	}
+
+	static int getLampStateVersion()
+	{
+		return lampStateVersion;
+	}
+
+	/**
+	 * Asks for the nearest of {@code targets} from {@code start} under a new
+	 * lamp state version.
+	 */
+	PrimitiveIntList assertShortestNearestPath(String engine, NearestQuery nearestQuery, int start,
+			Set<WorldPoint> targets)
+	{
+		lampStateVersion++;
+		return assertShortestNearestPath(engine, nearestQuery, start, targets, Collections.emptyMap(), 0);
+	}
+
+	/**
+	 * Asks for the nearest of {@code targets} from {@code start} under the
+	 * current lamp state version.
+	 *
+	 * @param start packed start point.
+	 * @return the packed path, or {@code null} if no target can be reached.
+	 */
+	private PrimitiveIntList assertShortestNearestPath(String engine, NearestQuery nearestQuery, int start,
+			Set<WorldPoint> targets, Map<Lamp, Set<Direction>> walls, int slack)
+	{
+		final WorldPoint startPoint = WorldPointUtil.unpackWorldPoint(start);
+		final String query = engine + " from " + startPoint + " to " + targets + " walled " + walls + " version "
+				+ lampStateVersion;
+		final List<WorldPoint> path = nearestQuery.findNearestPath(startPoint, targets, walls, lampStateVersion);
+
+		final PrimitiveIntList goals = new PrimitiveIntList();
+		for (WorldPoint target : targets)
+		{
+			final PrimitiveIntList approach = getApproachTiles(WorldPointUtil.packWorldPoint(target),
+					walls.getOrDefault(getLamp(target), Collections.emptySet()));
+			for (int i = 0; i < approach.size(); i++)
+			{
+				goals.add(approach.get(i));
+			}
+		}
+
+		final int cost = cheapest(getCosts(start), goals);
+		if (cost == UNREACHABLE)
+		{
+			assertTrue(query + " found " + path, path.isEmpty());
+			return null;
+		}
+
+		final PrimitiveIntList packedPath = pack(path);
+		assertPath(query, packedPath, start, goals, cost, slack);
+		return packedPath;
+	}
+
+	static PrimitiveIntList pack(List<WorldPoint> path)
+	{
+		final PrimitiveIntList packed = new PrimitiveIntList(path.size());
+		for (WorldPoint point : path)
+		{
+			packed.add(WorldPointUtil.packWorldPoint(point));
+		}
+		return packed;
+	}
+
+	static Set<WorldPoint> lampsAt(WorldPoint... locations)
+	{
+		return new HashSet<>(Arrays.asList(locations));
+	}
+
+	private static Lamp getLamp(WorldPoint location)
+	{
+		for (Lamp lamp : LAMPS)
+		{
+			if (lamp.getWorldPoint().equals(location))
+			{
+				return lamp;
+			}
+		}
+		throw new IllegalArgumentException("No lamp at " + location);
+	}
+
+	private static WorldPoint nearestTarget(Set<WorldPoint> targets, int packedPoint)
+	{
+		final WorldPoint point = WorldPointUtil.unpackWorldPoint(packedPoint);
+		return Collections.min(targets, (a, b) -> Integer.compare(a.distanceTo(point), b.distanceTo(point)));
+	}
+}
@@ -0,0 +1,120 @@
+package com.dklights.pathfinder;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import com.dklights.enums.Lamp;
+import com.dklights.enums.PathfinderEngine;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import net.runelite.api.coords.WorldPoint;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class SearchCancelledExceptionTest
+{
+	private ReferenceGraph graph;
+	private Pathfinder pathfinder;
+
+	// A same-plane query long enough to run past the first interrupt check
+	private int start;
+	private int end;
+	private Set<WorldPoint> targets;
+
+	@Before
+	public void setUp() throws IOException
+	{
+		graph = ReferenceGraph.load();
+		pathfinder = new Pathfinder();
+
+		final Random random = new Random(8);
+		final Lamp[] lamps = Lamp.values();
+		while (true)
+		{
+			start = graph.randomWalkablePoint(random);
+			end = WorldPointUtil.packWorldPoint(lamps[random.nextInt(lamps.length)].getWorldPoint());
+			final int cost = graph.cheapest(graph.getCosts(start), graph.getApproachTiles(end,
+					Collections.emptySet()));
+			if (cost != ReferenceGraph.UNREACHABLE && cost > 100
+					&& WorldPointUtil.unpackWorldPlane(start) == WorldPointUtil.unpackWorldPlane(end))
+			{
+				break;
+			}
+		}
+		targets = ReferenceGraph.lampsAt(WorldPointUtil.unpackWorldPoint(end));
+	}
+
+	@After
+	public void clearInterrupt()
+	{
+		Thread.interrupted();
+	}
+
+	@Test
+	public void checkIsThrottled()
+	{
+		Thread.currentThread().interrupt();
+		SearchCancelledException.checkInterrupted(1);
+		try
+		{
+			SearchCancelledException.checkInterrupted(256);
+			fail("Interrupted check passed");
+		}
+		catch (SearchCancelledException e)
+		{
+			assertTrue("Interrupt flag was cleared", Thread.currentThread().isInterrupted());
+		}
+	}
+
+	@Test
+	public void everyEngineStopsWhenInterrupted()
+	{
+		for (PathfinderEngine engine : new PathfinderEngine[]{ PathfinderEngine.LEGACY, PathfinderEngine.PACKED,
+				PathfinderEngine.BITBOARD, PathfinderEngine.DISTANCE_FIELD })
+		{
+			pathfinder.setEngine(engine);
+			// Paths to lamps are read from the first move database without searching
+			if (engine != PathfinderEngine.DISTANCE_FIELD)
+			{
+				assertCancelled(engine + " findPath", () -> pathfinder.findPath(
+						WorldPointUtil.unpackWorldPoint(start), WorldPointUtil.unpackWorldPoint(end)));
+			}
+			assertCancelled(engine + " findNearestPath", () -> pathfinder.findNearestPath(
+					WorldPointUtil.unpackWorldPoint(start), targets, Collections.emptyMap(), engine.ordinal()));
+		}
+	}
+
+	@Test
+	public void cancelledFieldBuildIsRedone()
+	{
+		pathfinder.setEngine(PathfinderEngine.DISTANCE_FIELD);
+		assertCancelled("field build", () -> pathfinder.findNearestPath(WorldPointUtil.unpackWorldPoint(start),
+				targets, Collections.emptyMap(), 1));
+
+		// Same lamp state version, so only the invalidated field forces a rebuild
+		final List<WorldPoint> path = pathfinder.findNearestPath(WorldPointUtil.unpackWorldPoint(start), targets,
+				Collections.emptyMap(), 1);
+		final int cost = graph.cheapest(graph.getCosts(start), graph.getApproachTiles(end, Collections.emptySet()));
+		assertEquals(cost, graph.assertPath("rebuilt field", ReferenceGraph.pack(path), start,
+				graph.getApproachTiles(end, Collections.emptySet()), cost, 0));
+	}
+
+	private static void assertCancelled(String query, Runnable search)
+	{
+		Thread.currentThread().interrupt();
+		try
+		{
+			search.run();
+			fail(query + " ignored the interrupt");
+		}
+		catch (SearchCancelledException e)
+		{
+			assertTrue(query + " cleared the interrupt flag", Thread.interrupted());
+		}
+	}
+}
@@ -0,0 +1,194 @@
+package com.dklights.pathfinder;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import com.dklights.DKLightsConstants;
+import com.dklights.enums.Lamp;
+import com.dklights.enums.PathfinderEngine;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicReference;
+import org.junit.Test;
+
+public class SearchContextTest
+{
+	private static final int CLOSED = 1;
+	private static final int GOAL = 1 << 1;
+
+	@Test
+	public void flagsAccumulateWithinASearch()
+	{
+		final SearchContext context = new SearchContext(8);
+		context.reset();
+		context.addFlags(3, CLOSED);
+		context.addFlags(3, GOAL);
+		assertEquals(CLOSED | GOAL, context.getFlags(3));
+
+		context.removeFlags(3, CLOSED);
+		assertFalse(context.hasFlags(3, CLOSED));
+		assertTrue(context.hasFlags(3, GOAL));
+		assertEquals(0, context.getFlags(4));
+	}
+
+	@Test
+	public void resetForgetsFlagsAndOpenSet()
+	{
+		final SearchContext context = new SearchContext(8);
+		context.reset();
+		context.addFlags(5, GOAL);
+		context.getOpenSet().addOrDecrease(5, 1);
+
+		context.reset();
+		assertEquals(0, context.getFlags(5));
+		assertTrue(context.getOpenSet().isEmpty());
+
+		// A stale flag must not leak into the first flag of the new search
+		context.addFlags(5, CLOSED);
+		assertEquals(CLOSED, context.getFlags(5));
+	}
+
+	@Test
+	public void removeFlagsIgnoresStaleTiles()
+	{
+		final SearchContext context = new SearchContext(8);
+		context.reset();
+		context.addFlags(2, CLOSED | GOAL);
+		context.reset();
+		context.removeFlags(2, CLOSED);
+		assertEquals(0, context.getFlags(2));
+	}
+
+	@Test
+	public void suspendedSearchResumesOnlyForItsOwnerAndQuery()
+	{
+		final Object owner = new Object();
+		final SearchContext context = new SearchContext(8);
+		context.reset();
+		context.suspend(owner, 42, 7, 3);
+		assertFalse(context.resume(new Object(), 42));
+		assertFalse(context.resume(owner, 43));
+		assertTrue(context.resume(owner, 42));
+		assertEquals(7, context.getSuspendedIterations());
+		assertEquals(3, context.getSuspendedBest());
+
+		// Taken over once, and dropped by any new search
+		assertFalse(context.resume(owner, 42));
+		context.suspend(owner, 42, 7, 3);
+		context.reset();
+		assertFalse(context.resume(owner, 42));
+	}
+
+	@Test
+	public void eachThreadGetsItsOwnContext() throws InterruptedException
+	{
+		final ThreadLocal<SearchContext> contexts = SearchContext.perThread(8);
+		final SearchContext mine = contexts.get();
+		assertSame(mine, contexts.get());
+
+		final AtomicReference<SearchContext> theirs = new AtomicReference<>();
+		final Thread thread = new Thread(() -> theirs.set(contexts.get()));
+		thread.start();
+		thread.join();
+		assertNotSame(mine, theirs.get());
+	}
+
+	@Test
+	public void sharedPathfinderGivesTheSameResultsOnEveryThread() throws IOException, InterruptedException
+	{
+		final ReferenceGraph graph = ReferenceGraph.load();
+		final CollisionMap collisionMap = graph.getCollisionMap();
+		final TransportIndex transports = new TransportIndex(collisionMap);
+		final PackedPathfinder pathfinder = new PackedPathfinder(collisionMap, transports,
+				new ConnectedComponents(collisionMap, transports), SearchContext.perThread(collisionMap.getTileCount()),
+				10000, 512);
+
+		final Random random = new Random(7);
+		final int[] starts = new int[100];
+		final int[] ends = new int[starts.length];
+		final List<PrimitiveIntList> expected = new ArrayList<>();
+		for (int q = 0; q < starts.length; q++)
+		{
+			starts[q] = graph.randomWalkablePoint(random);
+			ends[q] = graph.randomWalkablePoint(random);
+			final PrimitiveIntList path = new PrimitiveIntList();
+			pathfinder.findPath(starts[q], ends[q], path);
+			expected.add(path);
+		}
+
+		final List<Thread> threads = new ArrayList<>();
+		final AtomicReference<String> failure = new AtomicReference<>();
+		for (int t = 0; t < 4; t++)
+		{
+			final int offset = t;
+			final Thread thread = new Thread(() ->
+			{
+				final PrimitiveIntList path = new PrimitiveIntList();
+				for (int i = 0; i < starts.length; i++)
+				{
+					final int q = (i + offset * 25) % starts.length;
+					pathfinder.findPath(starts[q], ends[q], path);
+					if (!samePath(path, expected.get(q)))
+					{
+						failure.compareAndSet(null, "Query " + q + " differs on thread " + offset);
+					}
+				}
+			});
+			threads.add(thread);
+			thread.start();
+		}
+		for (Thread thread : threads)
+		{
+			thread.join();
+		}
+		assertNull(failure.get());
+	}
+
+	@Test
+	public void expansionsCountOnlyTheLastQuery() throws IOException
+	{
+		final Pathfinder pathfinder = new Pathfinder();
+		final int start = WorldPointUtil.packWorldPoint(2722, 5255, 1);
+		final int end = WorldPointUtil.packWorldPoint(DKLightsConstants.WIRE_MACHINE_LOCATION);
+		final PrimitiveIntList path = new PrimitiveIntList();
+
+		pathfinder.setEngine(PathfinderEngine.PACKED);
+		assertEquals(SearchStatus.FOUND, pathfinder.findPath(start, end, path, 0));
+		assertTrue(pathfinder.getLastExpansions() > 0);
+
+		// Read from the wire machine's distance field without searching
+		pathfinder.setEngine(PathfinderEngine.DISTANCE_FIELD);
+		assertEquals(SearchStatus.FOUND, pathfinder.findPath(start, end, path, 0));
+		assertEquals(0, pathfinder.getLastExpansions());
+
+		pathfinder.setEngine(PathfinderEngine.PACKED);
+		pathfinder.findPath(start, end, path, 0);
+		pathfinder.setEngine(PathfinderEngine.INCREMENTAL);
+		assertFalse(pathfinder.findNearestPath(WorldPointUtil.unpackWorldPoint(start),
+				ReferenceGraph.lampsAt(Lamp.values()[0].getWorldPoint()), Collections.emptyMap(), 1).isEmpty());
+		assertEquals(0, pathfinder.getLastExpansions());
+	}
+
+	private static boolean samePath(PrimitiveIntList first, PrimitiveIntList second)
+	{
+		if (first.size() != second.size())
+		{
+			return false;
+		}
+		for (int i = 0; i < first.size(); i++)
+		{
+			if (first.get(i) != second.get(i))
+			{
+				return false;
+			}
+		}
+		return true;
+	}
+}
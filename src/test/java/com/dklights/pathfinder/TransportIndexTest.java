@@ -0,0 +1,112 @@
+package com.dklights.pathfinder;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import com.dklights.enums.Transport;
+import java.io.IOException;
+import java.util.Random;
+import net.runelite.api.coords.WorldPoint;
+import org.junit.Before;
+import org.junit.Test;
+
+public class TransportIndexTest
+{
+	private ReferenceGraph graph;
+	private CollisionMap collisionMap;
+	private TransportIndex transports;
+
+	@Before
+	public void setUp() throws IOException
+	{
+		graph = ReferenceGraph.load();
+		collisionMap = graph.getCollisionMap();
+		transports = new TransportIndex(collisionMap);
+	}
+
+	@Test
+	public void outgoingAndIncomingListsAgree()
+	{
+		int incoming = 0;
+		for (int tile = 0; tile < collisionMap.getTileCount(); tile++)
+		{
+			for (int t = transports.getOutgoingStart(tile); t < transports.getOutgoingEnd(tile); t++)
+			{
+				assertEquals(tile, transports.getOrigin(t));
+				assertTrue(transports.getCost(t) >= 1);
+			}
+			for (int i = transports.getIncomingStart(tile); i < transports.getIncomingEnd(tile); i++)
+			{
+				assertEquals(tile, transports.getDestination(transports.getIncomingEdge(i)));
+				incoming++;
+			}
+		}
+		assertEquals(transports.size(), incoming);
+	}
+
+	@Test
+	public void exitDistancesMatchTransports()
+	{
+		for (int tile = 0; tile < collisionMap.getTileCount(); tile++)
+		{
+			final int point = collisionMap.getPackedPoint(tile);
+			final int x = WorldPointUtil.unpackWorldX(point);
+			final int y = WorldPointUtil.unpackWorldY(point);
+			final int plane = WorldPointUtil.unpackWorldPlane(point);
+
+			int expected = TransportIndex.NO_ROUTE;
+			for (Transport transport : Transport.values())
+			{
+				final WorldPoint origin = transport.getOrigin();
+				if (origin.getPlane() != plane || transport.getDestination().getPlane() == plane
+						|| collisionMap.getTileIndex(WorldPointUtil.packWorldPoint(transport.getDestination())) < 0)
+				{
+					continue;
+				}
+
+				final int distance = Math.max(Math.abs(origin.getX() - x), Math.abs(origin.getY() - y));
+				if (expected == TransportIndex.NO_ROUTE || distance < expected)
+				{
+					expected = distance;
+				}
+			}
+			assertEquals("Exit distance at " + WorldPointUtil.unpackWorldPoint(point), expected,
+					transports.getExitDistance(tile));
+		}
+	}
+
+	@Test
+	public void crossPlaneBoundsAreAdmissible()
+	{
+		final Random random = new Random(5);
+		for (int q = 0; q < 20; q++)
+		{
+			final int start = graph.randomWalkablePoint(random);
+			final int startTile = collisionMap.getTileIndex(start);
+			final int startPlane = WorldPointUtil.unpackWorldPlane(start);
+			final int exitDistance = transports.getExitDistance(startTile);
+			final int[] costs = graph.getCosts(start);
+			for (int tile : graph.getWalkableTiles())
+			{
+				final int point = collisionMap.getPackedPoint(tile);
+				final int plane = WorldPointUtil.unpackWorldPlane(point);
+				if (plane == startPlane || costs[tile] == ReferenceGraph.UNREACHABLE)
+				{
+					continue;
+				}
+
+				final String query = WorldPointUtil.unpackWorldPoint(start) + " to "
+						+ WorldPointUtil.unpackWorldPoint(point);
+				final int planeBound = transports.getPlaneLowerBound(startPlane, plane);
+				assertTrue(query + " has no plane bound", planeBound != TransportIndex.NO_ROUTE);
+				assertTrue(query + " costs " + costs[tile] + ", plane bound " + planeBound,
+						costs[tile] >= planeBound);
+
+				final int entryCost = transports.getEntryCost(plane, WorldPointUtil.unpackWorldX(point),
+						WorldPointUtil.unpackWorldY(point), 0);
+				assertTrue(query + " costs " + costs[tile] + ", exit " + exitDistance + " entry " + entryCost,
+						costs[tile] >= exitDistance + entryCost);
+			}
+		}
+	}
+}